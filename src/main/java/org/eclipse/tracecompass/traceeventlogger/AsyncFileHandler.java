@@ -26,22 +26,34 @@ package org.eclipse.tracecompass.traceeventlogger;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.ErrorManager;
 import java.util.logging.FileHandler;
 import java.util.logging.Filter;
 import java.util.logging.Formatter;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 import java.util.logging.StreamHandler;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import org.eclipse.tracecompass.traceeventlogger.LogUtils.TraceEventLogRecord;
+import org.eclipse.tracecompass.traceeventlogger.beans.IAsyncFileHandlerBean;
 
 /**
  * Asynchronous File Handler for JUL.
@@ -83,33 +95,81 @@ import org.eclipse.tracecompass.traceeventlogger.LogUtils.TraceEventLogRecord;
  * <li>&lt;AsyncFileHandler&gt;.flushRate specifies the time in milliseconds
  * between a forced rotation of the buffers, this prevents writer starvation.
  * (defaults to 1000 or 1 second)</li>
+ * <li>&lt;AsyncFileHandler&gt;.metadata specifies whether thread and process
+ * name metadata events are written, once per thread and per file, before the
+ * first event of that thread (defaults to true)</li>
+ * <li>&lt;AsyncFileHandler&gt;.counters specifies whether the writer writes
+ * its health as <code>C</code> counter events, at most once per flush period,
+ * so its stalls show next to the events they delayed (defaults to false)</li>
  * </ul>
+ *
+ * The health of the handler is published as an {@link IAsyncFileHandlerBean}.
  */
-public class AsyncFileHandler extends StreamHandler {
+public class AsyncFileHandler extends StreamHandler implements IAsyncFileHandlerBean {
     private static final LogRecord CLOSE_EVENT = new LogRecord(Level.FINEST, "CLOSE_EVENT"); //$NON-NLS-1$
+    /**
+     * Number of times a full queue is retried before blocking, the writer
+     * usually frees a slot sooner than a parked thread wakes up
+     */
+    private static final int SPIN_TRIES = 100;
     private FileHandler fFileHandler;
     private BlockingQueue<List<LogRecord>> fQueue;
     private Thread fWriterThread;
     private int fMaxSize = 1024;
     private int fQueueDepth = 10000;
-    private int fFlushRate = 1000;
+    private volatile int fFlushRate = 1000;
     private String fEncoding;
     private Filter fFilter;
     private ErrorManager fErrorManager;
     private Formatter fFormatter;
     private Level fLevel;
     private volatile boolean fIsEnabled = true;
+    private boolean fWriteMetadata = true;
+    private boolean fWriteCounters = false;
+    private ObjectName fBeanName;
+    /** The ID of the handler in the control and health beans */
+    private String fId;
+    private boolean fClosed = false;
+
+    // health, each one written by a single thread at a time
+    private volatile long fEnqueued;
+    private volatile long fWritten;
+    private volatile long fBlockedCount;
+    private volatile long fBlockedTime;
+    private volatile long fFlushCount;
+    private volatile long fWrittenRecords;
+    private volatile long fBatchWriteTime;
+    private volatile long fMaxBatchWriteTime;
+    private volatile double fWriteRate;
+    /** Bytes and time of the last write rate, only used by the timer */
+    private long fRateBytes;
+    private long fRateTime = System.nanoTime();
+    /** Health at the last counter events, only used by the writer */
+    private long fCountersTime = System.nanoTime();
+    private long fCountersBytes;
+    private long fCountersBlockedTime;
+    /** Threads already named in the current file, only used by the writer */
+    private final Set<Long> fSeenThreads = new HashSet<>();
 
     private List<LogRecord> fRecordBuffer = new ArrayList<>(fMaxSize);
     private Timer fTimer = new Timer(false);
-    TimerTask fTask = new TimerTask() {
-        @Override
-        public void run() {
-            if (!fRecordBuffer.isEmpty()) {
-                flush();
+    TimerTask fTask = newFlushTask();
+
+    private TimerTask newFlushTask() {
+        return new TimerTask() {
+            @Override
+            public void run() {
+                if (!fRecordBuffer.isEmpty()) {
+                    flush();
+                }
+                long now = System.nanoTime();
+                long bytes = getWrittenBytes();
+                fWriteRate = (bytes - fRateBytes) * 1e9 / Math.max(1, now - fRateTime);
+                fRateBytes = bytes;
+                fRateTime = now;
             }
-        }
-    };
+        };
+    }
 
     private void configure() {
         LogManager manager = LogManager.getLogManager();
@@ -165,6 +225,12 @@ public class AsyncFileHandler extends StreamHandler {
         if (fFlushRate < 0) {
             fFlushRate = 1000;
         }
+
+        prop = manager.getProperty(cname + ".metadata"); //$NON-NLS-1$
+        fWriteMetadata = prop == null || Boolean.parseBoolean(prop.trim());
+
+        prop = manager.getProperty(cname + ".counters"); //$NON-NLS-1$
+        fWriteCounters = prop != null && Boolean.parseBoolean(prop.trim());
     }
 
     /**
@@ -211,19 +277,42 @@ public class AsyncFileHandler extends StreamHandler {
             fFileHandler.setFormatter(fFormatter);
         }
 
+        SegmentFormatter formatter = new SegmentFormatter(fFileHandler.getFormatter());
+        if (fEncoding != null) {
+            formatter.fCharset = Charset.forName(fEncoding);
+        }
+        fFileHandler.setFormatter(formatter);
+
         fQueue = new ArrayBlockingQueue<>(fQueueDepth);
         fTimer.scheduleAtFixedRate(fTask, fFlushRate, fFlushRate);
         fWriterThread = new Thread(() -> {
             try {
                 while (true) {
                     List<LogRecord> logRecords = fQueue.take();
+                    long start = System.nanoTime();
+                    int written = 0;
+                    boolean closed = false;
                     for (LogRecord logRecord : logRecords) {
                         if (logRecord == CLOSE_EVENT) {
-                            fFileHandler.flush();
-                            fFileHandler.close();
-                            return;
+                            closed = true;
+                            break;
                         }
-                        fFileHandler.publish(logRecord);
+                        write(logRecord);
+                        written++;
+                    }
+                    long time = System.nanoTime() - start;
+                    fWrittenRecords += written;
+                    fBatchWriteTime += time;
+                    fMaxBatchWriteTime = Math.max(fMaxBatchWriteTime, time);
+                    fWritten++;
+                    if (closed) {
+                        // the records before the close event are counted
+                        fFileHandler.flush();
+                        fFileHandler.close();
+                        return;
+                    }
+                    if (fWriteCounters && !logRecords.isEmpty()) {
+                        writeCounters(logRecords.get(logRecords.size() - 1).getLevel());
                     }
                 }
             } catch (InterruptedException e) {
@@ -232,12 +321,154 @@ public class AsyncFileHandler extends StreamHandler {
         });
         fWriterThread.setName("AsyncFileHandler Writer"); //$NON-NLS-1$
         fWriterThread.start();
+        registerBean(pattern);
+    }
+
+    private void registerBean(String pattern) {
+        fId = TraceEventLoggerControl.add(this);
+        // see TraceEventLoggerBean, finer logs would break the trace
+        Logger.getLogger("javax.management").setLevel(Level.FINE); //$NON-NLS-1$ NOSONAR
+        try {
+            // many handlers can write to the same files
+            ObjectName name = new ObjectName("org.eclipse.tracecompass.log:type=AsyncFileHandler,name=" //$NON-NLS-1$
+                    + ObjectName.quote(pattern == null ? "default" : pattern) + ",id=" + fId); //$NON-NLS-1$ //$NON-NLS-2$
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            fBeanName = name;
+        } catch (JMException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Cannot create bean", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Write the health of the pipeline as counter events, at most once per
+     * flush period. Only called by the writer thread.
+     */
+    private void writeCounters(Level level) {
+        long now = System.nanoTime();
+        long elapsed = now - fCountersTime;
+        if (elapsed < TimeUnit.MILLISECONDS.toNanos(fFlushRate)) {
+            return;
+        }
+        long bytes = getWrittenBytes();
+        long blockedTime = fBlockedTime;
+        write(LogUtils.createCounterRecord(level, "AsyncFileHandler", //$NON-NLS-1$
+                "queue", fQueue.size(), //$NON-NLS-1$
+                "inFlight", getBatchesInFlight(), //$NON-NLS-1$
+                "blockedTime", blockedTime - fCountersBlockedTime, //$NON-NLS-1$
+                "writeRate", (long) ((bytes - fCountersBytes) * 1e9 / Math.max(1, elapsed)))); //$NON-NLS-1$
+        fCountersTime = now;
+        fCountersBytes = bytes;
+        fCountersBlockedTime = blockedTime;
+    }
+
+    /**
+     * Write a record, preceded by the metadata events of its thread if it is
+     * the first one of that thread in the current file. Only called by the
+     * writer thread.
+     */
+    private void write(LogRecord logRecord) {
+        SegmentFormatter formatter = (SegmentFormatter) fFileHandler.getFormatter();
+        if (formatter.fNewSegment) {
+            // the previous record closed the file, the next one needs its
+            // own metadata
+            formatter.fNewSegment = false;
+            fSeenThreads.clear();
+        }
+        if (fWriteMetadata) {
+            writeMetadata(logRecord);
+        }
+        fFileHandler.publish(logRecord);
+    }
+
+    private void writeMetadata(LogRecord logRecord) {
+        if (!(logRecord instanceof TraceEventLogRecord)) {
+            return;
+        }
+        Object[] parameters = logRecord.getParameters();
+        if (parameters == null || parameters.length < 3 || !(parameters[2] instanceof Number)) {
+            return;
+        }
+        long threadId = ((Number) parameters[2]).longValue();
+        if (fSeenThreads.isEmpty()) {
+            fFileHandler.publish(LogUtils.createProcessNameRecord(logRecord.getLevel(), threadId));
+        }
+        if (fSeenThreads.add(threadId)) {
+            LogRecord threadName = LogUtils.createThreadNameRecord(logRecord.getLevel(), threadId);
+            if (threadName != null) {
+                fFileHandler.publish(threadName);
+            }
+        }
+    }
+
+    /**
+     * Formatter wrapper that detects when the {@link FileHandler} rotates to a
+     * new file, as the tail is written at the end of each file.
+     */
+    private static final class SegmentFormatter extends Formatter {
+        private final Formatter fDelegate;
+        private volatile boolean fNewSegment = false;
+        /** Bytes formatted, once encoded, only written by the file handler */
+        private volatile long fBytes;
+        /** The encoding of the file handler */
+        private volatile Charset fCharset = Charset.defaultCharset();
+
+        private SegmentFormatter(Formatter delegate) {
+            fDelegate = delegate;
+        }
+
+        private String count(String text) {
+            if (text != null) {
+                fBytes += encodedLength(text, fCharset);
+            }
+            return text;
+        }
+
+        @Override
+        public String format(LogRecord record) {
+            return count(fDelegate.format(record));
+        }
+
+        @Override
+        public String getHead(Handler h) {
+            return count(fDelegate.getHead(h));
+        }
+
+        @Override
+        public String getTail(Handler h) {
+            fNewSegment = true;
+            return count(fDelegate.getTail(h));
+        }
+    }
+
+    /**
+     * Get the number of bytes of a text once encoded, without encoding the
+     * usual charsets
+     */
+    private static long encodedLength(String text, Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            long length = text.length();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c >= 0x800) {
+                    // 3 bytes, or 4 for a surrogate pair of 2 chars
+                    length += Character.isSurrogate(c) ? 1 : 2;
+                } else if (c >= 0x80) {
+                    length++;
+                }
+            }
+            return length;
+        }
+        if (charset.equals(StandardCharsets.US_ASCII) || charset.equals(StandardCharsets.ISO_8859_1)) {
+            return text.length();
+        }
+        return charset.encode(text).remaining();
     }
 
     @Override
     public synchronized void setEncoding(String encoding) throws SecurityException, UnsupportedEncodingException {
         if (fFileHandler != null) {
             fFileHandler.setEncoding(encoding);
+            ((SegmentFormatter) fFileHandler.getFormatter()).fCharset = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
         }
         this.fEncoding = encoding;
     }
@@ -261,7 +492,12 @@ public class AsyncFileHandler extends StreamHandler {
     @Override
     public synchronized void setFormatter(Formatter newFormatter) throws SecurityException {
         if (fFileHandler != null) {
-            fFileHandler.setFormatter(newFormatter);
+            SegmentFormatter formatter = new SegmentFormatter(newFormatter);
+            // keep counting from the previous formatter
+            SegmentFormatter previous = (SegmentFormatter) fFileHandler.getFormatter();
+            formatter.fBytes = previous.fBytes;
+            formatter.fCharset = previous.fCharset;
+            fFileHandler.setFormatter(formatter);
         }
         this.fFormatter = newFormatter;
     }
@@ -277,20 +513,37 @@ public class AsyncFileHandler extends StreamHandler {
     @Override
     public synchronized void close() throws SecurityException {
         try {
+            fTimer.cancel();
+            fClosed = true;
             fRecordBuffer.add(CLOSE_EVENT);
+            // the last batch, counted like the others
+            fEnqueued++;
             fQueue.put(fRecordBuffer);
             fWriterThread.join();
-            fTimer.cancel();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+        TraceEventLoggerControl.remove(fId, this);
+        if (fBeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(fBeanName);
+            } catch (JMException e) {
+                // already unregistered
+            }
+            fBeanName = null;
+        }
         super.close();
     }
 
     @Override
     public synchronized void flush() {
+        if (fClosed) {
+            // the writer is gone
+            return;
+        }
+        fFlushCount++;
         try {
-            fQueue.put(fRecordBuffer);
+            enqueue(fRecordBuffer);
             fRecordBuffer = new ArrayList<>(fMaxSize);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -309,7 +562,7 @@ public class AsyncFileHandler extends StreamHandler {
 
     @Override
     public Formatter getFormatter() {
-        return fFileHandler.getFormatter();
+        return ((SegmentFormatter) fFileHandler.getFormatter()).fDelegate;
     }
 
     @Override
@@ -336,7 +589,7 @@ public class AsyncFileHandler extends StreamHandler {
             if (isLoggable(record)) {
                 fRecordBuffer.add(record);
                 if (fRecordBuffer.size() >= fMaxSize) {
-                    fQueue.put(fRecordBuffer);
+                    enqueue(fRecordBuffer);
                     fRecordBuffer = new ArrayList<>(fMaxSize);
                 }
             }
@@ -345,6 +598,21 @@ public class AsyncFileHandler extends StreamHandler {
         }
     }
 
+    private void enqueue(List<LogRecord> records) throws InterruptedException {
+        // called with the lock held, the health is updated by one thread
+        fEnqueued++;
+        for (int i = 0; i < SPIN_TRIES; i++) {
+            if (fQueue.offer(records)) {
+                return;
+            }
+            Platform.onSpinWait();
+        }
+        long start = System.nanoTime();
+        fQueue.put(records);
+        fBlockedCount++;
+        fBlockedTime += System.nanoTime() - start;
+    }
+
     /**
      * Enable or disable async file handler
      *
@@ -355,6 +623,16 @@ public class AsyncFileHandler extends StreamHandler {
         this.fIsEnabled = isEnabled;
     }
 
+    /**
+     * Get the ID of the handler in the {@link TraceEventLoggerControl} and in
+     * the name of its bean
+     *
+     * @return the ID, null before the handler is configured
+     */
+    String getId() {
+        return fId;
+    }
+
     /**
      * Is the async file handler enabled?
      *
@@ -364,4 +642,116 @@ public class AsyncFileHandler extends StreamHandler {
         return fIsEnabled;
     }
 
+    /**
+     * Set the maximum number of records batched into a single request to the
+     * writer, the current batch is queued if it is already that large
+     *
+     * @param maxSize
+     *            the maximum number of records, at least 1
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        fMaxSize = Math.max(1, maxSize);
+        if (fRecordBuffer.size() >= fMaxSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Get the maximum number of records batched into a single request to the
+     * writer
+     *
+     * @return the maximum number of records
+     */
+    public synchronized int getMaxSize() {
+        return fMaxSize;
+    }
+
+    /**
+     * Set the time between two forced flushes of the current batch
+     *
+     * @param flushRate
+     *            the time in milliseconds, at least 1
+     */
+    public synchronized void setFlushRate(int flushRate) {
+        if (fClosed) {
+            return;
+        }
+        fFlushRate = Math.max(1, flushRate);
+        fTask.cancel();
+        fTask = newFlushTask();
+        fTimer.scheduleAtFixedRate(fTask, fFlushRate, fFlushRate);
+    }
+
+    /**
+     * Get the time between two forced flushes of the current batch
+     *
+     * @return the time in milliseconds
+     */
+    public synchronized int getFlushRate() {
+        return fFlushRate;
+    }
+
+    @Override
+    public int getQueueSize() {
+        return fQueue.size();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return fQueueDepth;
+    }
+
+    @Override
+    public long getBatchesInFlight() {
+        // read the written batches first, there can only be more queued
+        long written = fWritten;
+        return Math.max(0, fEnqueued - written);
+    }
+
+    @Override
+    public long getBlockedCount() {
+        return fBlockedCount;
+    }
+
+    @Override
+    public long getBlockedTime() {
+        return fBlockedTime;
+    }
+
+    @Override
+    public long getFlushCount() {
+        return fFlushCount;
+    }
+
+    @Override
+    public long getWrittenRecords() {
+        return fWrittenRecords;
+    }
+
+    @Override
+    public long getWrittenBytes() {
+        return ((SegmentFormatter) fFileHandler.getFormatter()).fBytes;
+    }
+
+    @Override
+    public double getWriteRate() {
+        return fWriteRate;
+    }
+
+    @Override
+    public long getBatchWriteTime() {
+        return fBatchWriteTime;
+    }
+
+    @Override
+    public double getMeanBatchWriteTime() {
+        long written = fWritten;
+        return written == 0 ? 0.0 : (double) fBatchWriteTime / written;
+    }
+
+    @Override
+    public long getMaxBatchWriteTime() {
+        return fMaxBatchWriteTime;
+    }
+
 }
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Calibrated clock, follows the wall clock over days of uptime.
+ *
+ * The time is derived from {@link System#nanoTime()}, but it is periodically
+ * compared to {@link System#currentTimeMillis()}. The measured drift is not
+ * applied as a jump, as that could make an end event precede its begin event.
+ * Instead, the rate of the clock is adjusted so that the error is absorbed over
+ * the next period. Only large forward errors, such as a manual change of the
+ * system time, are applied as a step. The clock never steps backwards: when
+ * the wall clock is set back, the clock slows down at the maximum rate
+ * correction until the wall clock catches up.
+ *
+ * Every calibration can be recorded in the trace as a clock sync ('c') event
+ * so that traces from several processes can be aligned afterwards.
+ */
+public final class CalibratedTraceClock implements ITraceClock {
+
+    /**
+     * Errors bigger than this are stepped rather than slewed (1 second)
+     */
+    private static final long STEP_THRESHOLD = 1_000_000_000L;
+
+    /**
+     * Maximum rate correction, 0.1% (1000 ppm)
+     */
+    private static final double MAX_RATE_CORRECTION = 0.001;
+
+    /**
+     * Immutable calibration point, read with a single volatile read.
+     */
+    private static final class Calibration {
+        private final long fNanoAnchor;
+        private final long fTimeAnchor;
+        private final double fScale;
+
+        private Calibration(long nanoAnchor, long timeAnchor, double scale) {
+            fNanoAnchor = nanoAnchor;
+            fTimeAnchor = timeAnchor;
+            fScale = scale;
+        }
+
+        private long timeAt(long nanoTime) {
+            return fTimeAnchor + (long) ((nanoTime - fNanoAnchor) * fScale);
+        }
+    }
+
+    private final Timer fTimer = new Timer("Trace Clock Calibrator", true); //$NON-NLS-1$
+    private final long fPeriodNanos;
+    private final Logger fLogger;
+    private final Level fLevel;
+    private final LongSupplier fWallClock;
+    private volatile Calibration fCalibration;
+    private long fLastWall;
+    private long fLastNano;
+    private long fEdgeNano;
+    private int fSyncCount = 0;
+
+    /**
+     * Constructor
+     *
+     * @param periodMillis
+     *            the time between two calibrations in milliseconds, must be
+     *            positive
+     * @param logger
+     *            the logger to write clock sync events to, can be null
+     * @param level
+     *            the level of the clock sync events
+     */
+    public CalibratedTraceClock(long periodMillis, Logger logger, Level level) {
+        this(periodMillis, logger, level, Platform::wallClockNanos);
+    }
+
+    /**
+     * Constructor, with another wall clock for tests
+     *
+     * @param periodMillis
+     *            the time between two calibrations in milliseconds, must be
+     *            positive
+     * @param logger
+     *            the logger to write clock sync events to, can be null
+     * @param level
+     *            the level of the clock sync events
+     * @param wallClock
+     *            the wall clock, in nanoseconds
+     */
+    CalibratedTraceClock(long periodMillis, Logger logger, Level level, LongSupplier wallClock) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + periodMillis); //$NON-NLS-1$
+        }
+        fPeriodNanos = periodMillis * 1_000_000L;
+        fLogger = logger;
+        fLevel = level;
+        fWallClock = wallClock;
+        fLastWall = sampleWallNanos();
+        fLastNano = fEdgeNano;
+        fCalibration = new Calibration(fLastNano, fLastWall, 1.0);
+        fTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                recalibrate();
+            }
+        }, periodMillis, periodMillis);
+    }
+
+    @Override
+    public long currentTimeNanos() {
+        return fCalibration.timeAt(System.nanoTime());
+    }
+
+    @Override
+    public void dispose() {
+        fTimer.cancel();
+    }
+
+    /**
+     * Compare the clock to the wall clock and adjust its rate. Only called by
+     * the calibration timer, or by tests.
+     */
+    synchronized void recalibrate() {
+        long wall = sampleWallNanos();
+        long nano = fEdgeNano;
+        Calibration previous = fCalibration;
+        long current = previous.timeAt(nano);
+        long error = wall - current;
+        Calibration next;
+        if (error > STEP_THRESHOLD) {
+            next = new Calibration(nano, wall, 1.0);
+        } else if (error < -STEP_THRESHOLD) {
+            // stepping back could put an end before its begin, slow down
+            // until the wall clock catches up
+            next = new Calibration(nano, current, 1.0 - MAX_RATE_CORRECTION);
+        } else {
+            // natural drift of nanoTime vs the wall clock over the last
+            // period, plus what is needed to catch up over the next one
+            double drift = (double) ((wall - fLastWall) - (nano - fLastNano)) / Math.max(1, nano - fLastNano);
+            double correction = Math.max(-MAX_RATE_CORRECTION, Math.min(MAX_RATE_CORRECTION, drift + (double) error / fPeriodNanos));
+            next = new Calibration(nano, current, 1.0 + correction);
+        }
+        fCalibration = next;
+        fLastWall = wall;
+        fLastNano = nano;
+        Logger logger = fLogger;
+        if (logger != null) {
+            LogUtils.traceClockSync(logger, fLevel, next.fTimeAnchor, "calibration-" + fSyncCount++, "wall_ts", wall / 1000, "error_ns", error); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+    }
+
+    /**
+     * Sample the wall clock on the edge of one of its ticks, this gives an
+     * alignment better than its granularity, a millisecond before Java 9. The
+     * matching {@link System#nanoTime()} is saved in {@link #fEdgeNano}.
+     */
+    private long sampleWallNanos() {
+        long start = fWallClock.getAsLong();
+        long wall = start;
+        long nano = System.nanoTime();
+        // spin at most ~2ms for the next tick of the wall clock
+        long deadline = nano + 2_000_000L;
+        while (wall == start && nano < deadline) {
+            Platform.onSpinWait();
+            wall = fWallClock.getAsLong();
+            nano = System.nanoTime();
+        }
+        fEdgeNano = nano;
+        return wall;
+    }
+}
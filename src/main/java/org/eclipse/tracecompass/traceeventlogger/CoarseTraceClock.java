@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Coarse clock, a ticker thread samples a {@link PreciseTraceClock}
+ * periodically and callers only read the last sample.
+ *
+ * Reading the time is a single volatile read, which is cheaper than
+ * {@link System#nanoTime()} on most platforms. The price is resolution: every
+ * event within a tick gets the same timestamp, so short scopes will show a
+ * duration of zero. Use it for very high rate events where the order and the
+ * labels matter more than the exact durations.
+ */
+public final class CoarseTraceClock implements ITraceClock {
+
+    private final PreciseTraceClock fSource = new PreciseTraceClock();
+    private final Timer fTimer = new Timer("Trace Clock Ticker", true); //$NON-NLS-1$
+    private volatile long fTime;
+
+    /**
+     * Constructor
+     *
+     * @param resolutionMillis
+     *            the time between two ticks in milliseconds, must be positive
+     */
+    public CoarseTraceClock(long resolutionMillis) {
+        if (resolutionMillis <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive: " + resolutionMillis); //$NON-NLS-1$
+        }
+        fTime = fSource.currentTimeNanos();
+        fTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                fTime = fSource.currentTimeNanos();
+            }
+        }, resolutionMillis, resolutionMillis);
+    }
+
+    @Override
+    public long currentTimeNanos() {
+        return fTime;
+    }
+
+    @Override
+    public void dispose() {
+        fTimer.cancel();
+    }
+}
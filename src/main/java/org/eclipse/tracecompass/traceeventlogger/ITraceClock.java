@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+/**
+ * Time source used by {@link LogUtils} to stamp trace events.
+ *
+ * Implementations return the current time in nanoseconds since the Unix epoch.
+ * The value must never go backwards for a given thread, otherwise begin and end
+ * events could be reordered.
+ *
+ * The clock can be selected with the <code>traceClock</code> system property
+ * (<code>precise</code>, <code>coarse</code> or <code>calibrated</code>) or
+ * installed programmatically with {@link LogUtils#setClock(ITraceClock)}.
+ */
+public interface ITraceClock {
+
+    /**
+     * Gets the current time in nanoseconds since the Unix epoch.
+     *
+     * @return Current time in nanoseconds since Unix epoch
+     */
+    long currentTimeNanos();
+
+    /**
+     * Release any resources (such as background threads) held by this clock.
+     * The clock may not be used after it is disposed.
+     */
+    default void dispose() {
+        // do nothing
+    }
+}
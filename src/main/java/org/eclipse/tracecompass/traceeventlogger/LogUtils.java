@@ -24,13 +24,16 @@
 package org.eclipse.tracecompass.traceeventlogger;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.logging.Level;
@@ -86,6 +89,18 @@ import org.eclipse.tracecompass.traceeventlogger.beans.TraceEventLoggerManager;
  * <li><strong>C</strong>, Counter event</li>
  * </ul>
  * </li>
+ * <li>Metadata events - events that name threads and processes, written by
+ * the handlers
+ * <ul>
+ * <li><strong>M</strong>, Metadata event</li>
+ * </ul>
+ * </li>
+ * <li>Clock sync events - events that align the trace clock with the wall
+ * clock
+ * <ul>
+ * <li><strong>c</strong>, Clock sync event</li>
+ * </ul>
+ * </li>
  * </ul>
  * <p>
  * To use <strong>durations</strong> and/or <strong>flows</strong>, see
@@ -140,21 +155,42 @@ public final class LogUtils {
         int getId();
     }
 
-    private static final String FORMAT = "%d.%03d"; //$NON-NLS-1$
+    /**
+     * The clock used to stamp the events, selected with the
+     * <code>traceClock</code> system property.
+     */
+    private static volatile ITraceClock sClock = createClock(System.getProperty("traceClock", "precise"), Long.getLong("traceClockPeriod", 0L)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 
     /**
-     * Offset between System.currentTimeMillis() and System.nanoTime() in nanoseconds.
-     * Used to convert between the two time bases while maintaining nanosecond precision.
+     * The clocks of the labels not stamped by {@link #sClock}, never modified
+     * once published. The labels of the <code>coarseClockLabels</code> system
+     * property share a coarse clock.
      */
-    private static final long TIME_OFFSET;
-    static {
-        // Get current time in both bases
-        long currentMillis = System.currentTimeMillis();
-        long nanoTime = System.nanoTime();
-
-        // Convert millis to nanos and calculate offset, handling potential overflow
-        long millisToNanos = currentMillis * 1_000_000L;
-        TIME_OFFSET = millisToNanos - nanoTime;
+    private static volatile Map<String, ITraceClock> sLabelClocks = createLabelClocks(System.getProperty("coarseClockLabels")); //$NON-NLS-1$
+
+    private static Map<String, ITraceClock> createLabelClocks(String labels) {
+        if (labels == null || labels.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, ITraceClock> clocks = new HashMap<>();
+        ITraceClock coarse = new CoarseTraceClock(1);
+        for (String label : labels.split(",")) { //$NON-NLS-1$
+            if (!label.trim().isEmpty()) {
+                clocks.put(label.trim(), coarse);
+            }
+        }
+        return Collections.unmodifiableMap(clocks);
+    }
+
+    private static ITraceClock createClock(String type, long periodMillis) {
+        switch (type.trim()) {
+        case "coarse": //$NON-NLS-1$
+            return new CoarseTraceClock(periodMillis > 0 ? periodMillis : 1);
+        case "calibrated": //$NON-NLS-1$
+            return new CalibratedTraceClock(periodMillis > 0 ? periodMillis : 60000, Logger.getLogger(LogUtils.class.getName()), Level.INFO);
+        default:
+            return new PreciseTraceClock();
+        }
     }
 
     /**
@@ -165,7 +201,75 @@ public final class LogUtils {
      * @return Current time in nanoseconds since Unix epoch
      */
     private static long currentTimeNanos() {
-        return System.nanoTime() + TIME_OFFSET;
+        return sClock.currentTimeNanos();
+    }
+
+    /**
+     * Gets the current time in nanoseconds since the Unix epoch, from the
+     * clock of a label
+     *
+     * @param label
+     *            the label of the event, can be null
+     * @return Current time in nanoseconds since Unix epoch
+     */
+    private static long currentTimeNanos(String label) {
+        Map<String, ITraceClock> clocks = sLabelClocks;
+        ITraceClock clock = clocks.isEmpty() || label == null ? null : clocks.get(label);
+        return (clock == null ? sClock : clock).currentTimeNanos();
+    }
+
+    /**
+     * Get the clock used to stamp the events
+     *
+     * @return the clock
+     */
+    public static ITraceClock getClock() {
+        return sClock;
+    }
+
+    /**
+     * Set the clock used to stamp the events. The previous clock is disposed.
+     *
+     * @param clock
+     *            the new clock
+     */
+    public static void setClock(ITraceClock clock) {
+        ITraceClock previous = sClock;
+        sClock = Objects.requireNonNull(clock);
+        if (previous != clock && !sLabelClocks.containsValue(previous)) {
+            previous.dispose();
+        }
+    }
+
+    /**
+     * Get the clock used to stamp the events of a label
+     *
+     * @param label
+     *            the label
+     * @return the clock of the label, or the clock of all the events
+     */
+    public static ITraceClock getClock(String label) {
+        return sLabelClocks.getOrDefault(label, sClock);
+    }
+
+    /**
+     * Set the clock used to stamp the events of a label, e.g. a coarse clock
+     * for a label traced at a very high rate, where the precision does not
+     * matter. The previous clock of the label is disposed, unless it is still
+     * in use.
+     *
+     * @param label
+     *            the label
+     * @param clock
+     *            the new clock, null to use the clock of all the events
+     */
+    public static synchronized void setClock(String label, ITraceClock clock) {
+        Map<String, ITraceClock> clocks = new HashMap<>(sLabelClocks);
+        ITraceClock previous = clock == null ? clocks.remove(label) : clocks.put(label, clock);
+        sLabelClocks = clocks.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(clocks);
+        if (previous != null && previous != clock && previous != sClock && !clocks.containsValue(previous)) {
+            previous.dispose();
+        }
     }
 
     /*
@@ -180,6 +284,82 @@ public final class LogUtils {
     private static final String TIMESTAMP = "ts"; //$NON-NLS-1$
     private static final String PHASE = "ph"; //$NON-NLS-1$
 
+    /**
+     * The process ID, resolved once
+     */
+    private static final Long PROCESS_ID = resolveProcessId();
+
+    /**
+     * Maximum number of thread names and shared thread headers kept, this
+     * bounds the memory used when millions of virtual threads or tasks log
+     * events
+     */
+    private static final int MAX_THREADS = 10000;
+
+    /**
+     * Names of the threads that logged at least one event, read by the
+     * handlers to write the thread name metadata events. The least recently
+     * named threads are forgotten first.
+     */
+    private static final Map<Long, String> THREAD_NAMES = Collections.synchronizedMap(new LinkedHashMap<Long, String>(16, 0.75f, true) {
+        private static final long serialVersionUID = -3263581356468434862L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > MAX_THREADS;
+        }
+    });
+
+    /**
+     * How events are attributed to threads, set with the
+     * <code>traceThreadId</code> system property
+     */
+    private enum ThreadIdMode {
+        /** Every thread, platform or virtual, has its own ID (default) */
+        THREAD,
+        /** Virtual threads are attributed to their carrier thread */
+        CARRIER,
+        /** Threads with a task ID are attributed to that task */
+        TASK
+    }
+
+    private static final ThreadIdMode THREAD_ID_MODE = parseThreadIdMode(System.getProperty("traceThreadId", "thread")); //$NON-NLS-1$ //$NON-NLS-2$
+
+    /**
+     * The thread ID and its pre-encoded <code>"tid":x,"pid":y</code> fields,
+     * they are the same for every event of that thread
+     */
+    private static final class TraceThread {
+        private final long fId;
+        private final String fHeader;
+
+        private TraceThread(long id) {
+            fId = id;
+            fHeader = encodeThreadHeader(id);
+        }
+    }
+
+    /**
+     * The trace thread of each platform thread, computed once
+     */
+    private static final ThreadLocal<TraceThread> PLATFORM_THREAD = ThreadLocal.withInitial(() -> {
+        Thread thread = Thread.currentThread();
+        long threadId = Platform.threadId(thread);
+        THREAD_NAMES.put(threadId, thread.getName());
+        return new TraceThread(threadId);
+    });
+
+    /**
+     * Trace threads of the virtual threads, and of the carriers and tasks
+     * shared by many threads, cleared when full
+     */
+    private static final Map<Long, TraceThread> SHARED_THREADS = new ConcurrentHashMap<>();
+
+    /**
+     * The task ID of the current thread, inherited by the threads it starts
+     */
+    private static final InheritableThreadLocal<Long> TASK_ID = new InheritableThreadLocal<>();
+
     private static final String ARGS_ERROR_MESSAGE = "Data should be in the form of key, value, key1, value1, ... Trace Event Scope Log was supplied "; //$NON-NLS-1$
     private static final AtomicInteger ID_GENERATOR = new AtomicInteger(0);
 
@@ -201,7 +381,7 @@ public final class LogUtils {
          *            the supplier
          * @param parameters
          *            the parameters, typically ( number timestamp, char phase,
-         *            String thread id)
+         *            number thread id, number process id)
          */
         public TraceEventLogRecord(Level level, Supplier<String> supplier, Object... parameters) {
             super(level, ""); //$NON-NLS-1$
@@ -253,9 +433,11 @@ public final class LogUtils {
 
         private final long fTime;
         private final long fThreadId;
+        private final String fThreadHeader;
         private final Logger fLogger;
         private final Level fLevel;
         private final String fLabel;
+        private final boolean fTraced;
         private final Map<String, Object> fData = new HashMap<>();
 
         /**
@@ -274,23 +456,34 @@ public final class LogUtils {
          *            beginning of the scope
          */
         public ScopeLog(Logger log, Level level, String label, Object... args) {
-            fTime = currentTimeNanos();
             fLogger = log;
             fLevel = level;
-            fThreadId = Thread.currentThread().getId();
             fLabel = label;
+            fTraced = TraceSwitches.isTraced(label, null);
+            if (!fTraced) {
+                // switched off or sampled out, neither logged nor monitored
+                fTime = 0;
+                fThreadId = 0;
+                fThreadHeader = null;
+                return;
+            }
+            fTime = currentTimeNanos(fLabel);
+            TraceThread thread = currentThread();
+            fThreadId = thread.fId;
+            fThreadHeader = thread.fHeader;
+            TraceEventLoggerManager.getInstance().enter(label);
             char phase = 'B';
             validateArgs(args);
             Supplier<String> msgSupplier = () -> {
                 StringBuilder sb = new StringBuilder();
                 sb.append('{');
-                appendCommon(sb, phase, fTime, fThreadId);
+                appendCommon(sb, phase, fTime, fThreadHeader);
                 appendName(sb, fLabel);
                 appendArgs(sb, args);
                 sb.append('}');
                 return sb.toString();
             };
-            fLogger.log(new TraceEventLogRecord(fLevel, msgSupplier, fTime, phase, fThreadId));
+            fLogger.log(new TraceEventLogRecord(fLevel, msgSupplier, fTime, phase, fThreadId, PROCESS_ID));
         }
 
         /**
@@ -313,16 +506,19 @@ public final class LogUtils {
 
         @Override
         public void close() {
-            long time = currentTimeNanos();
+            if (!fTraced) {
+                return;
+            }
+            long time = currentTimeNanos(fLabel);
             char phase = 'E';
             Supplier<String> msgSupplier = () -> {
                 StringBuilder sb = new StringBuilder();
                 sb.append('{');
-                appendCommon(sb, phase, time, fThreadId);
+                appendCommon(sb, phase, time, fThreadHeader);
                 return appendArgs(sb, fData).append('}').toString();
             };
-            fLogger.log(new TraceEventLogRecord(fLevel, msgSupplier, time, phase, fThreadId));
-            TraceEventLoggerManager.getInstance().update(fLabel, time - fTime);
+            fLogger.log(new TraceEventLogRecord(fLevel, msgSupplier, time, phase, fThreadId, PROCESS_ID));
+            TraceEventLoggerManager.getInstance().exit(fLabel, time - fTime, time);
         }
     }
 
@@ -482,6 +678,7 @@ public final class LogUtils {
     public static class FlowScopeLog implements IFlowScopeLog, AutoCloseable {
 
         private final long fThreadId;
+        private final String fThreadHeader;
         private final Logger fLogger;
         private final Level fLevel;
         private final int fId;
@@ -489,6 +686,7 @@ public final class LogUtils {
         private final Map<String, Object> fData = new HashMap<>();
         private final String fLabel;
         private final long fTime;
+        private final boolean fTraced;
 
         /**
          * Flow scope logger constructor
@@ -511,31 +709,42 @@ public final class LogUtils {
          *            value2.... typically arguments
          */
         private FlowScopeLog(Logger log, Level level, String label, String category, int id, boolean startFlow, Object... args) {
-            fTime = currentTimeNanos();
             fId = id;
             fLogger = log;
             fLevel = level;
             fCategory = category;
             fLabel = label;
-            fThreadId = Thread.currentThread().getId();
+            fTraced = TraceSwitches.isTraced(label, category, id);
+            if (!fTraced) {
+                // switched off or sampled out with the rest of the flow
+                fTime = 0;
+                fThreadId = 0;
+                fThreadHeader = null;
+                return;
+            }
+            fTime = currentTimeNanos(fLabel);
+            TraceEventLoggerManager.getInstance().enter(label);
+            TraceThread thread = currentThread();
+            fThreadId = thread.fId;
+            fThreadHeader = thread.fHeader;
             char phaseB = 'B';
             validateArgs(args);
             Supplier<String> msgSupplier = () -> {
                 StringBuilder sb = new StringBuilder();
                 sb.append('{');
-                appendCommon(sb, phaseB, fTime, fThreadId);
+                appendCommon(sb, phaseB, fTime, fThreadHeader);
                 appendName(sb, fLabel);
                 appendArgs(sb, args);
                 sb.append('}');
                 return sb.toString();
             };
-            fLogger.log(new LogUtils.TraceEventLogRecord(fLevel, msgSupplier, fTime, phaseB, fThreadId));
+            fLogger.log(new LogUtils.TraceEventLogRecord(fLevel, msgSupplier, fTime, phaseB, fThreadId, PROCESS_ID));
             // Add a flow event, either start or step in enclosing scope
             char phase = startFlow ? 's' : 't';
             msgSupplier = () -> {
                 StringBuilder sb = new StringBuilder();
                 sb.append('{');
-                appendCommon(sb, phase, fTime, fThreadId);
+                appendCommon(sb, phase, fTime, fThreadHeader);
                 appendName(sb, label);
                 appendCategory(sb, category);
                 appendId(sb, fId);
@@ -543,7 +752,7 @@ public final class LogUtils {
                 sb.append('}');
                 return sb.toString();
             };
-            fLogger.log(new LogUtils.TraceEventLogRecord(fLevel, msgSupplier, fTime, phase, fThreadId));
+            fLogger.log(new LogUtils.TraceEventLogRecord(fLevel, msgSupplier, fTime, phase, fThreadId, PROCESS_ID));
         }
 
         /**
@@ -555,13 +764,16 @@ public final class LogUtils {
          *            the arguments to log
          */
         public void step(String label, Object... args) {
-            long time = currentTimeNanos();
+            if (!fTraced) {
+                return;
+            }
+            long time = currentTimeNanos(fLabel);
             char phase = 't';
             validateArgs(args);
             Supplier<String> msgSupplier = () -> {
                 StringBuilder sb = new StringBuilder();
                 sb.append('{');
-                appendCommon(sb, phase, time, fThreadId);
+                appendCommon(sb, phase, time, fThreadHeader);
                 appendName(sb, label);
                 appendCategory(sb, fCategory);
                 appendId(sb, fId);
@@ -569,7 +781,7 @@ public final class LogUtils {
                 sb.append('}');
                 return sb.toString();
             };
-            fLogger.log(new LogUtils.TraceEventLogRecord(fLevel, msgSupplier, time, phase, fThreadId));
+            fLogger.log(new LogUtils.TraceEventLogRecord(fLevel, msgSupplier, time, phase, fThreadId, PROCESS_ID));
         }
 
         /**
@@ -602,18 +814,21 @@ public final class LogUtils {
 
         @Override
         public void close() {
-            long time = currentTimeNanos();
+            if (!fTraced) {
+                return;
+            }
+            long time = currentTimeNanos(fLabel);
             char phase = 'E';
             Supplier<String> msgSupplier = () -> {
                 StringBuilder sb = new StringBuilder();
                 sb.append('{');
-                appendCommon(sb, phase, time, fThreadId);
+                appendCommon(sb, phase, time, fThreadHeader);
                 appendArgs(sb, fData);
                 sb.append('}');
                 return sb.toString();
             };
-            fLogger.log(new LogUtils.TraceEventLogRecord(fLevel, msgSupplier, time, phase, fThreadId));
-            TraceEventLoggerManager.getInstance().update(fLabel, time - fTime);
+            fLogger.log(new LogUtils.TraceEventLogRecord(fLevel, msgSupplier, time, phase, fThreadId, PROCESS_ID));
+            TraceEventLoggerManager.getInstance().exit(fLabel, time - fTime, time);
         }
     }
 
@@ -637,18 +852,20 @@ public final class LogUtils {
      */
     public static int traceObjectCreation(Logger logger, Level level, Object item) {
         long time = currentTimeNanos();
-        long threadId = Thread.currentThread().getId();
+        TraceThread thread = currentThread();
+        long threadId = thread.fId;
+        String threadHeader = thread.fHeader;
         int identityHashCode = System.identityHashCode(item);
         char phase = 'N';
         Supplier<String> msgSupplier = () -> {
             StringBuilder sb = new StringBuilder();
             sb.append('{');
-            appendCommon(sb, phase, time, threadId);
+            appendCommon(sb, phase, time, threadHeader);
             appendName(sb, item.getClass().getSimpleName());
             appendId(sb, identityHashCode);
             return sb.append('}').toString();
         };
-        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId));
+        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId, PROCESS_ID));
         return identityHashCode;
     }
 
@@ -668,17 +885,19 @@ public final class LogUtils {
      */
     public static void traceObjectDestruction(Logger logger, Level level, Object item) {
         long time = currentTimeNanos();
-        long threadId = Thread.currentThread().getId();
+        TraceThread thread = currentThread();
+        long threadId = thread.fId;
+        String threadHeader = thread.fHeader;
         char phase = 'D';
         Supplier<String> msgSupplier = () -> {
             StringBuilder sb = new StringBuilder();
             sb.append('{');
-            appendCommon(sb, phase, time, threadId);
+            appendCommon(sb, phase, time, threadHeader);
             appendName(sb, item.getClass().getSimpleName());
             appendId(sb, System.identityHashCode(item));
             return sb.append('}').toString();
         };
-        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId));
+        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId, PROCESS_ID));
     }
 
     /**
@@ -698,17 +917,19 @@ public final class LogUtils {
      */
     public static void traceObjectDestruction(Logger logger, Level level, Object item, int uniqueId) {
         long time = currentTimeNanos();
-        long threadId = Thread.currentThread().getId();
+        TraceThread thread = currentThread();
+        long threadId = thread.fId;
+        String threadHeader = thread.fHeader;
         char phase = 'D';
         Supplier<String> msgSupplier = () -> {
             StringBuilder sb = new StringBuilder();
             sb.append('{');
-            appendCommon(sb, phase, time, threadId);
+            appendCommon(sb, phase, time, threadHeader);
             appendName(sb, item.getClass().getSimpleName());
             appendId(sb, uniqueId);
             return sb.append('}').toString();
         };
-        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId));
+        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId, PROCESS_ID));
     }
 
     /**
@@ -730,20 +951,25 @@ public final class LogUtils {
      *            Additional arguments to log
      */
     public static void traceAsyncStart(Logger logger, Level level, String name, String category, int id, Object... args) {
-        long time = currentTimeNanos();
-        long threadId = Thread.currentThread().getId();
+        if (!TraceSwitches.isTraced(name, category, id)) {
+            return;
+        }
+        long time = currentTimeNanos(name);
+        TraceThread thread = currentThread();
+        long threadId = thread.fId;
+        String threadHeader = thread.fHeader;
         char phase = 'b';
         validateArgs(args);
         Supplier<String> msgSupplier = () -> {
             StringBuilder sb = new StringBuilder();
             sb.append('{');
-            appendCommon(sb, phase, time, threadId);
+            appendCommon(sb, phase, time, threadHeader);
             appendName(sb, name);
             appendCategory(sb, category);
             appendId(sb, id);
             return appendArgs(sb, args).append('}').toString();
         };
-        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId));
+        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId, PROCESS_ID));
     }
 
     /**
@@ -765,20 +991,25 @@ public final class LogUtils {
      *            Additional arguments to log
      */
     public static void traceAsyncNested(Logger logger, Level level, String name, String category, int id, Object... args) {
-        long time = currentTimeNanos();
-        long threadId = Thread.currentThread().getId();
+        if (!TraceSwitches.isTraced(name, category, id)) {
+            return;
+        }
+        long time = currentTimeNanos(name);
+        TraceThread thread = currentThread();
+        long threadId = thread.fId;
+        String threadHeader = thread.fHeader;
         char phase = 'n';
         validateArgs(args);
         Supplier<String> msgSupplier = () -> {
             StringBuilder sb = new StringBuilder();
             sb.append('{');
-            appendCommon(sb, phase, time, threadId);
+            appendCommon(sb, phase, time, threadHeader);
             appendName(sb, name);
             appendCategory(sb, category);
             appendId(sb, id);
             return appendArgs(sb, args).append('}').toString();
         };
-        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId));
+        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId, PROCESS_ID));
     }
 
     /**
@@ -800,20 +1031,25 @@ public final class LogUtils {
      *            Additional arguments to log
      */
     public static void traceAsyncEnd(Logger logger, Level level, String name, String category, int id, Object... args) {
-        long time = currentTimeNanos();
-        long threadId = Thread.currentThread().getId();
+        if (!TraceSwitches.isTraced(name, category, id)) {
+            return;
+        }
+        long time = currentTimeNanos(name);
+        TraceThread thread = currentThread();
+        long threadId = thread.fId;
+        String threadHeader = thread.fHeader;
         char phase = 'e';
         validateArgs(args);
         Supplier<String> msgSupplier = () -> {
             StringBuilder sb = new StringBuilder();
             sb.append('{');
-            appendCommon(sb, phase, time, threadId);
+            appendCommon(sb, phase, time, threadHeader);
             appendName(sb, name);
             appendCategory(sb, category);
             appendId(sb, id);
             return appendArgs(sb, args).append('}').toString();
         };
-        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId));
+        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId, PROCESS_ID));
     }
 
     /**
@@ -834,18 +1070,23 @@ public final class LogUtils {
      *            Additional arguments to log
      */
     public static void traceInstant(Logger logger, Level level, String name, Object... args) {
-        long time = currentTimeNanos();
-        long threadId = Thread.currentThread().getId();
+        if (!TraceSwitches.isTraced(name, null)) {
+            return;
+        }
+        long time = currentTimeNanos(name);
+        TraceThread thread = currentThread();
+        long threadId = thread.fId;
+        String threadHeader = thread.fHeader;
         char phase = 'i';
         validateArgs(args);
         Supplier<String> msgSupplier = () -> {
             StringBuilder sb = new StringBuilder();
             sb.append('{');
-            appendCommon(sb, phase, time, threadId);
+            appendCommon(sb, phase, time, threadHeader);
             appendName(sb, name);
             return appendArgs(sb, args).append('}').toString();
         };
-        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId));
+        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId, PROCESS_ID));
     }
 
     /**
@@ -862,18 +1103,38 @@ public final class LogUtils {
      *            The counters to log in the format : "title", value
      */
     public static void traceCounter(Logger logger, Level level, String name, Object... args) {
-        long time = currentTimeNanos();
-        long threadId = Thread.currentThread().getId();
+        if (TraceSwitches.isTraced(name, null)) {
+            logger.log(createCounterRecord(level, name, args));
+        }
+    }
+
+    /**
+     * Create a counter event on the current thread, for the handlers to write
+     * their own counters
+     *
+     * @param level
+     *            The {@link Level} of this event.
+     * @param name
+     *            The name of the counters
+     * @param args
+     *            The counters in the format : "title", value
+     * @return the counter record
+     */
+    static TraceEventLogRecord createCounterRecord(Level level, String name, Object... args) {
+        long time = currentTimeNanos(name);
+        TraceThread thread = currentThread();
+        long threadId = thread.fId;
+        String threadHeader = thread.fHeader;
         char phase = 'C';
         validateArgs(args);
         Supplier<String> msgSupplier = () -> {
             StringBuilder sb = new StringBuilder();
             sb.append('{');
-            appendCommon(sb, phase, time, threadId);
+            appendCommon(sb, phase, time, threadHeader);
             appendName(sb, name);
             return appendArgs(sb, args).append('}').toString();
         };
-        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId));
+        return new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId, PROCESS_ID);
     }
 
     /**
@@ -894,20 +1155,110 @@ public final class LogUtils {
      *            "color" and an rbga will be used
      */
     public static void traceMarker(Logger logger, Level level, String name, long duration, Object... args) {
-        long time = currentTimeNanos();
-        long threadId = Thread.currentThread().getId();
+        if (!TraceSwitches.isTraced(name, null)) {
+            return;
+        }
+        long time = currentTimeNanos(name);
+        TraceThread thread = currentThread();
+        long threadId = thread.fId;
+        String threadHeader = thread.fHeader;
         char phase = 'R';
         validateArgs(args);
         Supplier<String> msgSupplier = () -> {
             StringBuilder sb = new StringBuilder();
             sb.append('{');
-            appendCommon(sb, phase, time, threadId);
+            appendCommon(sb, phase, time, threadHeader);
             appendName(sb, name);
             sb.append(',');
             writeObject(sb, "dur", duration); //$NON-NLS-1$
             return appendArgs(sb, args).append('}').toString();
         };
-        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId));
+        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId, PROCESS_ID));
+    }
+
+    /**
+     * Clock sync events mark a point where the trace clock was aligned with
+     * another clock domain, here the wall clock. They are written by the
+     * {@link CalibratedTraceClock}.
+     *
+     * @param logger
+     *            The Logger
+     * @param level
+     *            The {@link Level} of this event.
+     * @param time
+     *            the time of the sync point, in nanoseconds since the epoch
+     * @param syncId
+     *            the unique ID of the sync point
+     * @param args
+     *            Additional arguments to log
+     */
+    static void traceClockSync(Logger logger, Level level, long time, String syncId, Object... args) {
+        TraceThread thread = currentThread();
+        long threadId = thread.fId;
+        String threadHeader = thread.fHeader;
+        char phase = 'c';
+        validateArgs(args);
+        Supplier<String> msgSupplier = () -> {
+            StringBuilder sb = new StringBuilder();
+            sb.append('{');
+            appendCommon(sb, phase, time, threadHeader);
+            appendName(sb, "clock_sync"); //$NON-NLS-1$
+            Object[] syncArgs = new Object[args.length + 2];
+            syncArgs[0] = "sync_id"; //$NON-NLS-1$
+            syncArgs[1] = syncId;
+            System.arraycopy(args, 0, syncArgs, 2, args.length);
+            return appendArgs(sb, syncArgs).append('}').toString();
+        };
+        logger.log(new LogUtils.TraceEventLogRecord(level, msgSupplier, time, phase, threadId, PROCESS_ID));
+    }
+
+    /**
+     * Create a metadata event naming a thread. These are written once per
+     * thread by the handlers, so the thread name does not need to be an
+     * argument of every event.
+     *
+     * @param level
+     *            The {@link Level} of this event.
+     * @param threadId
+     *            the thread ID
+     * @return the metadata record, or null if the thread never logged an event
+     */
+    static TraceEventLogRecord createThreadNameRecord(Level level, long threadId) {
+        String threadName = THREAD_NAMES.get(threadId);
+        if (threadName == null) {
+            return null;
+        }
+        return createMetadataRecord(level, "thread_name", threadId, threadName); //$NON-NLS-1$
+    }
+
+    /**
+     * Create a metadata event naming this process. The name is the
+     * <code>traceProcessName</code> system property, or the main class of the
+     * JVM.
+     *
+     * @param level
+     *            The {@link Level} of this event.
+     * @param threadId
+     *            the thread ID to attach the event to
+     * @return the metadata record
+     */
+    static TraceEventLogRecord createProcessNameRecord(Level level, long threadId) {
+        String command = System.getProperty("sun.java.command", "java").trim(); //$NON-NLS-1$ //$NON-NLS-2$
+        int index = command.indexOf(' ');
+        String processName = System.getProperty("traceProcessName", index > 0 ? command.substring(0, index) : command); //$NON-NLS-1$
+        return createMetadataRecord(level, "process_name", threadId, processName); //$NON-NLS-1$
+    }
+
+    private static TraceEventLogRecord createMetadataRecord(Level level, String name, long threadId, String value) {
+        char phase = 'M';
+        Supplier<String> msgSupplier = () -> {
+            StringBuilder sb = new StringBuilder();
+            sb.append('{');
+            appendCommon(sb, phase, 0L, encodeThreadHeader(threadId));
+            appendName(sb, name);
+            return appendArgs(sb, NAME, value).append('}').toString();
+        };
+        return new LogUtils.TraceEventLogRecord(level, msgSupplier, 0L, phase, threadId, PROCESS_ID);
     }
 
     // -------------------------------------------------------------------------
@@ -917,11 +1268,116 @@ public final class LogUtils {
     /*
      * USE ME FIRST
      */
-    private static StringBuilder appendCommon(StringBuilder appendTo, char phase, long time, long threadId) {
-        writeObject(appendTo, TIMESTAMP, String.format(FORMAT, time / 1000, time % 1000)).append(','); // $NON-NLS-1$
+    private static StringBuilder appendCommon(StringBuilder appendTo, char phase, long time, String threadHeader) {
+        appendTo.append('"').append(TIMESTAMP).append("\":\"").append(time / 1000).append('.'); //$NON-NLS-1$
+        long micros = time % 1000;
+        if (micros < 100) {
+            appendTo.append(micros < 10 ? "00" : "0"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        appendTo.append(micros).append("\","); //$NON-NLS-1$
         writeObject(appendTo, PHASE, phase).append(',');
-        writeObject(appendTo, TID, threadId).append(',');
-        return writeObject(appendTo, PID, threadId); // $NON-NLS-1$
+        return appendTo.append(threadHeader);
+    }
+
+    private static ThreadIdMode parseThreadIdMode(String mode) {
+        try {
+            return ThreadIdMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            // we tried!
+            return ThreadIdMode.THREAD;
+        }
+    }
+
+    /**
+     * Get the trace thread to attribute the events of the current thread to.
+     * Only platform threads keep a thread local, virtual threads share the
+     * bounded cache of the carriers and tasks, so per thread state stays
+     * bounded with millions of them.
+     */
+    private static TraceThread currentThread() {
+        Thread thread = Thread.currentThread();
+        if (THREAD_ID_MODE == ThreadIdMode.TASK) {
+            Long taskId = TASK_ID.get();
+            if (taskId != null) {
+                return sharedThread(taskId, "task " + taskId); //$NON-NLS-1$
+            }
+        }
+        if (!Platform.isVirtual(thread)) {
+            return PLATFORM_THREAD.get();
+        }
+        if (THREAD_ID_MODE == ThreadIdMode.CARRIER) {
+            Thread carrier = Platform.currentCarrierThread();
+            return sharedThread(Platform.threadId(carrier), carrier.getName());
+        }
+        long threadId = Platform.threadId(thread);
+        String name = thread.getName();
+        // virtual threads are unnamed by default
+        return sharedThread(threadId, name.isEmpty() ? "virtual " + threadId : name); //$NON-NLS-1$
+    }
+
+    private static TraceThread sharedThread(long threadId, String name) {
+        TraceThread traceThread = SHARED_THREADS.get(threadId);
+        if (traceThread == null) {
+            if (SHARED_THREADS.size() >= MAX_THREADS) {
+                SHARED_THREADS.clear();
+            }
+            traceThread = new TraceThread(threadId);
+            SHARED_THREADS.put(threadId, traceThread);
+            THREAD_NAMES.put(threadId, name);
+        }
+        return traceThread;
+    }
+
+    /**
+     * Set the logical task ID of the current thread and of the threads it will
+     * start. When the <code>traceThreadId</code> system property is
+     * <code>task</code>, their events are attributed to this ID instead of
+     * their own thread ID, so that many short lived (e.g. virtual) threads
+     * doing the same task show up as one.
+     *
+     * @param taskId
+     *            the task ID
+     */
+    public static void setTaskId(long taskId) {
+        TASK_ID.set(taskId);
+    }
+
+    /**
+     * Clear the logical task ID of the current thread
+     */
+    public static void clearTaskId() {
+        TASK_ID.remove();
+    }
+
+    /**
+     * Encode the thread and process ID fields once per thread, they are the
+     * same for every event of that thread.
+     */
+    private static String encodeThreadHeader(long threadId) {
+        StringBuilder sb = new StringBuilder();
+        writeObject(sb, TID, threadId).append(',');
+        return writeObject(sb, PID, PROCESS_ID).toString();
+    }
+
+    /**
+     * Get the ID of this process, or 0 if the runtime does not tell.
+     */
+    private static Long resolveProcessId() {
+        try {
+            return Platform.processId();
+        } catch (RuntimeException e) {
+            // we tried!
+            return 0L;
+        }
+    }
+
+    /**
+     * Get the process ID written in the events
+     *
+     * @return the process ID
+     */
+    static long getProcessId() {
+        return PROCESS_ID;
     }
 
     private static StringBuilder appendName(StringBuilder sb, String name) {
@@ -1022,6 +1478,27 @@ public final class LogUtils {
         return appendTo.append('}');
     }
 
+    /**
+     * Read back the first string field of an event written by this class, the
+     * values are not escaped so this is a plain search.
+     *
+     * @param event
+     *            the serialized event
+     * @param key
+     *            the key of the field, such as "name" or "id"
+     * @return the value, or null if there is no such string field
+     */
+    static String readField(String event, String key) {
+        String prefix = '"' + key + "\":\""; //$NON-NLS-1$
+        int start = event.indexOf(prefix);
+        if (start < 0) {
+            return null;
+        }
+        start += prefix.length();
+        int end = event.indexOf('"', start);
+        return end < 0 ? null : event.substring(start, end);
+    }
+
     private static StringBuilder writeObject(StringBuilder appendTo, Object key, Object value) {
         appendTo.append('"').append(key).append('"').append(':');
         if (value instanceof Number) {
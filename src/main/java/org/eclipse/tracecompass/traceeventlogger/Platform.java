@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Access to runtime features that depend on the Java version. This is the Java
+ * 8 implementation, the multi-release jar overlays faster or more complete
+ * versions for newer runtimes (see <code>src/main/java9</code> and
+ * <code>src/main/java21</code>). All the versions must keep the same
+ * signatures.
+ */
+final class Platform {
+
+    private static volatile int sFence;
+
+    private Platform() {
+        // do nothing
+    }
+
+    /**
+     * Get the ID of this process
+     *
+     * @return the process ID, from the runtime name before Java 9
+     */
+    static long processId() {
+        // the part before the '@' on most JVMs
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int index = name.indexOf('@');
+        return Long.parseLong(index > 0 ? name.substring(0, index) : name);
+    }
+
+    /**
+     * Get the wall clock time
+     *
+     * @return the time in nanoseconds since the Unix epoch, with a millisecond
+     *         resolution before Java 9
+     */
+    static long wallClockNanos() {
+        return System.currentTimeMillis() * 1_000_000L;
+    }
+
+    /**
+     * Hint that the caller is busy waiting
+     */
+    static void onSpinWait() {
+        // not available before Java 9
+    }
+
+    /**
+     * Make sure the reads before this call are done before the reads after it
+     */
+    @SuppressWarnings("unused")
+    static void loadFence() {
+        // no fences before Java 9: a volatile write then a volatile read, a
+        // full fence on the JVMs, the reads after it cannot move before it
+        sFence = 0;
+        int fence = sFence;
+    }
+
+    /**
+     * Get the ID of a thread
+     *
+     * @param thread
+     *            the thread
+     * @return the thread ID
+     */
+    @SuppressWarnings("deprecation")
+    static long threadId(Thread thread) {
+        return thread.getId();
+    }
+
+    /**
+     * Is a thread a virtual thread?
+     *
+     * @param thread
+     *            the thread
+     * @return true if the thread is virtual, always false before Java 21
+     */
+    static boolean isVirtual(Thread thread) {
+        return false;
+    }
+
+    /**
+     * Get the platform thread carrying the current thread
+     *
+     * @return the carrier thread, the current thread before Java 21
+     */
+    static Thread currentCarrierThread() {
+        return Thread.currentThread();
+    }
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+/**
+ * Precise clock, reads {@link System#nanoTime()} on every call and shifts it
+ * to the Unix epoch with an offset computed once at creation.
+ *
+ * This is the default clock. It has the best resolution, but the offset is
+ * never corrected, so it slowly drifts away from the wall clock in long running
+ * processes. See {@link CalibratedTraceClock} if alignment matters.
+ */
+public final class PreciseTraceClock implements ITraceClock {
+
+    /**
+     * Offset between the wall clock and System.nanoTime() in nanoseconds. Used
+     * to convert between the two time bases while maintaining nanosecond
+     * precision. The wall clock has a microsecond resolution or better from
+     * Java 9, a millisecond one before.
+     */
+    private final long fOffset;
+
+    /**
+     * Constructor
+     */
+    public PreciseTraceClock() {
+        // Get current time in both bases
+        long wallNanos = Platform.wallClockNanos();
+        long nanoTime = System.nanoTime();
+        fOffset = wallNanos - nanoTime;
+    }
+
+    @Override
+    public long currentTimeNanos() {
+        return System.nanoTime() + fOffset;
+    }
+}
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Open scopes of each thread, keyed by the primitive process and thread keys
+ * of {@link SnapshotRing#tidKey(Object)}. Threads without open scopes are
+ * removed, and the number of threads kept is bounded: when it is reached, the
+ * thread idle for the longest time in its stripe is evicted, so pools creating
+ * threads, or threads dying in a scope, cannot grow it without bound. Stacks
+ * are bounded too, and an end without a start is ignored.
+ *
+ * The threads are spread in a few stripes, each an open addressing table
+ * locked on its own.
+ */
+final class ScopeStacks {
+
+    /** Maximum number of stripes */
+    private static final int STRIPES = 16;
+    /** Maximum number of open scopes kept per thread */
+    private static final int MAX_DEPTH = 1024;
+
+    /**
+     * The scope closed by an end event
+     */
+    static final class ScopeEnd {
+        long fStart;
+        String fLabel;
+        boolean fOutermost;
+    }
+
+    /**
+     * Start times and labels of the open scopes of a thread
+     */
+    private static final class Stack {
+        private long[] fStarts = new long[8];
+        private String[] fLabels = new String[8];
+        private int fSize;
+        /** Scopes opened past {@link #MAX_DEPTH}, not kept */
+        private int fOverflow;
+        private long fLastUse;
+
+        void push(long start, String label) {
+            if (fSize == MAX_DEPTH) {
+                fOverflow++;
+                return;
+            }
+            if (fSize == fStarts.length) {
+                fStarts = Arrays.copyOf(fStarts, fSize * 2);
+                fLabels = Arrays.copyOf(fLabels, fSize * 2);
+            }
+            fStarts[fSize] = start;
+            fLabels[fSize++] = label;
+        }
+
+        boolean pop(ScopeEnd end) {
+            if (fOverflow > 0) {
+                fOverflow--;
+                return false;
+            }
+            fSize--;
+            end.fStart = fStarts[fSize];
+            end.fLabel = fLabels[fSize];
+            fLabels[fSize] = null;
+            end.fOutermost = fSize == 0;
+            return true;
+        }
+
+        boolean isEmpty() {
+            return fSize == 0 && fOverflow == 0;
+        }
+    }
+
+    /**
+     * Linear probing table of the stacks of some threads
+     */
+    private static final class Stripe {
+        private long[] fPids = new long[8];
+        private long[] fTids = new long[8];
+        private Stack[] fStacks = new Stack[8];
+        private int fSize;
+        /** Logical clock of the last uses */
+        private long fTick;
+
+        int find(long pid, long tid) {
+            int mask = fStacks.length - 1;
+            for (int i = index(pid, tid) & mask;; i = (i + 1) & mask) {
+                if (fStacks[i] == null || (fPids[i] == pid && fTids[i] == tid)) {
+                    return i;
+                }
+            }
+        }
+
+        Stack get(long pid, long tid) {
+            Stack stack = fStacks[find(pid, tid)];
+            if (stack != null) {
+                stack.fLastUse = fTick++;
+            }
+            return stack;
+        }
+
+        Stack getOrAdd(long pid, long tid, int maxSize, AtomicLong evicted) {
+            int i = find(pid, tid);
+            if (fStacks[i] == null) {
+                if (fSize >= maxSize) {
+                    removeAt(leastRecentlyUsed());
+                    evicted.incrementAndGet();
+                    i = find(pid, tid);
+                } else if (2 * (fSize + 1) > fStacks.length) {
+                    grow();
+                    i = find(pid, tid);
+                }
+                fPids[i] = pid;
+                fTids[i] = tid;
+                fStacks[i] = new Stack();
+                fSize++;
+            }
+            Stack stack = fStacks[i];
+            stack.fLastUse = fTick++;
+            return stack;
+        }
+
+        void remove(long pid, long tid) {
+            int i = find(pid, tid);
+            if (fStacks[i] != null) {
+                removeAt(i);
+            }
+        }
+
+        private int leastRecentlyUsed() {
+            int oldest = -1;
+            for (int i = 0; i < fStacks.length; i++) {
+                if (fStacks[i] != null && (oldest < 0 || fStacks[i].fLastUse < fStacks[oldest].fLastUse)) {
+                    oldest = i;
+                }
+            }
+            return oldest;
+        }
+
+        /**
+         * Remove a slot, shifting back the following slots of its cluster
+         */
+        private void removeAt(int slot) {
+            int mask = fStacks.length - 1;
+            int hole = slot;
+            fStacks[hole] = null;
+            fSize--;
+            for (int i = (hole + 1) & mask; fStacks[i] != null; i = (i + 1) & mask) {
+                int home = index(fPids[i], fTids[i]) & mask;
+                // move it unless its home is between the hole and it
+                if (hole <= i ? (home <= hole || home > i) : (home <= hole && home > i)) {
+                    fPids[hole] = fPids[i];
+                    fTids[hole] = fTids[i];
+                    fStacks[hole] = fStacks[i];
+                    fStacks[i] = null;
+                    hole = i;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] pids = fPids;
+            long[] tids = fTids;
+            Stack[] stacks = fStacks;
+            fPids = new long[stacks.length * 2];
+            fTids = new long[stacks.length * 2];
+            fStacks = new Stack[stacks.length * 2];
+            for (int j = 0; j < stacks.length; j++) {
+                if (stacks[j] != null) {
+                    int i = find(pids[j], tids[j]);
+                    fPids[i] = pids[j];
+                    fTids[i] = tids[j];
+                    fStacks[i] = stacks[j];
+                }
+            }
+        }
+    }
+
+    private final Stripe[] fStripes;
+    private final int fMaxPerStripe;
+    private final AtomicLong fEvicted = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param maxThreads
+     *            the maximum number of threads with open scopes
+     */
+    ScopeStacks(int maxThreads) {
+        int stripes = Math.min(STRIPES, Integer.highestOneBit(Math.max(1, maxThreads)));
+        fStripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            fStripes[i] = new Stripe();
+        }
+        fMaxPerStripe = Math.max(1, maxThreads / stripes);
+    }
+
+    private static int index(long pid, long tid) {
+        long hash = (pid * 31 + tid) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private Stripe stripe(long pid, long tid) {
+        // the high bits, the low ones pick the slots
+        return fStripes[(index(pid, tid) >>> 24) & (fStripes.length - 1)];
+    }
+
+    /**
+     * Open a scope
+     *
+     * @param pid
+     *            the process key
+     * @param tid
+     *            the thread key
+     * @param start
+     *            the start time
+     * @param label
+     *            the label of the scope, can be null
+     */
+    void push(long pid, long tid, long start, String label) {
+        Stripe stripe = stripe(pid, tid);
+        synchronized (stripe) {
+            stripe.getOrAdd(pid, tid, fMaxPerStripe, fEvicted).push(start, label);
+        }
+    }
+
+    /**
+     * Close the innermost scope of a thread
+     *
+     * @param pid
+     *            the process key
+     * @param tid
+     *            the thread key
+     * @param end
+     *            the closed scope, filled if there is one
+     * @return true if a scope was closed, false if the thread has no open scope
+     *         kept
+     */
+    boolean pop(long pid, long tid, ScopeEnd end) {
+        Stripe stripe = stripe(pid, tid);
+        synchronized (stripe) {
+            Stack stack = stripe.get(pid, tid);
+            if (stack == null) {
+                return false;
+            }
+            boolean popped = stack.pop(end);
+            if (stack.isEmpty()) {
+                // only threads with open scopes are kept, threads come and go
+                stripe.remove(pid, tid);
+            }
+            return popped;
+        }
+    }
+
+    /**
+     * Get the start of the outermost open scope of a thread
+     *
+     * @param pid
+     *            the process key
+     * @param tid
+     *            the thread key
+     * @return the start time, or {@link Long#MIN_VALUE} if there is none
+     */
+    long outermost(long pid, long tid) {
+        Stripe stripe = stripe(pid, tid);
+        synchronized (stripe) {
+            Stack stack = stripe.get(pid, tid);
+            return stack == null || stack.fSize == 0 ? Long.MIN_VALUE : stack.fStarts[0];
+        }
+    }
+
+    /**
+     * Get the number of threads with open scopes
+     *
+     * @return the number of threads
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : fStripes) {
+            synchronized (stripe) {
+                size += stripe.fSize;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the number of threads evicted with open scopes
+     *
+     * @return the number of evicted threads
+     */
+    long evicted() {
+        return fEvicted.get();
+    }
+}
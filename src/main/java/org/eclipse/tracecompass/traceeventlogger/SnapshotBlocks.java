@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compressed history behind a {@link SnapshotRing}. The events of the ring are
+ * sealed in blocks before they are overwritten, each block compressed with a
+ * {@link Deflater}, the oldest blocks are dropped when they use too much
+ * memory. The ring stays the uncompressed block the events are appended to.
+ *
+ * Sealing and reading are done by the thread writing the snapshots, they only
+ * wait for each other. The blocks are read one at a time, so a snapshot never
+ * holds more than one of them decompressed.
+ */
+final class SnapshotBlocks {
+
+    /**
+     * A sealed block, the events between two sequence numbers
+     */
+    private static final class Block {
+        private final long fFirstSeq;
+        private final long fEndSeq;
+        private final long fFirstTs;
+        private final long fLastTs;
+        private final int fCount;
+        private final byte[] fData;
+
+        Block(long firstSeq, long endSeq, long firstTs, long lastTs, int count, byte[] data) {
+            fFirstSeq = firstSeq;
+            fEndSeq = endSeq;
+            fFirstTs = firstTs;
+            fLastTs = lastTs;
+            fCount = count;
+            fData = data;
+        }
+    }
+
+    private final long fMaxBytes;
+    private final Deque<Block> fBlocks = new ArrayDeque<>();
+    private final Deflater fDeflater = new Deflater(Deflater.BEST_SPEED);
+    /** Sequence number of the first event not sealed yet */
+    private volatile long fSealedUpTo;
+    private long fBytes;
+    private long fCount;
+    private boolean fClosed;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes
+     *            the maximum size of the compressed blocks
+     */
+    SnapshotBlocks(long maxBytes) {
+        fMaxBytes = maxBytes;
+    }
+
+    /**
+     * Get the sequence number of the first event not sealed yet, the events
+     * after it are only in the ring
+     *
+     * @return the sequence number
+     */
+    long sealedUpTo() {
+        return fSealedUpTo;
+    }
+
+    /**
+     * Seal the events of the ring not sealed yet in a new block. Events
+     * overwritten before being sealed are lost, the block stops before the
+     * events still being written.
+     *
+     * @param ring
+     *            the ring
+     * @param maxAge
+     *            the age in nanoseconds after which the blocks are dropped, 0
+     *            to keep them
+     */
+    synchronized void seal(SnapshotRing ring, long maxAge) {
+        if (fClosed) {
+            return;
+        }
+        long from = fSealedUpTo;
+        List<SnapshotRing.Entry> entries = ring.read(from, ring.next());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long end = from;
+        long firstTs = Long.MAX_VALUE;
+        long lastTs = Long.MIN_VALUE;
+        int count = 0;
+        fDeflater.reset();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, fDeflater))) {
+            for (SnapshotRing.Entry entry : entries) {
+                if (entry.fSeq != end && end >= ring.oldest()) {
+                    // not written yet, sealed with the next block
+                    break;
+                }
+                byte[] message = ring.message(entry);
+                if (message != null) {
+                    out.writeLong(entry.fSeq);
+                    out.writeLong(entry.fTs);
+                    out.writeLong(entry.fTid);
+                    out.writeBoolean(entry.fNumericTid);
+                    out.writeChar(entry.fPhase);
+                    out.writeInt(message.length);
+                    out.write(message);
+                    firstTs = Math.min(firstTs, entry.fTs);
+                    lastTs = Math.max(lastTs, entry.fTs);
+                    count++;
+                }
+                end = entry.fSeq + 1;
+            }
+        } catch (IOException e) {
+            // not with an array
+            return;
+        }
+        if (count > 0) {
+            Block block = new Block(from, end, firstTs, lastTs, count, bytes.toByteArray());
+            fBlocks.addLast(block);
+            fBytes += block.fData.length;
+            fCount += count;
+        }
+        fSealedUpTo = end;
+        // by memory, then by age
+        Block oldest = fBlocks.peekFirst();
+        while (oldest != null && (fBytes > fMaxBytes || maxAge > 0 && count > 0 && oldest.fLastTs < lastTs - maxAge)) {
+            fBlocks.removeFirst();
+            fBytes -= oldest.fData.length;
+            fCount -= oldest.fCount;
+            oldest = fBlocks.peekFirst();
+        }
+    }
+
+    /**
+     * Receives the events of the blocks, one block is decompressed at a time
+     */
+    interface Visitor {
+
+        /**
+         * Check whether a block is needed, before decompressing it
+         *
+         * @param firstSeq
+         *            the sequence number of the first event of the block
+         * @param endSeq
+         *            the sequence number after the last event of the block
+         * @return true to decompress the block
+         */
+        default boolean accept(long firstSeq, long endSeq) {
+            return true;
+        }
+
+        /**
+         * Receive an event
+         *
+         * @param entry
+         *            the header of the event, without its message
+         * @param message
+         *            the serialized event, only valid during the call
+         * @throws IOException
+         *             the visitor failed, stops the visit
+         */
+        void visit(SnapshotRing.Entry entry, byte[] message) throws IOException;
+    }
+
+    /**
+     * Decompress the events of the blocks between two sequence numbers and
+     * two timestamps, one block at a time. The blocks outside the range are
+     * not decompressed, and no block is kept decompressed after its events
+     * are visited.
+     *
+     * @param from
+     *            the first sequence number, inclusive
+     * @param to
+     *            the last sequence number, exclusive
+     * @param minTs
+     *            the first timestamp, inclusive
+     * @param maxTs
+     *            the last timestamp, inclusive
+     * @param visitor
+     *            the visitor of the events, in order
+     * @throws IOException
+     *             the visitor failed
+     */
+    synchronized void forEach(long from, long to, long minTs, long maxTs, Visitor visitor) throws IOException {
+        for (Block block : fBlocks) {
+            if (block.fEndSeq <= from || block.fFirstSeq >= to || block.fLastTs < minTs || block.fFirstTs > maxTs
+                    || !visitor.accept(block.fFirstSeq, block.fEndSeq)) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(block.fData)))) {
+                for (int i = 0; i < block.fCount; i++) {
+                    long seq = in.readLong();
+                    long ts = in.readLong();
+                    long tid = in.readLong();
+                    boolean numericTid = in.readBoolean();
+                    char phase = in.readChar();
+                    byte[] message = new byte[in.readInt()];
+                    in.readFully(message);
+                    if (seq >= from && seq < to && ts >= minTs && ts <= maxTs) {
+                        visitor.visit(new SnapshotRing.Entry(seq, ts, tid, numericTid, phase, null), message);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the timestamp of the newest event of the blocks between two
+     * sequence numbers
+     *
+     * @param from
+     *            the first sequence number, inclusive
+     * @param to
+     *            the last sequence number, exclusive
+     * @return the timestamp in nanoseconds, or {@link Long#MIN_VALUE} if
+     *         there are no such blocks
+     */
+    synchronized long newestTimestamp(long from, long to) {
+        long newest = Long.MIN_VALUE;
+        for (Block block : fBlocks) {
+            if (block.fEndSeq > from && block.fFirstSeq < to) {
+                newest = Math.max(newest, block.fLastTs);
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Get the memory used by the compressed blocks
+     *
+     * @return the size in bytes
+     */
+    synchronized long bytes() {
+        return fBytes;
+    }
+
+    /**
+     * Get the number of events in the blocks
+     *
+     * @return the number of events
+     */
+    synchronized long count() {
+        return fCount;
+    }
+
+    /**
+     * Get the timestamp of the oldest event in the blocks
+     *
+     * @return the timestamp in nanoseconds, or {@link Long#MIN_VALUE} if there
+     *         are no blocks
+     */
+    synchronized long oldestTimestamp() {
+        Block oldest = fBlocks.peekFirst();
+        return oldest == null ? Long.MIN_VALUE : oldest.fFirstTs;
+    }
+
+    /**
+     * Release the compressor, no block is sealed afterwards
+     */
+    synchronized void close() {
+        fClosed = true;
+        fDeflater.end();
+    }
+}
@@ -23,42 +23,150 @@
  *******************************************************************************/
 package org.eclipse.tracecompass.traceeventlogger;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.eclipse.tracecompass.traceeventlogger.LogUtils.TraceEventLogRecord;
+import org.eclipse.tracecompass.traceeventlogger.beans.ISnapshotHandlerBean;
 
 /**
  * Snapshot handler, will write to disk in a deferred way. Parameters to
  * configure:
  * <ul>
- * <li>maxEvents (maximum amount of events to write)</li>
+ * <li>maxEvents (maximum amount of events to write, defaults to one per 64
+ * bytes of maxBytes, between 1024 and 1000000)</li>
+ * <li>maxBytes (maximum amount of memory used by the serialized events,
+ * defaults to 8 MiB)</li>
+ * <li>maxAge (maximum age in milliseconds of the events written, relative to
+ * the newest event of the snapshot, defaults to 0 for no limit)</li>
+ * <li>maxCompressedBytes (maximum amount of memory used by the compressed
+ * history kept behind the ring, defaults to 0 for no history)</li>
+ * <li>maxStacks (maximum number of threads with open scopes followed, the
+ * ones idle for the longest time are forgotten, defaults to 10000)</li>
  * <li>timeout (maximum amount of time in seconds before this snapshot is
  * triggered)</li>
+ * <li>rules (more triggers, per label, on percentiles, nested scopes, async
+ * events, flows or instant events, see {@link SnapshotRule})</li>
+ * <li>triggerLevel (trigger on the records of this level or above that are
+ * not trace events, e.g. WARNING, not set by default)</li>
+ * <li>dedupInterval (time in milliseconds during which the same instant event
+ * or record does not trigger again, defaults to 60000)</li>
+ * <li>triggerInterval (minimum time in milliseconds between two triggers by
+ * instant events or records, defaults to 10000)</li>
+ * <li>slice (write only the events related to the slow window, defaults to
+ * true, false writes all the events since the last snapshot)</li>
+ * <li>postTriggerTime (time in milliseconds recorded after a trigger before the
+ * snapshot is written, defaults to 0)</li>
+ * <li>postTriggerEvents (number of events recorded after a trigger before the
+ * snapshot is written, at most 10 seconds, defaults to 0)</li>
  * <li>filePath (pattern to write file names e.g. "request-" will yield
  * "request-23.json", "request-24.json"...)</li>
+ * <li>minDrainInterval (minimum time in milliseconds between two snapshots,
+ * the triggers in between are merged in the next snapshot, defaults to
+ * 1000)</li>
+ * <li>triggerFile (path of a file to create or touch to dump the events in
+ * memory, checked every second)</li>
+ * <li>snapshotOnly (set to true to only write the snapshots, and not every
+ * event like a {@link FileHandler}, defaults to false; every event then also
+ * takes the lock of {@link FileHandler#publish(LogRecord)})</li>
  * <li>isEnabled (set to false to disable)</li>
  * </ul>
+ *
+ * The events are serialized when published and kept in a ring allocated on
+ * the first event, where the logging threads only lock to reserve their place
+ * and no objects are kept per event. The ring takes about maxBytes plus 20
+ * bytes per event of maxEvents, about 10 MiB with the defaults. Triggers only
+ * hand a range of the ring to a single drainer thread, which writes the
+ * snapshots. With a compressed history, the drainer also seals the events of
+ * the ring in compressed blocks before they are overwritten, see
+ * {@link SnapshotBlocks}.
+ *
+ * A snapshot is the causal slice of the slow window: the events of the
+ * triggering thread during the window, the events of other threads sharing a
+ * flow or async id with them, and the events of those threads from the first
+ * linked event to the end of the window. The events of all the threads in the
+ * post-trigger window are added to it. Instant events and records trigger
+ * the snapshot of the open scopes of their thread, or of all its events in
+ * memory if it has none.
+ *
+ * The memory used by the ring is published as an {@link ISnapshotHandlerBean}.
  */
-public class SnapshotHandler extends FileHandler {
+public class SnapshotHandler extends FileHandler implements ISnapshotHandlerBean {
+
+    private static final int DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+    private static final int DEFAULT_MAX_EVENTS = 1000000;
+    private static final int MIN_EVENTS = 1024;
+    /** Bytes of the arena per event when the maximum of events is not set */
+    private static final int DEFAULT_EVENT_BYTES = 64;
+    private static final int DEFAULT_MAX_STACKS = 10000;
+    /** Maximum number of open async events and flows followed by the rules */
+    private static final int MAX_PENDING = 10000;
+    private static final long NO_WINDOW = Long.MIN_VALUE;
+    /** Start of a window holding all the events of a thread */
+    private static final long WHOLE_THREAD = NO_WINDOW + 1;
+    /** Maximum number of times the links between threads are followed */
+    private static final int MAX_LINK_DEPTH = 8;
+    /** Time between two checks of the post-trigger windows */
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /** Longest wait for the events of a post-trigger window */
+    private static final long MAX_POST_NANOS = TimeUnit.SECONDS.toNanos(10);
+    /** Time between two checks of the trigger file */
+    private static final long TRIGGER_POLL_MILLIS = 1000;
 
     // the following can be configured by Logging.properties
-    private int fMaxEvents = 1000000;
+    private int fMaxEvents = DEFAULT_MAX_BYTES / DEFAULT_EVENT_BYTES;
+    private int fMaxBytes = DEFAULT_MAX_BYTES;
+    private long fMaxAge;
+    private long fMaxCompressedBytes;
     private double fTimeout = 30.0;
+    private long fMinDrainInterval = 1000;
+    private List<SnapshotRule> fRules = Collections.emptyList();
+    private boolean fNeedsLabels;
+    private boolean fHasAsyncRules;
+    private boolean fHasFlowRules;
+    private boolean fHasInstantRules;
+    private Level fTriggerLevel;
+    private long fDedupInterval = 60000;
+    private long fTriggerInterval = 10000;
+    private boolean fSlice = true;
+    private long fPostTriggerTime;
+    private int fPostTriggerEvents;
+    private String fTriggerFile;
+    private boolean fSnapshotOnly;
     /**
      * The file path pattern for snapshots. It is a prefix to the timestamp and
      * ".json". So if an issue occurs at time 1000 and the prefix is "request-",
@@ -68,13 +176,87 @@ public class SnapshotHandler extends FileHandler {
     // Enable scope logs by default
     private volatile boolean fIsEnabled = true;
 
-    private Deque<InnerEvent> fData = new ArrayDeque<>();
-    private Map<String, Map<String, List<InnerEvent>>> fStacks = new HashMap<>();
+    private volatile SnapshotRing fRing;
+    /** Compressed history, null if there is none */
+    private volatile SnapshotBlocks fBlocks;
+    private final AtomicBoolean fSealScheduled = new AtomicBoolean();
+    /** Sequence number of the first event not drained yet */
+    private final AtomicLong fDrainedUpTo = new AtomicLong();
+    private final AtomicBoolean fDrainScheduled = new AtomicBoolean();
+    private final Queue<Slice> fPendingSlices = new ConcurrentLinkedQueue<>();
+    /** Earliest {@link System#nanoTime()} of the next snapshot */
+    private volatile long fNextDrain = System.nanoTime();
+    private volatile ScheduledExecutorService fDrainer;
+    private volatile boolean fClosing;
+    private final AtomicLong fDropped = new AtomicLong();
+    private final AtomicLong fSnapshotCount = new AtomicLong();
+    private final AtomicLong fTotalDrainTime = new AtomicLong();
+    private final AtomicLong fMaxDrainTime = new AtomicLong();
+    private volatile long fLastDrainTime;
+    private ObjectName fBeanName;
+    /** The ID of the handler in the control and health beans */
+    private String fId;
+    /** Last {@link System#nanoTime()} of each instant event or record trigger */
+    private final Map<String, Long> fLastTriggers = new ConcurrentHashMap<>();
+    /** Earliest {@link System#nanoTime()} of the next instant or record trigger */
+    private final AtomicLong fNextTrigger = new AtomicLong(System.nanoTime());
+    /** Last modification time of the trigger file, 0 if it does not exist */
+    private long fTriggerModified;
+    /** Start times of the open scopes, per pid and tid */
+    private ScopeStacks fStacks;
+    /** Start times of the open async events, per name and id */
+    private final Map<String, Long> fAsyncStarts = new ConcurrentHashMap<>();
+    /** Starts of the flows, per id */
+    private final Map<String, FlowStart> fFlowStarts = new ConcurrentHashMap<>();
     /**
      * Drain the trace asynchronously (false for testing)
      */
     protected volatile boolean fAsynchronousDrain = true;
 
+    /**
+     * The slow window of a thread that triggered a snapshot, and the window
+     * recorded after the trigger
+     */
+    private static final class Slice {
+        private final long fTid;
+        private final long fStart;
+        private final long fEnd;
+        private final long fTriggerSeq;
+        /** Sequence number after the last event of the post-trigger window */
+        private final long fEndSeq;
+        /** Timestamp of the end of the post-trigger window */
+        private final long fPostEnd;
+        /** {@link System#nanoTime()} when the snapshot is sealed */
+        private final long fSealTime;
+
+        Slice(long tid, long start, long end, long triggerSeq, long endSeq, long postEnd, long sealTime) {
+            fTid = tid;
+            fStart = start;
+            fEnd = end;
+            fTriggerSeq = triggerSeq;
+            fEndSeq = endSeq;
+            fPostEnd = postEnd;
+            fSealTime = sealTime;
+        }
+
+        boolean isSealed(long now, long next) {
+            return now - fSealTime >= 0 || next >= fEndSeq;
+        }
+    }
+
+    /**
+     * The start of a flow
+     */
+    private static final class FlowStart {
+        private final long fStart;
+        private final String fLabel;
+
+        FlowStart(long start, String label) {
+            fStart = start;
+            fLabel = label;
+        }
+    }
+
     /**
      * Snapshot handler constructor
      *
@@ -86,6 +268,8 @@ public class SnapshotHandler extends FileHandler {
     public SnapshotHandler() throws IOException, SecurityException {
         super();
         configure();
+        registerBean();
+        watchTriggerFile();
     }
 
     /**
@@ -102,6 +286,8 @@ public class SnapshotHandler extends FileHandler {
     public SnapshotHandler(double timeout) throws IOException, SecurityException {
         super();
         configure();
+        registerBean();
+        watchTriggerFile();
         if (timeout > 0.0) {
             this.fTimeout = timeout;
         }
@@ -111,15 +297,48 @@ public class SnapshotHandler extends FileHandler {
         LogManager manager = LogManager.getLogManager();
 
         String cname = getClass().getName();
-        String prop = manager.getProperty(cname + ".maxEvents"); //$NON-NLS-1$
-        fMaxEvents = 1000000;
+        String prop = manager.getProperty(cname + ".maxBytes"); //$NON-NLS-1$
+        fMaxBytes = DEFAULT_MAX_BYTES;
+        try {
+            fMaxBytes = Integer.parseInt(prop.trim());
+        } catch (Exception ex) {
+            // we tried!
+        }
+        if (fMaxBytes <= 0) {
+            fMaxBytes = DEFAULT_MAX_BYTES;
+        }
+        prop = manager.getProperty(cname + ".maxEvents"); //$NON-NLS-1$
+        fMaxEvents = 0;
         try {
             fMaxEvents = Integer.parseInt(prop.trim());
         } catch (Exception ex) {
             // we tried!
         }
-        if (fMaxEvents < 0) {
-            fMaxEvents = 1000000;
+        if (fMaxEvents <= 0) {
+            // the slots take 20 bytes per event, sized for the arena
+            fMaxEvents = Math.max(MIN_EVENTS, Math.min(DEFAULT_MAX_EVENTS, fMaxBytes / DEFAULT_EVENT_BYTES));
+        }
+        int maxStacks = DEFAULT_MAX_STACKS;
+        prop = manager.getProperty(cname + ".maxStacks"); //$NON-NLS-1$
+        try {
+            maxStacks = Integer.parseInt(prop.trim());
+        } catch (Exception ex) {
+            // we tried!
+        }
+        fStacks = new ScopeStacks(maxStacks > 0 ? maxStacks : DEFAULT_MAX_STACKS);
+        fMaxAge = 0;
+        prop = manager.getProperty(cname + ".maxAge"); //$NON-NLS-1$
+        try {
+            fMaxAge = Math.max(0, Long.parseLong(prop.trim()));
+        } catch (Exception ex) {
+            // we tried!
+        }
+        fMaxCompressedBytes = 0;
+        prop = manager.getProperty(cname + ".maxCompressedBytes"); //$NON-NLS-1$
+        try {
+            fMaxCompressedBytes = Math.max(0, Long.parseLong(prop.trim()));
+        } catch (Exception ex) {
+            // we tried!
         }
         fTimeout = 10000;
         prop = manager.getProperty(cname + ".timeout"); //$NON-NLS-1$
@@ -138,6 +357,101 @@ public class SnapshotHandler extends FileHandler {
         } catch (Exception ex) {
             // we tried!
         }
+        fMinDrainInterval = 1000;
+        prop = manager.getProperty(cname + ".minDrainInterval"); //$NON-NLS-1$
+        try {
+            fMinDrainInterval = Long.parseLong(prop.trim());
+        } catch (Exception ex) {
+            // we tried!
+        }
+        if (fMinDrainInterval < 0) {
+            fMinDrainInterval = 1000;
+        }
+        fPostTriggerTime = 0;
+        prop = manager.getProperty(cname + ".postTriggerTime"); //$NON-NLS-1$
+        try {
+            fPostTriggerTime = Math.max(0, Long.parseLong(prop.trim()));
+        } catch (Exception ex) {
+            // we tried!
+        }
+        fPostTriggerEvents = 0;
+        prop = manager.getProperty(cname + ".postTriggerEvents"); //$NON-NLS-1$
+        try {
+            fPostTriggerEvents = Math.max(0, Integer.parseInt(prop.trim()));
+        } catch (Exception ex) {
+            // we tried!
+        }
+        fTriggerLevel = null;
+        prop = manager.getProperty(cname + ".triggerLevel"); //$NON-NLS-1$
+        try {
+            fTriggerLevel = Level.parse(prop.trim());
+        } catch (Exception ex) {
+            // we tried!
+        }
+        fDedupInterval = 60000;
+        prop = manager.getProperty(cname + ".dedupInterval"); //$NON-NLS-1$
+        try {
+            fDedupInterval = Math.max(0, Long.parseLong(prop.trim()));
+        } catch (Exception ex) {
+            // we tried!
+        }
+        fTriggerInterval = 10000;
+        prop = manager.getProperty(cname + ".triggerInterval"); //$NON-NLS-1$
+        try {
+            fTriggerInterval = Math.max(0, Long.parseLong(prop.trim()));
+        } catch (Exception ex) {
+            // we tried!
+        }
+        prop = manager.getProperty(cname + ".triggerFile"); //$NON-NLS-1$
+        fTriggerFile = prop == null || prop.trim().isEmpty() ? null : prop.trim();
+        prop = manager.getProperty(cname + ".snapshotOnly"); //$NON-NLS-1$
+        fSnapshotOnly = prop != null && Boolean.parseBoolean(prop.trim());
+        prop = manager.getProperty(cname + ".slice"); //$NON-NLS-1$
+        fSlice = prop == null || Boolean.parseBoolean(prop.trim());
+        fRules = SnapshotRule.read(manager, cname);
+        for (SnapshotRule rule : fRules) {
+            fNeedsLabels |= rule.needsLabel();
+            fHasAsyncRules |= rule.getType() == SnapshotRule.Type.ASYNC;
+            fHasFlowRules |= rule.getType() == SnapshotRule.Type.FLOW;
+            fHasInstantRules |= rule.getType() == SnapshotRule.Type.INSTANT;
+        }
+    }
+
+    private void registerBean() {
+        fId = TraceEventLoggerControl.add(this);
+        // see TraceEventLoggerBean, finer logs would break the trace
+        Logger.getLogger("javax.management").setLevel(Level.FINE); //$NON-NLS-1$ NOSONAR
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try {
+            // many handlers can write to the same files
+            ObjectName name = new ObjectName("org.eclipse.tracecompass.log:type=SnapshotHandler,name=" //$NON-NLS-1$
+                    + ObjectName.quote(fFilePath) + ",id=" + fId); //$NON-NLS-1$
+            mbs.registerMBean(this, name);
+            fBeanName = name;
+        } catch (JMException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Cannot create bean", e); //$NON-NLS-1$
+        }
+    }
+
+    private void watchTriggerFile() {
+        if (fTriggerFile != null) {
+            // a file already there does not trigger
+            fTriggerModified = new File(fTriggerFile).lastModified();
+            getDrainer().scheduleWithFixedDelay(this::checkTriggerFile, TRIGGER_POLL_MILLIS, TRIGGER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void checkTriggerFile() {
+        File file = new File(fTriggerFile);
+        long modified = file.lastModified();
+        if (modified != 0 && modified != fTriggerModified) {
+            writeAll();
+            // so touching it again triggers, even in the same clock tick
+            if (file.delete()) {
+                modified = 0;
+            }
+        }
+        fTriggerModified = modified;
     }
 
     @Override
@@ -147,81 +461,768 @@ public class SnapshotHandler extends FileHandler {
                 && (logRecord.getLevel().intValue() <= Level.FINE.intValue()) && (logRecord instanceof TraceEventLogRecord)); // add
     }
 
+    private SnapshotRing getRing() {
+        SnapshotRing ring = fRing;
+        if (ring == null) {
+            synchronized (this) {
+                ring = fRing;
+                if (ring == null) {
+                    if (fMaxCompressedBytes > 0) {
+                        fBlocks = new SnapshotBlocks(fMaxCompressedBytes);
+                    }
+                    ring = new SnapshotRing(fMaxEvents, fMaxBytes);
+                    fRing = ring;
+                }
+            }
+        }
+        return ring;
+    }
+
     private boolean addToSnapshot(LogRecord message) {
-        InnerEvent event = InnerEvent.create(message);
-        if (event == null) {
+        if (!fIsEnabled || !(message instanceof TraceEventLogRecord)) {
+            return false;
+        }
+        Object[] parameters = message.getParameters();
+        if (parameters == null || parameters.length < 3) {
+            return false;
+        }
+        long ts = (Long) parameters[0];
+        char phase = (Character) parameters[1];
+        Object tid = parameters[2];
+        Object pid = parameters.length >= 4 ? parameters[3] : LogUtils.getProcessId();
+        String text = message.getMessage();
+        if (text == null) {
+            text = ""; //$NON-NLS-1$
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        SnapshotRing ring = getRing();
+        long seq = ring.add(ts, tid, phase, bytes);
+        if (seq < 0) {
+            fDropped.incrementAndGet();
             return false;
         }
-        fData.add(event);
-        while (fData.size() > fMaxEvents) {
-            fData.remove();
+        SnapshotBlocks blocks = fBlocks;
+        if (blocks != null) {
+            long sealed = blocks.sealedUpTo();
+            // seal every quarter of the ring, long before it is overwritten
+            if (seq - sealed >= Math.max(1, ring.capacity() / 4) || ring.usedBytes(sealed) >= fMaxBytes / 4) {
+                scheduleSeal();
+            }
         }
-        Map<String, List<InnerEvent>> pidMap = fStacks.computeIfAbsent(event.getPid(), unused -> new HashMap<>());
-        List<InnerEvent> stack = pidMap.computeIfAbsent(event.getTid(), unused -> new ArrayList<>());
-        String phase = event.getPhase();
+        // start of the slow window, if any
+        long window = NO_WINDOW;
         switch (phase) {
-        case "B": //$NON-NLS-1$
-        {
-            stack.add(event);
+        case 'B': {
+            String label = fNeedsLabels ? LogUtils.readField(text, "name") : null; //$NON-NLS-1$
+            fStacks.push(SnapshotRing.tidKey(pid), SnapshotRing.tidKey(tid), ts, label);
+            break;
+        }
+        case 'E': {
+            ScopeStacks.ScopeEnd end = new ScopeStacks.ScopeEnd();
+            if (!fStacks.pop(SnapshotRing.tidKey(pid), SnapshotRing.tidKey(tid), end)) {
+                // no open scope
+                break;
+            }
+            long duration = ts - end.fStart;
+            // convert to seconds
+            boolean trigger = end.fOutermost && duration * 0.000000001 > fTimeout;
+            trigger |= check(SnapshotRule.Type.SCOPE, end.fLabel, end.fOutermost, duration);
+            window = trigger ? end.fStart : NO_WINDOW;
             break;
         }
-        case "E": //$NON-NLS-1$
-        {
-            InnerEvent lastEvent = stack.remove(stack.size() - 1);
-            if (stack.isEmpty()) {
-                // convert to seconds
-                double delta = (event.getTs() - lastEvent.getTs()) * 0.000001;
-                if (delta > fTimeout) {
-                    if(fAsynchronousDrain) {
-                        drain(fData);
-                    } else {
-                        drainTrace(fData).run();
+        case 'b':
+            if (fHasAsyncRules && fAsyncStarts.size() < MAX_PENDING) {
+                fAsyncStarts.put(LogUtils.readField(text, "name") + '/' + LogUtils.readField(text, "id"), ts); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            break;
+        case 'e':
+            if (fHasAsyncRules) {
+                String name = LogUtils.readField(text, "name"); //$NON-NLS-1$
+                Long start = fAsyncStarts.remove(name + '/' + LogUtils.readField(text, "id")); //$NON-NLS-1$
+                window = start != null && check(SnapshotRule.Type.ASYNC, name, true, ts - start) ? start : NO_WINDOW;
+            }
+            break;
+        case 's':
+            if (fHasFlowRules) {
+                if (fFlowStarts.size() >= MAX_PENDING) {
+                    // flows have no end event, forget the old ones
+                    fFlowStarts.clear();
+                }
+                fFlowStarts.putIfAbsent(String.valueOf(LogUtils.readField(text, "id")), new FlowStart(ts, LogUtils.readField(text, "name"))); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            break;
+        case 't':
+            if (fHasFlowRules) {
+                FlowStart start = fFlowStarts.get(String.valueOf(LogUtils.readField(text, "id"))); //$NON-NLS-1$
+                window = start != null && check(SnapshotRule.Type.FLOW, start.fLabel, true, ts - start.fStart) ? start.fStart : NO_WINDOW;
+            }
+            break;
+        case 'i':
+            if (fHasInstantRules) {
+                String name = LogUtils.readField(text, "name"); //$NON-NLS-1$
+                for (SnapshotRule rule : fRules) {
+                    if (rule.checkInstant(name, text) && allowTrigger("i/" + name)) { //$NON-NLS-1$
+                        window = openWindow(pid, tid);
+                        break;
                     }
                 }
             }
             break;
-        }
         default:
             // do nothing
         }
+        if (window != NO_WINDOW) {
+            drain(newSlice(tid, window, ts, seq));
+        } else if (!fAsynchronousDrain && !fPendingSlices.isEmpty()) {
+            // synchronous post-trigger window
+            drainPending();
+        }
         return true;
     }
 
+    /**
+     * Get the start of the window of a thread: its outermost open scope, or
+     * all its events if it has none
+     */
+    private long openWindow(Object pid, Object tid) {
+        long start = fStacks.outermost(SnapshotRing.tidKey(pid), SnapshotRing.tidKey(tid));
+        return start == Long.MIN_VALUE ? WHOLE_THREAD : start;
+    }
+
+    /**
+     * Check an instant event or record can trigger a snapshot: the same one
+     * did not trigger recently, and no other one did just before
+     *
+     * @param key
+     *            what triggered, to find the duplicates
+     */
+    private boolean allowTrigger(String key) {
+        long now = System.nanoTime();
+        Long last = fLastTriggers.get(key);
+        if (last != null && now - last < TimeUnit.MILLISECONDS.toNanos(fDedupInterval)) {
+            return false;
+        }
+        long next = fNextTrigger.get();
+        if (now - next < 0 || !fNextTrigger.compareAndSet(next, now + TimeUnit.MILLISECONDS.toNanos(fTriggerInterval))) {
+            return false;
+        }
+        if (fLastTriggers.size() >= MAX_PENDING) {
+            fLastTriggers.clear();
+        }
+        fLastTriggers.put(key, now);
+        return true;
+    }
+
+    /**
+     * Trigger a snapshot on a record that is not a trace event, like a
+     * warning or an error
+     */
+    private void triggerOnRecord(LogRecord record) {
+        SnapshotRing ring = fRing;
+        if (!fIsEnabled || ring == null) {
+            return;
+        }
+        Throwable thrown = record.getThrown();
+        String key = record.getLoggerName() + '/' + record.getMessage() + '/' + (thrown == null ? null : thrown.getClass().getName());
+        if (!allowTrigger(key)) {
+            return;
+        }
+        // the record has no trace timestamp, the last event is the closest
+        long seq = ring.next() - 1;
+        long ts = ring.timestamp(seq);
+        if (ts == Long.MIN_VALUE) {
+            return;
+        }
+        // records are published by the thread logging them
+        Long tid = Platform.threadId(Thread.currentThread());
+        drain(newSlice(tid, openWindow(LogUtils.getProcessId(), tid), ts, seq));
+    }
+
+    /**
+     * Check a duration against all the rules, they all see it to keep their
+     * percentiles up to date
+     */
+    private boolean check(SnapshotRule.Type type, String label, boolean outermost, long duration) {
+        boolean trigger = false;
+        for (SnapshotRule rule : fRules) {
+            trigger |= rule.check(type, label, outermost, duration);
+        }
+        return trigger;
+    }
+
     @Override
-    public synchronized void publish(LogRecord record) {
-        if (record != null) {
+    public void publish(LogRecord record) {
+        if (record instanceof TraceEventLogRecord) {
             addToSnapshot(record);
+        } else if (record != null && fTriggerLevel != null && record.getLevel().intValue() >= fTriggerLevel.intValue()) {
+            triggerOnRecord(record);
+        }
+        if (!fSnapshotOnly) {
+            super.publish(record);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws SecurityException {
+        // the pending snapshots are written without waiting for their windows
+        fClosing = true;
+        ScheduledExecutorService drainer = fDrainer;
+        if (!fAsynchronousDrain && !fPendingSlices.isEmpty()) {
+            drainPending();
+        }
+        if (drainer != null) {
+            try {
+                drainer.execute(this::drainPending);
+            } catch (RejectedExecutionException e) {
+                // already closed
+            }
+            drainer.shutdown();
+            try {
+                drainer.awaitTermination(fMinDrainInterval + 1000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        SnapshotBlocks blocks = fBlocks;
+        if (blocks != null) {
+            blocks.close();
+        }
+        TraceEventLoggerControl.remove(fId, this);
+        if (fBeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(fBeanName);
+            } catch (JMException e) {
+                // already unregistered
+            }
+            fBeanName = null;
+        }
+        super.close();
+    }
+
+    private ScheduledExecutorService getDrainer() {
+        ScheduledExecutorService drainer = fDrainer;
+        if (drainer == null) {
+            synchronized (this) {
+                drainer = fDrainer;
+                if (drainer == null) {
+                    drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "Trace Drainer"); //$NON-NLS-1$
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    fDrainer = drainer;
+                }
+            }
+        }
+        return drainer;
+    }
+
+    private Slice newSlice(Object tid, long start, long end, long seq) {
+        long now = System.nanoTime();
+        long postTime = TimeUnit.MILLISECONDS.toNanos(fPostTriggerTime);
+        long endSeq = seq + 1;
+        long postEnd = end;
+        long sealTime = now;
+        if (fPostTriggerEvents > 0) {
+            endSeq += fPostTriggerEvents;
+            postEnd = Long.MAX_VALUE;
+            sealTime = now + MAX_POST_NANOS;
+        }
+        if (postTime > 0) {
+            // both windows: the first one to close seals the snapshot
+            endSeq = fPostTriggerEvents > 0 ? endSeq : Long.MAX_VALUE;
+            postEnd = end + postTime;
+            sealTime = now + postTime;
+        }
+        return new Slice(SnapshotRing.tidKey(tid), start, end, seq, endSeq, postEnd, sealTime);
+    }
+
+    /**
+     * Request a snapshot of a slow window. Never blocks, a snapshot already
+     * waiting for the drainer is extended instead.
+     */
+    private void drain(Slice slice) {
+        fPendingSlices.add(slice);
+        if (!fAsynchronousDrain) {
+            drainPending();
+        } else {
+            scheduleDrain(fNextDrain - System.nanoTime());
+        }
+    }
+
+    private void scheduleDrain(long delay) {
+        if (fDrainScheduled.compareAndSet(false, true)) {
+            try {
+                getDrainer().schedule(this::drainPending, Math.max(0, delay), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed
+            }
+        }
+    }
+
+    private void scheduleSeal() {
+        if (fSealScheduled.compareAndSet(false, true)) {
+            if (!fAsynchronousDrain) {
+                seal();
+                return;
+            }
+            try {
+                getDrainer().execute(this::seal);
+            } catch (RejectedExecutionException e) {
+                // closed
+            }
+        }
+    }
+
+    private void seal() {
+        // the events from now on schedule the next block
+        fSealScheduled.set(false);
+        fBlocks.seal(fRing, TimeUnit.MILLISECONDS.toNanos(fMaxAge));
+    }
+
+    private void drainPending() {
+        // the triggers from now on schedule the next snapshot
+        fDrainScheduled.set(false);
+        SnapshotRing ring = fRing;
+        long now = System.nanoTime();
+        long next = ring.next();
+        List<Slice> slices = new ArrayList<>();
+        List<Slice> waiting = new ArrayList<>();
+        long end = 0;
+        // merged with the next snapshot if the previous one is too recent
+        boolean due = fClosing || !fAsynchronousDrain || now - fNextDrain >= 0;
+        for (Slice slice = fPendingSlices.poll(); slice != null; slice = fPendingSlices.poll()) {
+            if (fClosing || (due && slice.isSealed(now, next))) {
+                slices.add(slice);
+                end = Math.max(end, Math.min(next, slice.fEndSeq));
+            } else {
+                waiting.add(slice);
+            }
+        }
+        if (!waiting.isEmpty()) {
+            fPendingSlices.addAll(waiting);
+            if (fAsynchronousDrain) {
+                // the event windows are only checked here, not by the producers
+                long delay = POLL_NANOS;
+                for (Slice slice : waiting) {
+                    delay = Math.min(delay, slice.fSealTime - now);
+                }
+                scheduleDrain(Math.max(delay, fNextDrain - now));
+            }
+        }
+        if (slices.isEmpty()) {
+            return;
+        }
+        fNextDrain = now + TimeUnit.MILLISECONDS.toNanos(fMinDrainInterval);
+        long start = fDrainedUpTo.getAndAccumulate(end, Math::max);
+        if (fSlice) {
+            // a slice can start before the previous snapshot
+            writeSnapshot(ring, 0, end, slices);
+        } else if (start < end) {
+            writeSnapshot(ring, start, end, null);
         }
-        super.publish(record);
     }
 
-    private void drain(Deque<InnerEvent> data) {
-        Thread thread = new Thread(drainTrace(data));
-        thread.setName("Trace Drainer"); //$NON-NLS-1$
-        thread.start();
+    /**
+     * Write all the events in memory, not only the slow windows
+     */
+    private String writeAll() {
+        SnapshotRing ring = fRing;
+        if (ring == null) {
+            return ""; //$NON-NLS-1$
+        }
+        Path path = writeSnapshot(ring, 0, ring.next(), null);
+        return path == null ? "" : path.toString(); //$NON-NLS-1$
     }
 
-    private Runnable drainTrace(Deque<InnerEvent> data) {
-        return () -> {
-            Path path = new File(fFilePath + Long.toString((long) data.getFirst().getTs()) + ".json").toPath(); //$NON-NLS-1$
-            try (BufferedWriter fw = Files.newBufferedWriter(path, Charset.defaultCharset())) {
-                fw.write('[');
-                boolean first = true;
-                for (InnerEvent event : data) {
-                    if (first) {
-                        first = false;
-                    } else {
-                        fw.write(',');
-                        fw.write('\n');
+    /**
+     * Write the events between two sequence numbers, or only the events of
+     * slices. The compressed blocks are streamed to the file one at a time:
+     * a first pass finds the events to write, keeping only their headers, a
+     * second one writes them. When slicing, the blocks outside the windows of
+     * the slices are not decompressed at all, so the links to other threads
+     * are followed within the windows.
+     */
+    private Path writeSnapshot(SnapshotRing ring, long start, long end, List<Slice> slices) {
+        long drainStart = System.nanoTime();
+        SnapshotBlocks blocks = fBlocks;
+        long sealed = blocks == null ? start : Math.max(start, Math.min(end, blocks.sealedUpTo()));
+        List<SnapshotRing.Entry> ringEntries = ring.read(sealed, end);
+        long newest = blocks == null ? Long.MIN_VALUE : blocks.newestTimestamp(start, sealed);
+        for (SnapshotRing.Entry entry : ringEntries) {
+            newest = Math.max(newest, entry.fTs);
+        }
+        long oldest = fMaxAge > 0 && newest != Long.MIN_VALUE ? newest - TimeUnit.MILLISECONDS.toNanos(fMaxAge) : Long.MIN_VALUE;
+        ringEntries.removeIf(entry -> entry.fTs < oldest);
+        long minTs = oldest;
+        long maxTs = Long.MAX_VALUE;
+        if (slices != null) {
+            long first = Long.MAX_VALUE;
+            long last = Long.MIN_VALUE;
+            for (Slice slice : slices) {
+                first = Math.min(first, slice.fStart);
+                last = Math.max(last, Math.max(slice.fEnd, slice.fPostEnd));
+            }
+            minTs = Math.max(minTs, first);
+            maxTs = last;
+        }
+        long blockMinTs = minTs;
+        long blockMaxTs = maxTs;
+        // first pass: the events to write, their threads and first timestamp
+        Set<Long> threads = new LinkedHashSet<>();
+        long[] firstTs = { Long.MIN_VALUE };
+        byte[][] ringMessages = new byte[ringEntries.size()][];
+        long[] keptSeqs;
+        try {
+            if (slices != null) {
+                List<SnapshotRing.Entry> entries = new ArrayList<>();
+                List<String> ids = new ArrayList<>();
+                if (blocks != null && start < sealed) {
+                    blocks.forEach(start, sealed, blockMinTs, blockMaxTs, (entry, message) -> {
+                        entries.add(entry);
+                        ids.add(linkId(entry, message));
+                    });
+                }
+                int sealedCount = entries.size();
+                for (int i = 0; i < ringEntries.size(); i++) {
+                    SnapshotRing.Entry entry = ringEntries.get(i);
+                    if (isLink(entry)) {
+                        ringMessages[i] = ring.message(entry);
+                    }
+                    entries.add(entry);
+                    ids.add(linkId(entry, ringMessages[i]));
+                }
+                boolean[] keep = slice(entries, ids, slices);
+                int kept = 0;
+                for (int i = 0; i < sealedCount; i++) {
+                    kept += keep[i] ? 1 : 0;
+                }
+                keptSeqs = new long[kept];
+                kept = 0;
+                for (int i = 0; i < sealedCount; i++) {
+                    if (keep[i]) {
+                        keptSeqs[kept++] = entries.get(i).fSeq;
+                        addThread(entries.get(i), threads, firstTs);
                     }
-                    fw.write(event.getMessage());
                 }
-                data.clear();
-                fw.write(']');
-            } catch (IOException e) {
-                // we tried!
+                for (int i = 0; i < ringEntries.size(); i++) {
+                    if (!keep[sealedCount + i]) {
+                        ringMessages[i] = null;
+                    } else if (ringMessages[i] == null) {
+                        ringMessages[i] = ring.message(ringEntries.get(i));
+                    }
+                }
+            } else {
+                keptSeqs = null;
+                if (blocks != null && start < sealed) {
+                    blocks.forEach(start, sealed, blockMinTs, blockMaxTs, (entry, message) -> addThread(entry, threads, firstTs));
+                }
+                for (int i = 0; i < ringEntries.size(); i++) {
+                    ringMessages[i] = ring.message(ringEntries.get(i));
+                }
+            }
+        } catch (IOException e) {
+            // we tried!
+            return null;
+        }
+        for (int i = 0; i < ringEntries.size(); i++) {
+            if (ringMessages[i] != null) {
+                addThread(ringEntries.get(i), threads, firstTs);
+            }
+        }
+        if (firstTs[0] == Long.MIN_VALUE) {
+            return null;
+        }
+        // second pass: write them, one block at a time
+        Path path = new File(fFilePath + Long.toString(firstTs[0] / 1000) + ".json").toPath(); //$NON-NLS-1$
+        try (OutputStream fw = new BufferedOutputStream(Files.newOutputStream(path))) {
+            boolean[] first = { true };
+            SnapshotBlocks.Visitor writer = new SnapshotBlocks.Visitor() {
+                @Override
+                public boolean accept(long firstSeq, long endSeq) {
+                    if (keptSeqs == null) {
+                        return true;
+                    }
+                    int index = Arrays.binarySearch(keptSeqs, firstSeq);
+                    index = index < 0 ? -index - 1 : index;
+                    return index < keptSeqs.length && keptSeqs[index] < endSeq;
+                }
+
+                @Override
+                public void visit(SnapshotRing.Entry entry, byte[] message) throws IOException {
+                    if (keptSeqs == null || Arrays.binarySearch(keptSeqs, entry.fSeq) >= 0) {
+                        writeEvent(fw, message, first);
+                    }
+                }
+            };
+            fw.write('[');
+            for (String metadata : getMetadata(threads)) {
+                writeEvent(fw, metadata.getBytes(StandardCharsets.UTF_8), first);
+            }
+            if (blocks != null && start < sealed) {
+                blocks.forEach(start, sealed, blockMinTs, blockMaxTs, writer);
+            }
+            for (byte[] message : ringMessages) {
+                if (message != null) {
+                    writeEvent(fw, message, first);
+                }
+            }
+            fw.write(']');
+            fSnapshotCount.incrementAndGet();
+            long time = System.nanoTime() - drainStart;
+            fLastDrainTime = time;
+            fTotalDrainTime.addAndGet(time);
+            fMaxDrainTime.accumulateAndGet(time, Math::max);
+        } catch (IOException e) {
+            // we tried!
+            return null;
+        }
+        return path;
+    }
+
+    private static void writeEvent(OutputStream fw, byte[] event, boolean[] first) throws IOException {
+        if (first[0]) {
+            first[0] = false;
+        } else {
+            fw.write(',');
+            fw.write('\n');
+        }
+        fw.write(event);
+    }
+
+    private static void addThread(SnapshotRing.Entry entry, Set<Long> threads, long[] firstTs) {
+        if (firstTs[0] == Long.MIN_VALUE) {
+            firstTs[0] = entry.fTs;
+        }
+        if (entry.fNumericTid) {
+            threads.add(entry.fTid);
+        }
+    }
+
+    /**
+     * Is an event a flow or async event, with an id linking threads
+     */
+    private static boolean isLink(SnapshotRing.Entry entry) {
+        return "stfbne".indexOf(entry.fPhase) >= 0; //$NON-NLS-1$
+    }
+
+    private static String linkId(SnapshotRing.Entry entry, byte[] message) {
+        return message == null || !isLink(entry) ? null : LogUtils.readField(new String(message, StandardCharsets.UTF_8), "id"); //$NON-NLS-1$
+    }
+
+    /**
+     * Select the events of the slices
+     *
+     * @param entries
+     *            the events, in order
+     * @param ids
+     *            the flow or async id of each event, null if it has none
+     * @param slices
+     *            the slices
+     * @return the events to keep
+     */
+    private static boolean[] slice(List<SnapshotRing.Entry> entries, List<String> ids, List<Slice> slices) {
+        int size = entries.size();
+        boolean[] keep = new boolean[size];
+        for (Slice slice : slices) {
+            // first timestamp kept per thread
+            Map<Long, Long> threads = new HashMap<>();
+            threads.put(slice.fTid, slice.fStart);
+            Set<String> links = new HashSet<>();
+            boolean changed = true;
+            for (int depth = 0; changed && depth < MAX_LINK_DEPTH; depth++) {
+                changed = false;
+                for (int i = 0; i < size; i++) {
+                    SnapshotRing.Entry entry = entries.get(i);
+                    Long from = threads.get(entry.fTid);
+                    if (entry.fTs <= slice.fEnd && from != null && entry.fTs >= from) {
+                        keep[i] = true;
+                        String id = ids.get(i);
+                        changed |= id != null && links.add(id);
+                    }
+                }
+                for (int i = 0; i < size; i++) {
+                    SnapshotRing.Entry entry = entries.get(i);
+                    String id = ids.get(i);
+                    if (entry.fTs <= slice.fEnd && id != null && links.contains(id)) {
+                        keep[i] = true;
+                        Long from = threads.get(entry.fTid);
+                        if (from == null || entry.fTs < from) {
+                            threads.put(entry.fTid, entry.fTs);
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            // every thread after the trigger
+            for (int i = 0; i < size; i++) {
+                SnapshotRing.Entry entry = entries.get(i);
+                if (entry.fSeq > slice.fTriggerSeq && entry.fSeq < slice.fEndSeq && entry.fTs <= slice.fPostEnd) {
+                    keep[i] = true;
+                }
+            }
+        }
+        return keep;
+    }
+
+    /**
+     * Get the process and thread name metadata events of the threads present
+     * in a snapshot
+     *
+     * @param threads
+     *            the numeric thread IDs, in order of appearance
+     */
+    private static List<String> getMetadata(Set<Long> threads) {
+        List<String> metadata = new ArrayList<>();
+        for (Long threadId : threads) {
+            if (metadata.isEmpty()) {
+                metadata.add(LogUtils.createProcessNameRecord(Level.INFO, threadId).getMessage());
+            }
+            LogRecord threadName = LogUtils.createThreadNameRecord(Level.INFO, threadId);
+            if (threadName != null) {
+                metadata.add(threadName.getMessage());
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Get the sequence number of the oldest event a snapshot would write, not
+     * overwritten and younger than the maximum age
+     */
+    private long firstRetained(SnapshotRing ring) {
+        long first = ring.oldest();
+        long last = ring.next() - 1;
+        long newest = ring.timestamp(last);
+        if (fMaxAge <= 0 || first >= last || newest == Long.MIN_VALUE) {
+            return first;
+        }
+        long oldest = newest - TimeUnit.MILLISECONDS.toNanos(fMaxAge);
+        while (first < last) {
+            long middle = (first + last) >>> 1;
+            if (ring.timestamp(middle) < oldest) {
+                first = middle + 1;
+            } else {
+                last = middle;
             }
-        };
+        }
+        return first;
+    }
+
+    /**
+     * Get the sequence number of the oldest event retained only in the ring
+     */
+    private long firstInRing(SnapshotRing ring) {
+        SnapshotBlocks blocks = fBlocks;
+        long first = firstRetained(ring);
+        return blocks == null ? first : Math.max(first, blocks.sealedUpTo());
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        SnapshotRing ring = fRing;
+        SnapshotBlocks blocks = fBlocks;
+        return (ring == null ? 0 : ring.allocatedBytes()) + (blocks == null ? 0 : blocks.bytes());
+    }
+
+    @Override
+    public long getUsedBytes() {
+        SnapshotRing ring = fRing;
+        SnapshotBlocks blocks = fBlocks;
+        return (ring == null ? 0 : ring.usedBytes(firstInRing(ring))) + (blocks == null ? 0 : blocks.bytes());
+    }
+
+    @Override
+    public long getRetainedEvents() {
+        SnapshotRing ring = fRing;
+        SnapshotBlocks blocks = fBlocks;
+        return (ring == null ? 0 : ring.next() - firstInRing(ring)) + (blocks == null ? 0 : blocks.count());
+    }
+
+    @Override
+    public long getRetainedTime() {
+        SnapshotRing ring = fRing;
+        if (ring == null) {
+            return 0;
+        }
+        SnapshotBlocks blocks = fBlocks;
+        long oldest = blocks == null ? Long.MIN_VALUE : blocks.oldestTimestamp();
+        if (oldest == Long.MIN_VALUE) {
+            oldest = ring.timestamp(firstInRing(ring));
+        }
+        long newest = ring.timestamp(ring.next() - 1);
+        return oldest == Long.MIN_VALUE || newest == Long.MIN_VALUE ? 0 : Math.max(0, newest - oldest);
+    }
+
+    @Override
+    public int getLiveStacks() {
+        return fStacks.size();
+    }
+
+    @Override
+    public long getEvictedStacks() {
+        return fStacks.evicted();
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return fDropped.get();
+    }
+
+    @Override
+    public long getSnapshotCount() {
+        return fSnapshotCount.get();
+    }
+
+    @Override
+    public int getPendingSnapshots() {
+        return fPendingSlices.size();
+    }
+
+    @Override
+    public long getLastDrainTime() {
+        return fLastDrainTime;
+    }
+
+    @Override
+    public long getMaxDrainTime() {
+        return fMaxDrainTime.get();
+    }
+
+    @Override
+    public long getTotalDrainTime() {
+        return fTotalDrainTime.get();
+    }
+
+    @Override
+    public int getMaxEvents() {
+        return fMaxEvents;
+    }
+
+    @Override
+    public int getMaxBytes() {
+        return fMaxBytes;
+    }
+
+    @Override
+    public long getMaxAge() {
+        return fMaxAge;
+    }
+
+    @Override
+    public String dump() {
+        if (!fAsynchronousDrain) {
+            return writeAll();
+        }
+        try {
+            // after the snapshots already being written
+            return getDrainer().submit(this::writeAll).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            // we tried!
+        }
+        return ""; //$NON-NLS-1$
     }
 
     /**
@@ -234,6 +1235,16 @@ public class SnapshotHandler extends FileHandler {
         this.fIsEnabled = isEnabled;
     }
 
+    /**
+     * Get the ID of the handler in the {@link TraceEventLoggerControl} and in
+     * the name of its bean
+     *
+     * @return the ID, null before the handler is configured
+     */
+    String getId() {
+        return fId;
+    }
+
     /**
      * Is the snapshotter enabled?
      *
@@ -0,0 +1,373 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed capacity ring of serialized events, shared by all the logging
+ * threads. The events are kept as bytes in a preallocated arena, with their
+ * position in a ring of primitive slots, so the ring keeps no objects per
+ * event.
+ *
+ * Writers reserve a sequence number and a range of the arena together, under
+ * a lock held for two increments, so the positions grow with the sequence
+ * numbers, the oldest events are overwritten. A writer then claims its slot
+ * exclusively, from an older event to busy; if a writer lapped by the ring
+ * still holds the slot, or a newer event already took it, the event is
+ * dropped. Readers check that an event was not overwritten while they copied
+ * it, and skip it otherwise.
+ */
+final class SnapshotRing {
+
+    /** Timestamp, thread key, phase and flags before the message */
+    private static final int HEADER = 2 * Long.BYTES + 2;
+
+    /** Flag set when the thread key is a real thread ID */
+    private static final byte NUMERIC_TID = 1;
+
+    /** Written in a slot while it is being updated */
+    private static final long BUSY = -1L;
+
+    /** In a slot never written */
+    private static final long EMPTY = -2L;
+
+    /** Times a writer retries a slot busy with an older event */
+    private static final int CLAIM_TRIES = 100;
+
+    /**
+     * The header of an event copied out of the ring, its message is copied
+     * separately with {@link SnapshotRing#message(Entry)}
+     */
+    static final class Entry {
+        final long fSeq;
+        final long fTs;
+        /** the thread ID, or a hash of a non numeric one */
+        final long fTid;
+        final boolean fNumericTid;
+        final char fPhase;
+        /** the message, if it is not in the ring */
+        final byte[] fMessage;
+
+        Entry(long seq, long ts, long tid, boolean numericTid, char phase, byte[] message) {
+            fSeq = seq;
+            fTs = ts;
+            fTid = tid;
+            fNumericTid = numericTid;
+            fPhase = phase;
+            fMessage = message;
+        }
+    }
+
+    private final int fCapacity;
+    private final byte[] fArena;
+    /** Sequence number in each slot, BUSY or EMPTY */
+    private final AtomicLongArray fSeqs;
+    /** Arena position of each slot, counted from the start of the ring */
+    private final long[] fPositions;
+    private final int[] fLengths;
+    private final AtomicLong fNextSeq = new AtomicLong();
+    private final AtomicLong fCursor = new AtomicLong();
+    /** Held to reserve a sequence number and its range of the arena */
+    private final Object fReserve = new Object();
+
+    /**
+     * Constructor
+     *
+     * @param capacity
+     *            the maximum number of events
+     * @param size
+     *            the size of the arena in bytes
+     */
+    SnapshotRing(int capacity, int size) {
+        fCapacity = capacity;
+        fArena = new byte[size];
+        fSeqs = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            fSeqs.set(i, EMPTY);
+        }
+        fPositions = new long[capacity];
+        fLengths = new int[capacity];
+    }
+
+    /**
+     * Get the key of a thread ID in the ring, the thread ID itself if it is a
+     * number
+     *
+     * @param tid
+     *            the thread ID of a record
+     * @return the key
+     */
+    static long tidKey(Object tid) {
+        return tid instanceof Number ? ((Number) tid).longValue() : String.valueOf(tid).hashCode();
+    }
+
+    /**
+     * Add an event, may be called by many threads at once
+     *
+     * @param ts
+     *            the timestamp in nanoseconds
+     * @param tid
+     *            the thread ID of the record
+     * @param phase
+     *            the phase of the event
+     * @param message
+     *            the serialized event
+     * @return the sequence number of the event, or -1 if it does not fit or
+     *         its slot could not be claimed
+     */
+    long add(long ts, Object tid, char phase, byte[] message) {
+        int length = HEADER + message.length;
+        if (length > fArena.length) {
+            return -1;
+        }
+        long seq;
+        long position;
+        synchronized (fReserve) {
+            // the cursor first, a reader seeing the sequence number sees the
+            // bytes reserved for it
+            position = fCursor.getAndAdd(length);
+            seq = fNextSeq.getAndIncrement();
+        }
+        int slot = (int) (seq % fCapacity);
+        // a full barrier, the writes below cannot be seen before it
+        if (!claim(slot, seq)) {
+            return -1;
+        }
+        fPositions[slot] = position;
+        fLengths[slot] = length;
+        position = putLong(position, ts);
+        position = putLong(position, tidKey(tid));
+        fArena[index(position++)] = (byte) phase;
+        fArena[index(position++)] = tid instanceof Number ? NUMERIC_TID : 0;
+        put(position, message, 0, message.length);
+        fSeqs.lazySet(slot, seq);
+        return seq;
+    }
+
+    /**
+     * Claim a slot for an event, only one writer at a time can hold it
+     */
+    private boolean claim(int slot, long seq) {
+        for (int i = 0; i < CLAIM_TRIES; i++) {
+            long current = fSeqs.get(slot);
+            if (current >= seq) {
+                // a newer event took the slot
+                return false;
+            }
+            if (current != BUSY && fSeqs.compareAndSet(slot, current, BUSY)) {
+                return true;
+            }
+            Platform.onSpinWait();
+        }
+        // a writer lapped by the ring still holds the slot
+        return false;
+    }
+
+    /**
+     * Get the sequence number the next event will have
+     *
+     * @return the next sequence number
+     */
+    long next() {
+        return fNextSeq.get();
+    }
+
+    /**
+     * Get the maximum number of events in the ring
+     *
+     * @return the capacity
+     */
+    int capacity() {
+        return fCapacity;
+    }
+
+    /**
+     * Get the memory allocated for the ring, the arena and the slots
+     *
+     * @return the size in bytes
+     */
+    long allocatedBytes() {
+        return fArena.length + (long) fCapacity * (2 * Long.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Get the sequence number of the oldest event still in the ring, neither
+     * overwritten in its slot nor in the arena
+     *
+     * @return the oldest sequence number, or {@link #next()} if the ring is
+     *         empty
+     */
+    long oldest() {
+        long next = fNextSeq.get();
+        long limit = fCursor.get() - fArena.length;
+        long low = Math.max(0, next - fCapacity);
+        long high = next;
+        // the positions grow with the sequence numbers
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (fPositions[(int) (middle % fCapacity)] < limit) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the timestamp of an event
+     *
+     * @param seq
+     *            the sequence number of the event
+     * @return the timestamp in nanoseconds, or {@link Long#MIN_VALUE} if the
+     *         event is not in the ring
+     */
+    long timestamp(long seq) {
+        int slot = (int) (seq % fCapacity);
+        if (seq < 0 || fSeqs.get(slot) != seq) {
+            return Long.MIN_VALUE;
+        }
+        long position = fPositions[slot];
+        long ts = getLong(position);
+        return isValid(slot, seq, position) ? ts : Long.MIN_VALUE;
+    }
+
+    /**
+     * Get the number of bytes of the arena used by the events from a sequence
+     * number to the last one
+     *
+     * @param from
+     *            the sequence number of the first event
+     * @return the size in bytes
+     */
+    long usedBytes(long from) {
+        if (from >= fNextSeq.get()) {
+            return 0;
+        }
+        long used = fCursor.get() - fPositions[(int) (from % fCapacity)];
+        return Math.max(0, Math.min(used, fArena.length));
+    }
+
+    /**
+     * Copy the headers of the events still in the ring between two sequence
+     * numbers. Events overwritten or being written are skipped.
+     *
+     * @param from
+     *            the first sequence number, inclusive
+     * @param to
+     *            the last sequence number, exclusive
+     * @return the event headers, in order
+     */
+    List<Entry> read(long from, long to) {
+        long start = Math.max(from, to - fCapacity);
+        List<Entry> entries = new ArrayList<>((int) Math.max(0, to - start));
+        for (long seq = start; seq < to; seq++) {
+            int slot = (int) (seq % fCapacity);
+            if (fSeqs.get(slot) != seq) {
+                continue;
+            }
+            long position = fPositions[slot];
+            long ts = getLong(position);
+            long tid = getLong(position + Long.BYTES);
+            char phase = (char) fArena[index(position + 2 * Long.BYTES)];
+            boolean numericTid = fArena[index(position + 2 * Long.BYTES + 1)] == NUMERIC_TID;
+            if (isValid(slot, seq, position)) {
+                entries.add(new Entry(seq, ts, tid, numericTid, phase, null));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Copy the message of an event
+     *
+     * @param entry
+     *            the header of the event
+     * @return the serialized event, or null if it was overwritten
+     */
+    byte[] message(Entry entry) {
+        if (entry.fMessage != null) {
+            return entry.fMessage;
+        }
+        int slot = (int) (entry.fSeq % fCapacity);
+        if (fSeqs.get(slot) != entry.fSeq) {
+            return null;
+        }
+        long position = fPositions[slot];
+        int length = fLengths[slot];
+        if (length < HEADER || length > fArena.length) {
+            // torn by a writer
+            return null;
+        }
+        byte[] message = new byte[length - HEADER];
+        get(position + HEADER, message);
+        return isValid(slot, entry.fSeq, position) ? message : null;
+    }
+
+    /**
+     * Check an event read from the arena was not overwritten meanwhile
+     */
+    private boolean isValid(int slot, long seq, long position) {
+        Platform.loadFence();
+        // still the same event, and no writer reached its bytes
+        return fSeqs.get(slot) == seq && fCursor.get() - position <= fArena.length;
+    }
+
+    private long putLong(long position, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            fArena[index(position + i)] = (byte) (value >>> (8 * i));
+        }
+        return position + Long.BYTES;
+    }
+
+    private long getLong(long position) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value |= (fArena[index(position + i)] & 0xffL) << (8 * i);
+        }
+        return value;
+    }
+
+    private void put(long position, byte[] src, int offset, int length) {
+        int index = index(position);
+        int first = Math.min(length, fArena.length - index);
+        System.arraycopy(src, offset, fArena, index, first);
+        System.arraycopy(src, offset + first, fArena, 0, length - first);
+    }
+
+    private void get(long position, byte[] dst) {
+        int index = index(position);
+        int first = Math.min(dst.length, fArena.length - index);
+        System.arraycopy(fArena, index, dst, 0, first);
+        System.arraycopy(fArena, 0, dst, first, dst.length - first);
+    }
+
+    private int index(long position) {
+        return (int) (position % fArena.length);
+    }
+}
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.LogManager;
+
+/**
+ * Snapshot trigger rule, read from the logging properties:
+ *
+ * <pre>
+ * &lt;handler&gt;.rules = query, outliers
+ * &lt;handler&gt;.rule.query.label = Perform Query
+ * &lt;handler&gt;.rule.query.threshold = 0.5
+ * &lt;handler&gt;.rule.outliers.p99Factor = 3
+ * &lt;handler&gt;.rule.outliers.nested = true
+ * &lt;handler&gt;.rule.errors.type = instant
+ * &lt;handler&gt;.rule.errors.arg = exception
+ * </pre>
+ *
+ * <ul>
+ * <li>type: what is measured, "scope" for <code>B</code>/<code>E</code> pairs
+ * (default), "async" for <code>b</code>/<code>e</code> pairs with the same name
+ * and id, or "flow" for the time between the start of a flow and each of its
+ * steps, on any thread, or "instant" for <code>i</code> events, which trigger
+ * without a duration</li>
+ * <li>label: the name of the measured events, any name if not set</li>
+ * <li>threshold: the duration in seconds to exceed</li>
+ * <li>p99Factor: trigger when the duration exceeds the rolling 99th percentile
+ * of the label times this factor</li>
+ * <li>nested: also check the nested scopes, only the outermost scope of a
+ * thread is checked by default</li>
+ * <li>arg: for instant events, the name of an argument the event must
+ * have</li>
+ * </ul>
+ *
+ * When both a threshold and a factor are set, both must be exceeded.
+ */
+final class SnapshotRule {
+
+    /**
+     * What a rule measures
+     */
+    enum Type {
+        /** B/E pairs */
+        SCOPE,
+        /** b/e pairs */
+        ASYNC,
+        /** s/t events of a flow */
+        FLOW,
+        /** i events */
+        INSTANT
+    }
+
+    /** Number of durations the percentile is computed on */
+    private static final int WINDOW = 1024;
+    /** Number of durations between two computations of the percentile */
+    private static final int REFRESH = 64;
+    /** Number of durations needed before the percentile is trusted */
+    private static final int WARM_UP = 100;
+    /** Maximum number of labels with a percentile per rule */
+    private static final int MAX_LABELS = 1000;
+
+    /**
+     * Rolling 99th percentile of the durations of a label, updated without
+     * locks. The percentile is refreshed every {@link #REFRESH} durations.
+     */
+    private static final class Percentile {
+        private final AtomicLongArray fSamples = new AtomicLongArray(WINDOW);
+        private final AtomicLong fCount = new AtomicLong();
+        private volatile long fP99 = Long.MAX_VALUE;
+
+        long add(long duration) {
+            long count = fCount.getAndIncrement();
+            long p99 = fP99;
+            fSamples.set((int) (count % WINDOW), duration);
+            if (count + 1 >= WARM_UP && (count + 1) % REFRESH == 0) {
+                int size = (int) Math.min(count + 1, WINDOW);
+                long[] sorted = new long[size];
+                for (int i = 0; i < size; i++) {
+                    sorted[i] = fSamples.get(i);
+                }
+                Arrays.sort(sorted);
+                fP99 = sorted[(int) (size * 0.99)];
+            }
+            // compare with the percentile before this duration
+            return p99;
+        }
+    }
+
+    private final Type fType;
+    private final String fLabel;
+    private final long fThreshold;
+    private final double fP99Factor;
+    private final boolean fNested;
+    private final String fArg;
+    private final Map<String, Percentile> fPercentiles = new ConcurrentHashMap<>();
+
+    SnapshotRule(Type type, String label, long threshold, double p99Factor, boolean nested, String arg) {
+        fType = type;
+        fLabel = label;
+        fThreshold = threshold;
+        fP99Factor = p99Factor;
+        fNested = nested;
+        fArg = arg;
+    }
+
+    /**
+     * Read the rules of a handler, rules without a threshold or a factor are
+     * ignored, except the instant ones
+     *
+     * @param manager
+     *            the log manager
+     * @param prefix
+     *            the name of the handler class
+     * @return the rules
+     */
+    static List<SnapshotRule> read(LogManager manager, String prefix) {
+        List<SnapshotRule> rules = new ArrayList<>();
+        String names = manager.getProperty(prefix + ".rules"); //$NON-NLS-1$
+        if (names == null) {
+            return rules;
+        }
+        for (String name : names.split(",")) { //$NON-NLS-1$
+            String key = prefix + ".rule." + name.trim() + '.'; //$NON-NLS-1$
+            Type type = Type.SCOPE;
+            String prop = manager.getProperty(key + "type"); //$NON-NLS-1$
+            try {
+                type = Type.valueOf(prop.trim().toUpperCase());
+            } catch (Exception ex) {
+                // we tried!
+            }
+            String label = manager.getProperty(key + "label"); //$NON-NLS-1$
+            long threshold = -1;
+            prop = manager.getProperty(key + "threshold"); //$NON-NLS-1$
+            try {
+                threshold = (long) (Double.parseDouble(prop.trim()) * 1000000000.0);
+            } catch (Exception ex) {
+                // we tried!
+            }
+            double factor = -1;
+            prop = manager.getProperty(key + "p99Factor"); //$NON-NLS-1$
+            try {
+                factor = Double.parseDouble(prop.trim());
+            } catch (Exception ex) {
+                // we tried!
+            }
+            boolean nested = Boolean.parseBoolean(manager.getProperty(key + "nested")); //$NON-NLS-1$
+            String arg = manager.getProperty(key + "arg"); //$NON-NLS-1$
+            if (type == Type.INSTANT) {
+                rules.add(new SnapshotRule(type, label == null ? null : label.trim(), -1, -1, false, arg == null ? null : arg.trim()));
+            } else if (threshold >= 0 || factor > 0) {
+                rules.add(new SnapshotRule(type, label == null ? null : label.trim(), threshold, factor, nested, null));
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Get what the rule measures
+     *
+     * @return the type
+     */
+    Type getType() {
+        return fType;
+    }
+
+    /**
+     * Does the rule need the labels of the events?
+     *
+     * @return true if it has a label or a percentile
+     */
+    boolean needsLabel() {
+        return fLabel != null || fP99Factor > 0;
+    }
+
+    /**
+     * Check an instant event against the rule
+     *
+     * @param label
+     *            the name of the event, can be null
+     * @param message
+     *            the serialized event
+     * @return true if a snapshot should be taken
+     */
+    boolean checkInstant(String label, String message) {
+        return fType == Type.INSTANT && (fLabel == null || fLabel.equals(label))
+                && (fArg == null || message.contains('"' + fArg + "\":")); //$NON-NLS-1$
+    }
+
+    /**
+     * Check a duration against the rule, this also updates the percentile of
+     * the label
+     *
+     * @param type
+     *            what was measured
+     * @param label
+     *            the label of the measured events, can be null
+     * @param outermost
+     *            true if the scope is the outermost one of its thread
+     * @param duration
+     *            the duration in nanoseconds
+     * @return true if a snapshot should be taken
+     */
+    boolean check(Type type, String label, boolean outermost, long duration) {
+        if (type != fType || (fLabel != null && !fLabel.equals(label)) || (type == Type.SCOPE && !outermost && !fNested)) {
+            return false;
+        }
+        boolean triggered = duration > fThreshold;
+        if (fP99Factor > 0) {
+            String key = String.valueOf(label);
+            Percentile percentile = fPercentiles.get(key);
+            if (percentile == null && fPercentiles.size() < MAX_LABELS) {
+                percentile = fPercentiles.computeIfAbsent(key, unused -> new Percentile());
+            }
+            triggered &= percentile != null && duration > percentile.add(duration) * fP99Factor;
+        }
+        return triggered;
+    }
+}
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.eclipse.tracecompass.traceeventlogger.beans.ITraceEventLoggerControlBean;
+
+/**
+ * Runtime control of the tracing, registered as the
+ * <code>org.eclipse.tracecompass.log:type=TraceEventLoggerControl</code> bean
+ * when the first {@link AsyncFileHandler} or {@link SnapshotHandler} is
+ * created, or when {@link #getInstance()} is first called.
+ *
+ * The handlers are identified by the same id as their health beans.
+ */
+public final class TraceEventLoggerControl implements ITraceEventLoggerControlBean {
+
+    /**
+     * Instance, internal, do not use, created on the first use
+     */
+    private static final class Holder {
+        private static final TraceEventLoggerControl sInstance = new TraceEventLoggerControl();
+    }
+
+    private final Map<String, Handler> fHandlers = new ConcurrentHashMap<>();
+    private final AtomicLong fNextId = new AtomicLong();
+
+    private TraceEventLoggerControl() {
+        // see TraceEventLoggerBean, finer logs would break the trace
+        Logger.getLogger("javax.management").setLevel(Level.FINE); //$NON-NLS-1$ NOSONAR
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("org.eclipse.tracecompass.log:type=TraceEventLoggerControl")); //$NON-NLS-1$
+        } catch (JMException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Cannot create bean", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Get the instance of the control
+     *
+     * @return the control
+     */
+    public static TraceEventLoggerControl getInstance() {
+        return Holder.sInstance;
+    }
+
+    /**
+     * Add a handler to control
+     *
+     * @param handler
+     *            the handler
+     * @return the ID of the handler, never reused, also the id of its health
+     *         bean
+     */
+    static String add(Handler handler) {
+        TraceEventLoggerControl control = getInstance();
+        String id = String.valueOf(control.fNextId.incrementAndGet());
+        control.fHandlers.put(id, handler);
+        return id;
+    }
+
+    /**
+     * Remove a closed handler
+     *
+     * @param id
+     *            the ID returned by {@link #add(Handler)}
+     * @param handler
+     *            the handler
+     */
+    static void remove(String id, Handler handler) {
+        getInstance().fHandlers.remove(id, handler);
+    }
+
+    private Handler getHandler(String id) {
+        Handler handler = fHandlers.get(id);
+        if (handler == null) {
+            throw new IllegalArgumentException("No handler " + id); //$NON-NLS-1$
+        }
+        return handler;
+    }
+
+    private AsyncFileHandler getAsyncFileHandler(String id) {
+        Handler handler = getHandler(id);
+        if (!(handler instanceof AsyncFileHandler)) {
+            throw new IllegalArgumentException("Not an AsyncFileHandler " + id); //$NON-NLS-1$
+        }
+        return (AsyncFileHandler) handler;
+    }
+
+    @Override
+    public Map<String, String> getHandlers() {
+        Map<String, String> handlers = new TreeMap<>();
+        for (Map.Entry<String, Handler> entry : fHandlers.entrySet()) {
+            Handler handler = entry.getValue();
+            StringBuilder sb = new StringBuilder(handler.getClass().getSimpleName());
+            if (handler instanceof AsyncFileHandler) {
+                AsyncFileHandler async = (AsyncFileHandler) handler;
+                sb.append(" enabled=").append(async.isEnabled()) //$NON-NLS-1$
+                        .append(" flushRate=").append(async.getFlushRate()) //$NON-NLS-1$
+                        .append(" maxSize=").append(async.getMaxSize()); //$NON-NLS-1$
+            } else if (handler instanceof SnapshotHandler) {
+                sb.append(" enabled=").append(((SnapshotHandler) handler).isEnabled()); //$NON-NLS-1$
+            }
+            sb.append(" level=").append(handler.getLevel()); //$NON-NLS-1$
+            handlers.put(entry.getKey(), sb.toString());
+        }
+        return handlers;
+    }
+
+    @Override
+    public void setHandlerEnabled(String id, boolean enabled) {
+        Handler handler = getHandler(id);
+        if (handler instanceof AsyncFileHandler) {
+            ((AsyncFileHandler) handler).setEnabled(enabled);
+        } else if (handler instanceof SnapshotHandler) {
+            ((SnapshotHandler) handler).setEnabled(enabled);
+        }
+    }
+
+    @Override
+    public void setFlushRate(String id, int flushRate) {
+        getAsyncFileHandler(id).setFlushRate(flushRate);
+    }
+
+    @Override
+    public void setMaxSize(String id, int maxSize) {
+        getAsyncFileHandler(id).setMaxSize(maxSize);
+    }
+
+    @Override
+    public String getLoggerLevel(String logger) {
+        Level level = Logger.getLogger(logger == null ? "" : logger).getLevel(); //$NON-NLS-1$
+        return level == null ? "" : level.getName(); //$NON-NLS-1$
+    }
+
+    @Override
+    public void setLoggerLevel(String logger, String level) {
+        // parse first, a bad level changes nothing
+        Level newLevel = level == null || level.isEmpty() ? null : Level.parse(level);
+        Logger.getLogger(logger == null ? "" : logger).setLevel(newLevel); //$NON-NLS-1$
+    }
+
+    @Override
+    public void setLabelEnabled(String label, boolean enabled) {
+        Tracepoints.setEnabled(label, enabled);
+    }
+
+    @Override
+    public List<String> getDisabledLabels() {
+        return Tracepoints.getDisabled();
+    }
+
+    @Override
+    public String getAllowPatterns() {
+        return Tracepoints.getAllow();
+    }
+
+    @Override
+    public void setAllowPatterns(String patterns) {
+        Tracepoints.setAllow(patterns);
+    }
+
+    @Override
+    public String getDenyPatterns() {
+        return Tracepoints.getDeny();
+    }
+
+    @Override
+    public void setDenyPatterns(String patterns) {
+        Tracepoints.setDeny(patterns);
+    }
+
+    @Override
+    public Map<String, Long> getTracepointHits() {
+        return Tracepoints.getHits();
+    }
+
+    @Override
+    public List<String> topTracepoints(int count) {
+        return Tracepoints.getTop(count);
+    }
+
+    @Override
+    public void setLabelSamplingRate(String label, double rate) {
+        TraceSwitches.setLabelRate(label, rate);
+    }
+
+    @Override
+    public Map<String, Double> getLabelSamplingRates() {
+        return new TreeMap<>(TraceSwitches.getLabelRates());
+    }
+
+    @Override
+    public void setCategoryEnabled(String category, boolean enabled) {
+        TraceSwitches.setCategoryEnabled(category, enabled);
+    }
+
+    @Override
+    public List<String> getDisabledCategories() {
+        List<String> categories = new ArrayList<>(TraceSwitches.getDisabledCategories());
+        Collections.sort(categories);
+        return categories;
+    }
+
+    @Override
+    public double getSamplingRate() {
+        return TraceSwitches.getRate();
+    }
+
+    @Override
+    public void setSamplingRate(double rate) {
+        TraceSwitches.setRate(rate);
+    }
+
+    @Override
+    public void resetSwitches() {
+        Tracepoints.reset();
+        TraceSwitches.reset();
+    }
+}
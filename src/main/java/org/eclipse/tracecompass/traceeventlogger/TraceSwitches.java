@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runtime switches of the events: categories turned off, and sampling rates,
+ * per label or for all the labels. The label is first checked against its
+ * tracepoint, see {@link Tracepoints}.
+ *
+ * The switches are immutable and replaced as a whole when changed, so the
+ * logging threads only read a volatile reference, and nothing else when
+ * nothing is switched off or sampled.
+ *
+ * The scopes and the instant, counter and marker events are sampled at random.
+ * The flows and the async events are sampled by id, so all the events of a
+ * flow or of an async operation are kept or dropped together.
+ */
+final class TraceSwitches {
+
+    /** Every event is traced */
+    private static final TraceSwitches ALL = new TraceSwitches(Collections.emptyMap(), Collections.emptySet(), 1.0);
+
+    private static volatile TraceSwitches sCurrent = ALL;
+
+    /** Sampling rate per label, 0 to drop all the events of a label */
+    private final Map<String, Double> fLabelRates;
+    private final Set<String> fDisabledCategories;
+    private final double fRate;
+
+    private TraceSwitches(Map<String, Double> labelRates, Set<String> disabledCategories, double rate) {
+        fLabelRates = labelRates;
+        fDisabledCategories = disabledCategories;
+        fRate = rate;
+    }
+
+    /**
+     * Is an event traced? Sampled at random.
+     *
+     * @param label
+     *            the label of the event
+     * @param category
+     *            the category of the event, can be null
+     * @return true if the event is traced
+     */
+    static boolean isTraced(String label, String category) {
+        if (!Tracepoints.hit(label)) {
+            return false;
+        }
+        TraceSwitches switches = sCurrent;
+        return switches == ALL || switches.check(label, category, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Is an event of a flow or of an async operation traced? Sampled by id.
+     *
+     * @param label
+     *            the label of the event
+     * @param category
+     *            the category of the event, can be null
+     * @param id
+     *            the id of the flow or of the async operation
+     * @return true if the event is traced
+     */
+    static boolean isTraced(String label, String category, long id) {
+        if (!Tracepoints.hit(label)) {
+            return false;
+        }
+        TraceSwitches switches = sCurrent;
+        return switches == ALL || switches.check(label, category, mix(id));
+    }
+
+    private boolean check(String label, String category, long draw) {
+        if (category != null && fDisabledCategories.contains(category)) {
+            return false;
+        }
+        Double labelRate = label == null ? null : fLabelRates.get(label);
+        double rate = labelRate == null ? fRate : labelRate;
+        // 53 random bits, in [0, 1)
+        return rate >= 1.0 || (rate > 0.0 && (draw >>> 11) * 0x1.0p-53 < rate);
+    }
+
+    /**
+     * Spread the bits of an id, consecutive ids are sampled independently
+     */
+    private static long mix(long id) {
+        long z = id + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Set the sampling rate of a label
+     *
+     * @param label
+     *            the label
+     * @param rate
+     *            the rate, between 0 (off) and 1 (all), or a negative value to
+     *            use the rate of all the labels
+     * @throws IllegalArgumentException
+     *             if the rate is not a number
+     */
+    static synchronized void setLabelRate(String label, double rate) {
+        checkRate(rate);
+        TraceSwitches current = sCurrent;
+        Map<String, Double> labelRates = new HashMap<>(current.fLabelRates);
+        if (rate < 0.0) {
+            labelRates.remove(label);
+        } else {
+            labelRates.put(label, Math.min(1.0, rate));
+        }
+        update(labelRates, current.fDisabledCategories, current.fRate);
+    }
+
+    /**
+     * Turn a category on or off
+     *
+     * @param category
+     *            the category
+     * @param enabled
+     *            true to trace the category
+     */
+    static synchronized void setCategoryEnabled(String category, boolean enabled) {
+        TraceSwitches current = sCurrent;
+        Set<String> disabledCategories = new HashSet<>(current.fDisabledCategories);
+        if (enabled) {
+            disabledCategories.remove(category);
+        } else {
+            disabledCategories.add(category);
+        }
+        update(current.fLabelRates, disabledCategories, current.fRate);
+    }
+
+    /**
+     * Set the sampling rate of the labels without their own rate
+     *
+     * @param rate
+     *            the rate, between 0 (off) and 1 (all)
+     * @throws IllegalArgumentException
+     *             if the rate is not a number
+     */
+    static synchronized void setRate(double rate) {
+        checkRate(rate);
+        TraceSwitches current = sCurrent;
+        update(current.fLabelRates, current.fDisabledCategories, Math.max(0.0, Math.min(1.0, rate)));
+    }
+
+    private static void checkRate(double rate) {
+        // NaN would pass the range checks, and sample nothing
+        if (Double.isNaN(rate)) {
+            throw new IllegalArgumentException("Not a rate: " + rate); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Trace every event again
+     */
+    static synchronized void reset() {
+        sCurrent = ALL;
+    }
+
+    private static void update(Map<String, Double> labelRates, Set<String> disabledCategories, double rate) {
+        sCurrent = labelRates.isEmpty() && disabledCategories.isEmpty() && rate >= 1.0 ? ALL
+                : new TraceSwitches(Collections.unmodifiableMap(labelRates), Collections.unmodifiableSet(disabledCategories), rate);
+    }
+
+    /**
+     * Get the sampling rates of the labels with their own rate
+     *
+     * @return the rates per label, 0 for the labels turned off
+     */
+    static Map<String, Double> getLabelRates() {
+        return sCurrent.fLabelRates;
+    }
+
+    /**
+     * Get the categories turned off
+     *
+     * @return the categories
+     */
+    static Set<String> getDisabledCategories() {
+        return sCurrent.fDisabledCategories;
+    }
+
+    /**
+     * Get the sampling rate of the labels without their own rate
+     *
+     * @return the rate
+     */
+    static double getRate() {
+        return sCurrent.fRate;
+    }
+}
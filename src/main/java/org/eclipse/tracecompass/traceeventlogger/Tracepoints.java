@@ -0,0 +1,415 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.LogManager;
+import java.util.regex.Pattern;
+
+import org.eclipse.tracecompass.traceeventlogger.beans.TraceEventLoggerManager;
+
+/**
+ * Registry of the tracepoints, the labels of the scopes, flows and events.
+ *
+ * Each label gets a stable index the first time it is traced, and a bit of
+ * the disabled set. The set is replaced as a whole when a tracepoint or a
+ * pattern changes, so checking a tracepoint is a map lookup, a hit count and
+ * a volatile read, without locking.
+ *
+ * A tracepoint is disabled when it matches a deny pattern, or when there are
+ * allow patterns and it matches none of them, unless it was enabled or
+ * disabled explicitly. The patterns are comma separated globs, where
+ * <code>*</code> matches any text and <code>?</code> any character, read from
+ * the <code>org.eclipse.tracecompass.traceeventlogger.LogUtils.allow</code> and
+ * <code>.deny</code> logging properties.
+ *
+ * Past <code>.maxTracepoints</code> labels (10000 by default), the new labels
+ * share the "(other)" tracepoint without locking, and only the patterns apply
+ * to them. The patterns are matched once per label, up to as many labels
+ * again, then the decisions are forgotten and matched again.
+ */
+final class Tracepoints {
+
+    /** The tracepoint of the labels past the maximum */
+    static final String OTHER = TraceEventLoggerManager.OTHER_LABEL;
+
+    private static final String PREFIX = LogUtils.class.getName();
+
+    private static final int DEFAULT_MAX_TRACEPOINTS = 10000;
+
+    private static final Pattern[] NO_PATTERNS = new Pattern[0];
+
+    /**
+     * A tracepoint, created once per label
+     */
+    private static final class Tracepoint {
+        private final String fLabel;
+        private final int fIndex;
+        private final LongAdder fHits = new LongAdder();
+        /** Explicitly enabled or disabled, null to follow the patterns */
+        private Boolean fEnabled;
+
+        private Tracepoint(String label, int index) {
+            fLabel = label;
+            fIndex = index;
+        }
+    }
+
+    private static final Map<String, Tracepoint> sTracepoints = new ConcurrentHashMap<>();
+    /** The tracepoints per index, guarded by the class lock */
+    private static final List<Tracepoint> sByIndex = new ArrayList<>();
+    private static final int sMaxTracepoints;
+    private static final Tracepoint sOther;
+
+    /** Bits of the disabled tracepoints, per index, never modified */
+    private static volatile long[] sDisabled = new long[0];
+    /** Set once the registry is full, the new labels then never lock */
+    private static volatile boolean sFull;
+    private static volatile Pattern[] sAllow = NO_PATTERNS;
+    private static volatile Pattern[] sDeny = NO_PATTERNS;
+    /**
+     * Whether the labels past the maximum match the patterns, replaced when
+     * the patterns change
+     */
+    private static volatile Map<String, Boolean> sDecisions = new ConcurrentHashMap<>();
+    private static String sAllowText = ""; //$NON-NLS-1$
+    private static String sDenyText = ""; //$NON-NLS-1$
+
+    static {
+        LogManager manager = LogManager.getLogManager();
+        int maxTracepoints = DEFAULT_MAX_TRACEPOINTS;
+        String max = manager.getProperty(PREFIX + ".maxTracepoints"); //$NON-NLS-1$
+        if (max != null) {
+            try {
+                maxTracepoints = Math.max(1, Integer.parseInt(max.trim()));
+            } catch (NumberFormatException e) {
+                // we tried!
+            }
+        }
+        sMaxTracepoints = maxTracepoints;
+        sOther = new Tracepoint(OTHER, 0);
+        sByIndex.add(sOther);
+        sTracepoints.put(OTHER, sOther);
+        setPatterns(manager.getProperty(PREFIX + ".allow"), manager.getProperty(PREFIX + ".deny")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private Tracepoints() {
+        // do nothing
+    }
+
+    /**
+     * Count a hit of a tracepoint, and check whether it is enabled
+     *
+     * @param label
+     *            the label of the tracepoint, can be null
+     * @return true if the tracepoint is enabled
+     */
+    static boolean hit(String label) {
+        if (label == null) {
+            return true;
+        }
+        Tracepoint tracepoint = sTracepoints.get(label);
+        if (tracepoint == null) {
+            tracepoint = sFull ? sOther : register(label, false);
+        }
+        tracepoint.fHits.increment();
+        boolean enabled = !isDisabled(tracepoint.fIndex);
+        if (tracepoint == sOther && enabled && !OTHER.equals(label)) {
+            // a label past the maximum, without its own bit
+            return decide(label);
+        }
+        return enabled;
+    }
+
+    private static boolean decide(String label) {
+        Map<String, Boolean> decisions = sDecisions;
+        Boolean decision = decisions.get(label);
+        if (decision == null) {
+            // the patterns are set before the decisions are replaced
+            decision = matches(label);
+            if (decisions.size() >= sMaxTracepoints) {
+                decisions.clear();
+            }
+            decisions.put(label, decision);
+        }
+        return decision;
+    }
+
+    private static boolean isDisabled(int index) {
+        long[] disabled = sDisabled;
+        int word = index >>> 6;
+        return word < disabled.length && (disabled[word] & (1L << index)) != 0;
+    }
+
+    private static synchronized Tracepoint register(String label, boolean force) {
+        Tracepoint tracepoint = sTracepoints.get(label);
+        if (tracepoint != null) {
+            return tracepoint;
+        }
+        if (!force && sByIndex.size() >= sMaxTracepoints) {
+            sFull = true;
+            return sOther;
+        }
+        tracepoint = new Tracepoint(label, sByIndex.size());
+        sByIndex.add(tracepoint);
+        if (!isEnabled(tracepoint)) {
+            disable(tracepoint.fIndex);
+        }
+        // visible once its bit is set
+        sTracepoints.put(label, tracepoint);
+        return tracepoint;
+    }
+
+    private static boolean isEnabled(Tracepoint tracepoint) {
+        if (tracepoint.fEnabled != null) {
+            return tracepoint.fEnabled;
+        }
+        return tracepoint == sOther || matches(tracepoint.fLabel);
+    }
+
+    private static boolean matches(String label) {
+        for (Pattern deny : sDeny) {
+            if (deny.matcher(label).matches()) {
+                return false;
+            }
+        }
+        Pattern[] allow = sAllow;
+        for (Pattern pattern : allow) {
+            if (pattern.matcher(label).matches()) {
+                return true;
+            }
+        }
+        return allow.length == 0;
+    }
+
+    /**
+     * Set the bit of a new disabled tracepoint, with the class lock held,
+     * without checking the other tracepoints again
+     */
+    private static void disable(int index) {
+        long[] disabled = sDisabled;
+        int word = index >>> 6;
+        // never modified once published, copied, doubled when too small
+        disabled = Arrays.copyOf(disabled, word < disabled.length ? disabled.length : Math.max(word + 1, 2 * disabled.length));
+        disabled[word] |= 1L << index;
+        sDisabled = disabled;
+    }
+
+    /**
+     * Rebuild the disabled bits, with the class lock held
+     */
+    private static void update() {
+        long[] disabled = new long[(sByIndex.size() + 63) >>> 6];
+        for (Tracepoint tracepoint : sByIndex) {
+            if (!isEnabled(tracepoint)) {
+                disabled[tracepoint.fIndex >>> 6] |= 1L << tracepoint.fIndex;
+            }
+        }
+        sDisabled = disabled;
+        sDecisions = new ConcurrentHashMap<>();
+    }
+
+    private static Pattern[] parse(String globs) {
+        if (globs == null || globs.trim().isEmpty()) {
+            return NO_PATTERNS;
+        }
+        List<Pattern> patterns = new ArrayList<>();
+        for (String glob : globs.split(",")) { //$NON-NLS-1$
+            glob = glob.trim();
+            if (glob.isEmpty()) {
+                continue;
+            }
+            StringBuilder regex = new StringBuilder();
+            int start = 0;
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c == '*' || c == '?') {
+                    if (i > start) {
+                        regex.append(Pattern.quote(glob.substring(start, i)));
+                    }
+                    regex.append(c == '*' ? ".*" : "."); //$NON-NLS-1$ //$NON-NLS-2$
+                    start = i + 1;
+                }
+            }
+            if (start < glob.length()) {
+                regex.append(Pattern.quote(glob.substring(start)));
+            }
+            patterns.add(Pattern.compile(regex.toString(), Pattern.DOTALL));
+        }
+        return patterns.toArray(NO_PATTERNS);
+    }
+
+    /**
+     * Enable or disable a tracepoint, whatever the patterns
+     *
+     * @param label
+     *            the label of the tracepoint, registered even past the
+     *            maximum
+     * @param enabled
+     *            true to enable, false to disable, null to follow the patterns
+     */
+    static synchronized void setEnabled(String label, Boolean enabled) {
+        register(label, true).fEnabled = enabled;
+        update();
+    }
+
+    /**
+     * Set the allow and deny patterns
+     *
+     * @param allow
+     *            the comma separated globs of the labels to trace, all the
+     *            labels if null or empty
+     * @param deny
+     *            the comma separated globs of the labels not to trace
+     */
+    static synchronized void setPatterns(String allow, String deny) {
+        // parse both first, a bad pattern changes nothing
+        Pattern[] allowPatterns = parse(allow);
+        Pattern[] denyPatterns = parse(deny);
+        sAllow = allowPatterns;
+        sDeny = denyPatterns;
+        sAllowText = allow == null ? "" : allow.trim(); //$NON-NLS-1$
+        sDenyText = deny == null ? "" : deny.trim(); //$NON-NLS-1$
+        update();
+    }
+
+    /**
+     * Set the allow patterns, keeping the deny patterns
+     *
+     * @param allow
+     *            the comma separated globs of the labels to trace, all the
+     *            labels if null or empty
+     */
+    static synchronized void setAllow(String allow) {
+        setPatterns(allow, sDenyText);
+    }
+
+    /**
+     * Set the deny patterns, keeping the allow patterns
+     *
+     * @param deny
+     *            the comma separated globs of the labels not to trace
+     */
+    static synchronized void setDeny(String deny) {
+        setPatterns(sAllowText, deny);
+    }
+
+    /**
+     * Get the allow patterns
+     *
+     * @return the comma separated globs, empty if all labels are allowed
+     */
+    static synchronized String getAllow() {
+        return sAllowText;
+    }
+
+    /**
+     * Get the deny patterns
+     *
+     * @return the comma separated globs
+     */
+    static synchronized String getDeny() {
+        return sDenyText;
+    }
+
+    /**
+     * Enable all the tracepoints again, without patterns. The indexes and
+     * hits are kept.
+     */
+    static synchronized void reset() {
+        for (Tracepoint tracepoint : sByIndex) {
+            tracepoint.fEnabled = null;
+        }
+        setPatterns(null, null);
+    }
+
+    /**
+     * Get the disabled tracepoints
+     *
+     * @return the labels, sorted
+     */
+    static synchronized List<String> getDisabled() {
+        List<String> labels = new ArrayList<>();
+        for (Tracepoint tracepoint : sByIndex) {
+            if (isDisabled(tracepoint.fIndex)) {
+                labels.add(tracepoint.fLabel);
+            }
+        }
+        Collections.sort(labels);
+        return labels;
+    }
+
+    /**
+     * Get the hits of all the tracepoints
+     *
+     * @return the hits per label, sorted by label
+     */
+    static Map<String, Long> getHits() {
+        Map<String, Long> hits = new TreeMap<>();
+        for (Tracepoint tracepoint : sTracepoints.values()) {
+            hits.put(tracepoint.fLabel, tracepoint.fHits.sum());
+        }
+        return hits;
+    }
+
+    /**
+     * Get the most hit tracepoints
+     *
+     * @param count
+     *            the number of tracepoints
+     * @return "index hits label" per tracepoint, with "(disabled)" after the
+     *         disabled ones, the most hit first
+     */
+    static List<String> getTop(int count) {
+        List<Tracepoint> tracepoints = new ArrayList<>(sTracepoints.values());
+        long[] hits = new long[tracepoints.size()];
+        Integer[] order = new Integer[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = tracepoints.get(i).fHits.sum();
+            order[i] = i;
+        }
+        // the sums are read once, the hits keep changing
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> hits[i]).reversed());
+        List<String> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, order.length); i++) {
+            Tracepoint tracepoint = tracepoints.get(order[i]);
+            StringBuilder sb = new StringBuilder();
+            sb.append(tracepoint.fIndex).append(' ').append(hits[order[i]]).append(' ').append(tracepoint.fLabel);
+            if (isDisabled(tracepoint.fIndex)) {
+                sb.append(" (disabled)"); //$NON-NLS-1$
+            }
+            top.add(sb.toString());
+        }
+        return top;
+    }
+}
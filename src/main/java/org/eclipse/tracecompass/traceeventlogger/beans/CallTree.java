@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times of the scopes per call path, the chain of labels of the enclosing
+ * scopes on their thread. The number of paths is bounded: past it, the new
+ * children of a path are counted in a single "(other)" child.
+ */
+final class CallTree {
+
+    private static final String OTHER = TraceEventLoggerManager.OTHER_LABEL;
+
+    /**
+     * The times of a call path
+     */
+    static final class Node {
+        private final String fLabel;
+        private final Map<String, Node> fChildren = new ConcurrentHashMap<>();
+        private final LongAdder fCount = new LongAdder();
+        private final LongAdder fTotal = new LongAdder();
+        private final LongAdder fSelf = new LongAdder();
+
+        private Node(String label) {
+            fLabel = label;
+        }
+
+        void record(long total, long self) {
+            fCount.increment();
+            fTotal.add(total);
+            fSelf.add(self);
+        }
+    }
+
+    private final Node fRoot = new Node(""); //$NON-NLS-1$
+    private final int fMaxNodes;
+    private final AtomicInteger fNodes = new AtomicInteger();
+
+    /**
+     * Constructor
+     *
+     * @param maxNodes
+     *            the maximum number of call paths
+     */
+    CallTree(int maxNodes) {
+        fMaxNodes = maxNodes;
+    }
+
+    /**
+     * Get the node of a scope
+     *
+     * @param parent
+     *            the node of the enclosing scope, null for an outermost scope
+     * @param label
+     *            the label of the scope
+     * @return the node
+     */
+    Node child(Node parent, String label) {
+        Node from = parent == null ? fRoot : parent;
+        Node node = from.fChildren.get(label);
+        if (node != null) {
+            return node;
+        }
+        if (fNodes.get() >= fMaxNodes) {
+            // one more node per path at most
+            return from.fChildren.computeIfAbsent(OTHER, Node::new);
+        }
+        return from.fChildren.computeIfAbsent(label, key -> {
+            fNodes.incrementAndGet();
+            return new Node(key);
+        });
+    }
+
+    /**
+     * Export the self times of the paths as folded stacks, one
+     * "outer;inner time" line per path, as read by flame graph tools
+     *
+     * @return the folded stacks, times in nanoseconds
+     */
+    String toFoldedStacks() {
+        StringBuilder sb = new StringBuilder();
+        for (Node child : fRoot.fChildren.values()) {
+            fold(child, new StringBuilder(), sb);
+        }
+        return sb.toString();
+    }
+
+    private static void fold(Node node, StringBuilder path, StringBuilder sb) {
+        int length = path.length();
+        if (length > 0) {
+            path.append(';');
+        }
+        // the separators of the format
+        path.append(node.fLabel.replace(';', '_').replace('\n', ' '));
+        long self = node.fSelf.sum();
+        if (self > 0) {
+            sb.append(path).append(' ').append(self).append('\n');
+        }
+        for (Node child : node.fChildren.values()) {
+            fold(child, path, sb);
+        }
+        path.setLength(length);
+    }
+
+    /**
+     * Get the number of call paths
+     *
+     * @return the number of paths
+     */
+    int size() {
+        return fNodes.get();
+    }
+
+    /**
+     * Get the times of a call path
+     *
+     * @param labels
+     *            the labels of the path, from the outermost scope
+     * @return the count, total time and self time, or null if the path is not
+     *         in the tree
+     */
+    long[] get(String... labels) {
+        Node node = fRoot;
+        for (String label : labels) {
+            node = node.fChildren.get(label);
+            if (node == null) {
+                return null;
+            }
+        }
+        return new long[] { node.fCount.sum(), node.fTotal.sum(), node.fSelf.sum() };
+    }
+}
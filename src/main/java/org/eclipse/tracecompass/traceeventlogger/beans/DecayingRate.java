@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exponentially decaying rates over 1, 5 and 15 minutes, like the load
+ * averages. The events are counted in a striped counter, the rates are
+ * updated every {@link #TICK_NANOS} by the first thread to notice it.
+ */
+final class DecayingRate {
+
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final double TICK_SECONDS = TICK_NANOS / 1000000000.0;
+    private static final double[] ALPHAS = {
+            1 - Math.exp(-TICK_SECONDS / 60.0),
+            1 - Math.exp(-TICK_SECONDS / 300.0),
+            1 - Math.exp(-TICK_SECONDS / 900.0) };
+    /** After that many ticks without events, the rates are 0 anyway */
+    private static final int MAX_TICKS = 10000;
+
+    private final LongAdder fUncounted = new LongAdder();
+    private final AtomicLong fLastTick;
+    /** Events per second, only updated by the thread ticking */
+    private final double[] fRates = new double[ALPHAS.length];
+    private volatile boolean fStarted;
+
+    /**
+     * Constructor
+     *
+     * @param now
+     *            the current time in nanoseconds, see
+     *            {@link TraceEventLoggerManager#now()}
+     */
+    DecayingRate(long now) {
+        fLastTick = new AtomicLong(now);
+    }
+
+    /**
+     * Count an event
+     *
+     * @param now
+     *            the current time in nanoseconds, see
+     *            {@link TraceEventLoggerManager#now()}
+     */
+    void mark(long now) {
+        tick(now);
+        fUncounted.increment();
+    }
+
+    private void tick(long now) {
+        long last = fLastTick.get();
+        long ticks = (now - last) / TICK_NANOS;
+        if (ticks > 0 && fLastTick.compareAndSet(last, last + ticks * TICK_NANOS)) {
+            synchronized (fRates) {
+                for (long i = 0; i < Math.min(ticks, MAX_TICKS); i++) {
+                    double rate = (i == 0 ? fUncounted.sumThenReset() : 0) / TICK_SECONDS;
+                    for (int j = 0; j < fRates.length; j++) {
+                        // the first tick starts from the actual rate
+                        fRates[j] = fStarted ? fRates[j] + ALPHAS[j] * (rate - fRates[j]) : rate;
+                    }
+                    fStarted = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a rate
+     *
+     * @param now
+     *            the current time in nanoseconds, see
+     *            {@link TraceEventLoggerManager#now()}
+     * @param index
+     *            0 for 1 minute, 1 for 5 minutes, 2 for 15 minutes
+     * @return the events per second
+     */
+    double get(long now, int index) {
+        tick(now);
+        synchronized (fRates) {
+            return fRates[index];
+        }
+    }
+
+    /**
+     * Forget the rates
+     *
+     * @param now
+     *            the current time in nanoseconds, see
+     *            {@link TraceEventLoggerManager#now()}
+     */
+    void reset(long now) {
+        synchronized (fRates) {
+            fUncounted.reset();
+            fLastTick.set(now);
+            for (int j = 0; j < fRates.length; j++) {
+                fRates[j] = 0;
+            }
+            fStarted = false;
+        }
+    }
+}
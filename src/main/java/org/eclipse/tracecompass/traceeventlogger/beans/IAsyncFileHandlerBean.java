@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+import javax.management.MXBean;
+
+/**
+ * Asynchronous file handler MXBean interface, publishes the health of the
+ * pipeline between the logging threads and the writer thread: how full the
+ * queue is, how long the logging threads waited for it, and how fast the
+ * writer keeps up.
+ *
+ * The records are published in batches, a batch is queued when it is full or
+ * when the handler is flushed, and written by the writer thread.
+ */
+@MXBean
+public interface IAsyncFileHandlerBean {
+
+    /**
+     * Get the number of batches waiting in the queue
+     *
+     * @return the number of batches
+     */
+    int getQueueSize();
+
+    /**
+     * Get the maximum number of batches in the queue
+     *
+     * @return the queue depth
+     */
+    int getQueueDepth();
+
+    /**
+     * Get the number of batches queued and not written yet, including the one
+     * being written
+     *
+     * @return the number of batches
+     */
+    long getBatchesInFlight();
+
+    /**
+     * Get the number of times a logging thread waited for the queue, as it was
+     * full
+     *
+     * @return the number of waits
+     */
+    long getBlockedCount();
+
+    /**
+     * Get the total time the logging threads waited for the queue
+     *
+     * @return the time in nanoseconds
+     */
+    long getBlockedTime();
+
+    /**
+     * Get the number of flushes, by the timer or by the application, each one
+     * queues the current batch
+     *
+     * @return the number of flushes
+     */
+    long getFlushCount();
+
+    /**
+     * Get the number of records written, without the metadata
+     *
+     * @return the number of records
+     */
+    long getWrittenRecords();
+
+    /**
+     * Get the number of bytes written, in the encoding of the handler
+     *
+     * @return the number of bytes
+     */
+    long getWrittenBytes();
+
+    /**
+     * Get the number of bytes written per second, over the last flush period
+     *
+     * @return the rate in bytes per second
+     */
+    double getWriteRate();
+
+    /**
+     * Get the total time the writer spent writing batches
+     *
+     * @return the time in nanoseconds
+     */
+    long getBatchWriteTime();
+
+    /**
+     * Get the mean time to write a batch
+     *
+     * @return the time in nanoseconds
+     */
+    double getMeanBatchWriteTime();
+
+    /**
+     * Get the longest time to write a batch
+     *
+     * @return the time in nanoseconds
+     */
+    long getMaxBatchWriteTime();
+}
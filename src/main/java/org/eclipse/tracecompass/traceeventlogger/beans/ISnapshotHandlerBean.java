@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+import javax.management.MXBean;
+
+/**
+ * Snapshot handler MXBean interface, publishes the memory used by the events
+ * kept for the snapshots, to size the buffer against a heap budget, and the
+ * time taken to write the snapshots, and dumps them on demand.
+ *
+ * The events are kept until they are overwritten, by the number of events or
+ * by the number of bytes, and are only written if they are younger than the
+ * maximum age.
+ */
+@MXBean
+public interface ISnapshotHandlerBean {
+
+    /**
+     * Get the memory allocated for the events, the serialized events and the
+     * slots indexing them. It is 0 until the first event.
+     *
+     * @return the allocated memory in bytes
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Get the memory used by the retained events
+     *
+     * @return the used memory in bytes
+     */
+    long getUsedBytes();
+
+    /**
+     * Get the number of retained events, the ones a snapshot can write
+     *
+     * @return the number of events
+     */
+    long getRetainedEvents();
+
+    /**
+     * Get the time between the oldest and the newest retained events
+     *
+     * @return the time span in nanoseconds
+     */
+    long getRetainedTime();
+
+    /**
+     * Get the number of threads with open scopes followed
+     *
+     * @return the number of threads
+     */
+    int getLiveStacks();
+
+    /**
+     * Get the number of threads with open scopes forgotten, to follow newer
+     * ones
+     *
+     * @return the number of threads
+     */
+    long getEvictedStacks();
+
+    /**
+     * Get the number of events too large to be kept
+     *
+     * @return the number of dropped events
+     */
+    long getDroppedEvents();
+
+    /**
+     * Get the number of snapshots written
+     *
+     * @return the number of snapshots
+     */
+    long getSnapshotCount();
+
+    /**
+     * Get the number of snapshots triggered and waiting for the drainer
+     *
+     * @return the number of snapshots
+     */
+    int getPendingSnapshots();
+
+    /**
+     * Get the time to read and write the last snapshot
+     *
+     * @return the time in nanoseconds
+     */
+    long getLastDrainTime();
+
+    /**
+     * Get the longest time to read and write a snapshot
+     *
+     * @return the time in nanoseconds
+     */
+    long getMaxDrainTime();
+
+    /**
+     * Get the total time spent reading and writing the snapshots
+     *
+     * @return the time in nanoseconds
+     */
+    long getTotalDrainTime();
+
+    /**
+     * Get the maximum number of events kept
+     *
+     * @return the maximum number of events
+     */
+    int getMaxEvents();
+
+    /**
+     * Get the maximum memory used by the serialized events
+     *
+     * @return the maximum size in bytes
+     */
+    int getMaxBytes();
+
+    /**
+     * Get the maximum age of the events written, 0 for no limit
+     *
+     * @return the maximum age in milliseconds
+     */
+    long getMaxAge();
+
+    /**
+     * Write the events in memory to a snapshot now, without waiting for a
+     * trigger
+     *
+     * @return the path of the snapshot, empty if there are no events
+     */
+    String dump();
+}
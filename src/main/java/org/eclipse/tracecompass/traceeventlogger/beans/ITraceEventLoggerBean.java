@@ -24,6 +24,8 @@
 
 package org.eclipse.tracecompass.traceeventlogger.beans;
 
+import java.util.SortedMap;
+
 import javax.management.MXBean;
 
 /**
@@ -59,6 +61,20 @@ public interface ITraceEventLoggerBean {
      */
     long getTotalTime();
 
+    /**
+     * Get the total (sum) self time, the time not spent in nested scopes
+     *
+     * @return the sum of the self times
+     */
+    long getTotalSelfTime();
+
+    /**
+     * Get the mean (average) self time, the time not spent in nested scopes
+     *
+     * @return the average self time
+     */
+    double getMeanSelfTime();
+
     /**
      * Get the number of times (count) the element is added
      *
@@ -79,4 +95,136 @@ public interface ITraceEventLoggerBean {
      * @return the maximum time
      */
     long getMaxTime();
+
+    /**
+     * Get the median time, within 1/32th of the actual value
+     *
+     * @return the 50th percentile
+     */
+    long getP50();
+
+    /**
+     * Get the 90th percentile of the times, within 1/32th of the actual value
+     *
+     * @return the 90th percentile
+     */
+    long getP90();
+
+    /**
+     * Get the 99th percentile of the times, within 1/32th of the actual value
+     *
+     * @return the 99th percentile
+     */
+    long getP99();
+
+    /**
+     * Get the 99.9th percentile of the times, within 1/32th of the actual
+     * value
+     *
+     * @return the 99.9th percentile
+     */
+    long getP999();
+
+    /**
+     * Get the histogram of the times, the buckets holding times
+     *
+     * @return the count of each bucket, per highest time of the bucket
+     */
+    SortedMap<Long, Long> getHistogram();
+
+    /**
+     * Get the statistics of the last minute
+     *
+     * @return the statistics
+     */
+    WindowStatistics getLast1m();
+
+    /**
+     * Get the statistics of the last 5 minutes
+     *
+     * @return the statistics
+     */
+    WindowStatistics getLast5m();
+
+    /**
+     * Get the statistics of the last 15 minutes
+     *
+     * @return the statistics
+     */
+    WindowStatistics getLast15m();
+
+    /**
+     * Get the exponentially decaying rate over a minute, like a load average
+     *
+     * @return the count per second
+     */
+    double getRate1m();
+
+    /**
+     * Get the exponentially decaying rate over 5 minutes
+     *
+     * @return the count per second
+     */
+    double getRate5m();
+
+    /**
+     * Get the exponentially decaying rate over 15 minutes
+     *
+     * @return the count per second
+     */
+    double getRate15m();
+
+    /**
+     * Get the threshold of the 99th percentile of the times in the threshold
+     * window, a notification is sent when it is exceeded
+     *
+     * @return the threshold in nanoseconds, 0 if not set
+     */
+    long getP99Threshold();
+
+    /**
+     * Set the threshold of the 99th percentile of the times in the threshold
+     * window
+     *
+     * @param threshold
+     *            the threshold in nanoseconds, 0 to not check it
+     */
+    void setP99Threshold(long threshold);
+
+    /**
+     * Get the threshold of the maximum time in the threshold window, a
+     * notification is sent when it is exceeded
+     *
+     * @return the threshold in nanoseconds, 0 if not set
+     */
+    long getMaxThreshold();
+
+    /**
+     * Set the threshold of the maximum time in the threshold window
+     *
+     * @param threshold
+     *            the threshold in nanoseconds, 0 to not check it
+     */
+    void setMaxThreshold(long threshold);
+
+    /**
+     * Get the window the thresholds are checked on
+     *
+     * @return the window in nanoseconds
+     */
+    long getThresholdWindow();
+
+    /**
+     * Set the window the thresholds are checked on, between 5 seconds and 15
+     * minutes
+     *
+     * @param window
+     *            the window in nanoseconds
+     */
+    void setThresholdWindow(long window);
+
+    /**
+     * Forget all the times recorded so far
+     */
+    void reset();
 }
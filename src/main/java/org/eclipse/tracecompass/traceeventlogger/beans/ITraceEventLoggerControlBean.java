@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MXBean;
+
+/**
+ * Trace Event Logger control MXBean interface, changes what is traced at
+ * runtime, without editing the logging properties and restarting: the
+ * handlers, the logger levels, the labels and categories traced, and the
+ * sampling rates.
+ *
+ * The labels and categories apply to the scopes, flows, async, instant,
+ * counter and marker events. Each label is a tracepoint, with a hit count and
+ * a bit in a set of disabled tracepoints: a label turned off costs a map
+ * lookup and a volatile read per event, nothing is locked.
+ */
+@MXBean
+public interface ITraceEventLoggerControlBean {
+
+    /**
+     * Get the handlers that can be controlled
+     *
+     * @return a description of each handler, per handler id, the id is also in
+     *         the name of its health bean
+     */
+    Map<String, String> getHandlers();
+
+    /**
+     * Turn a handler on or off
+     *
+     * @param id
+     *            the handler id
+     * @param enabled
+     *            true to enable the handler
+     */
+    void setHandlerEnabled(String id, boolean enabled);
+
+    /**
+     * Set the time between two forced flushes of an asynchronous file handler
+     *
+     * @param id
+     *            the handler id
+     * @param flushRate
+     *            the time in milliseconds
+     */
+    void setFlushRate(String id, int flushRate);
+
+    /**
+     * Set the maximum number of records per batch of an asynchronous file
+     * handler
+     *
+     * @param id
+     *            the handler id
+     * @param maxSize
+     *            the maximum number of records
+     */
+    void setMaxSize(String id, int maxSize);
+
+    /**
+     * Get the level of a logger
+     *
+     * @param logger
+     *            the logger name, empty for the root logger
+     * @return the level, empty if it is inherited from the parent logger
+     */
+    String getLoggerLevel(String logger);
+
+    /**
+     * Set the level of a logger
+     *
+     * @param logger
+     *            the logger name, empty for the root logger
+     * @param level
+     *            the level name or value, e.g. FINE, empty to inherit the
+     *            level of the parent logger
+     */
+    void setLoggerLevel(String logger, String level);
+
+    /**
+     * Turn a tracepoint on or off, whatever the allow and deny patterns
+     *
+     * @param label
+     *            the label of the events
+     * @param enabled
+     *            true to trace the label with its sampling rate, false to not
+     *            trace it
+     */
+    void setLabelEnabled(String label, boolean enabled);
+
+    /**
+     * Get the tracepoints turned off, explicitly or by the patterns
+     *
+     * @return the labels
+     */
+    List<String> getDisabledLabels();
+
+    /**
+     * Get the allow patterns of the tracepoints
+     *
+     * @return the comma separated globs, empty to allow all the labels
+     */
+    String getAllowPatterns();
+
+    /**
+     * Set the allow patterns of the tracepoints, only the labels matching one
+     * of them are traced
+     *
+     * @param patterns
+     *            the comma separated globs, <code>*</code> matches any text,
+     *            empty to allow all the labels
+     */
+    void setAllowPatterns(String patterns);
+
+    /**
+     * Get the deny patterns of the tracepoints
+     *
+     * @return the comma separated globs
+     */
+    String getDenyPatterns();
+
+    /**
+     * Set the deny patterns of the tracepoints, the labels matching one of
+     * them are not traced, even if allowed
+     *
+     * @param patterns
+     *            the comma separated globs, <code>*</code> matches any text
+     */
+    void setDenyPatterns(String patterns);
+
+    /**
+     * Get the number of times each tracepoint was reached, traced or not
+     *
+     * @return the hits per label
+     */
+    Map<String, Long> getTracepointHits();
+
+    /**
+     * Get the most hit tracepoints, to find the instrumentation to turn off
+     *
+     * @param count
+     *            the number of tracepoints
+     * @return "index hits label" per tracepoint, the most hit first
+     */
+    List<String> topTracepoints(int count);
+
+    /**
+     * Set the sampling rate of a label
+     *
+     * @param label
+     *            the label of the events
+     * @param rate
+     *            the part of the events traced, from 0 to 1, negative to use
+     *            the default sampling rate
+     */
+    void setLabelSamplingRate(String label, double rate);
+
+    /**
+     * Get the labels with their own sampling rate
+     *
+     * @return the sampling rate per label
+     */
+    Map<String, Double> getLabelSamplingRates();
+
+    /**
+     * Turn a category of flows or async events on or off
+     *
+     * @param category
+     *            the category
+     * @param enabled
+     *            true to trace the category
+     */
+    void setCategoryEnabled(String category, boolean enabled);
+
+    /**
+     * Get the categories turned off
+     *
+     * @return the categories
+     */
+    List<String> getDisabledCategories();
+
+    /**
+     * Get the sampling rate of the labels without their own rate
+     *
+     * @return the part of the events traced, from 0 to 1
+     */
+    double getSamplingRate();
+
+    /**
+     * Set the sampling rate of the labels without their own rate
+     *
+     * @param rate
+     *            the part of the events traced, from 0 to 1
+     */
+    void setSamplingRate(double rate);
+
+    /**
+     * Trace all the labels and categories again, without patterns or sampling
+     */
+    void resetSwitches();
+}
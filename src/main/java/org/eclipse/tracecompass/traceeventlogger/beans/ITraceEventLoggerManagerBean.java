@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+import javax.management.MXBean;
+
+/**
+ * Trace Event Logger Manager MXBean interface, publishes how many labels are
+ * monitored, and the times per call path.
+ */
+@MXBean
+public interface ITraceEventLoggerManagerBean {
+
+    /**
+     * Get the number of labels with their own bean
+     *
+     * @return the number of labels
+     */
+    int getLabelCount();
+
+    /**
+     * Get the maximum number of labels with their own bean, the others are
+     * counted together
+     *
+     * @return the maximum number of labels
+     */
+    int getMaxLabels();
+
+    /**
+     * Get the number of labels evicted to make room for new ones
+     *
+     * @return the number of evicted labels
+     */
+    long getEvictedLabels();
+
+    /**
+     * Get the number of call paths, 0 if they are not followed
+     *
+     * @return the number of call paths
+     */
+    int getCallPaths();
+
+    /**
+     * Export the self times per call path as folded stacks, one "outer;inner
+     * time" line per path, to draw a flame graph
+     *
+     * @return the folded stacks, times in nanoseconds, empty if the call paths
+     *         are not followed
+     */
+    String foldedStacks();
+}
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram. Values below 64 have their own bucket, each
+ * power of two above is split in 32 buckets, so a value is known within
+ * 1/32th of itself up to {@link Long#MAX_VALUE}, in 1888 buckets.
+ *
+ * Recording is lock-free and does not allocate. The counts start as a single
+ * array; when threads record at the same time, they are split in up to one
+ * array per processor, at most 8, picked by thread, like a
+ * {@link java.util.concurrent.atomic.LongAdder}. Reading takes a
+ * {@link Snapshot}, which can be merged with others.
+ *
+ * This class is internal, it should not be extended or made into API.
+ */
+public final class LatencyHistogram {
+
+    /** log2 of the number of buckets per power of two */
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+    /** Most arrays of counts, a power of two */
+    private static final int MAX_STRIPES = Integer.highestOneBit(Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    /** The arrays of counts, the count of a bucket is their sum */
+    private volatile AtomicLongArray[] fStripes = { new AtomicLongArray(BUCKETS) };
+
+    /**
+     * Copy of the counts of a histogram
+     */
+    public static final class Snapshot {
+        private final long[] fCounts;
+        private long fTotal;
+
+        private Snapshot(long[] counts) {
+            fCounts = counts;
+            for (long count : counts) {
+                fTotal += count;
+            }
+        }
+
+        /**
+         * Constructor, an empty snapshot
+         */
+        public Snapshot() {
+            this(new long[BUCKETS]);
+        }
+
+        /**
+         * Add the counts of another snapshot to this one
+         *
+         * @param other
+         *            the other snapshot
+         * @return this snapshot
+         */
+        public Snapshot merge(Snapshot other) {
+            for (int i = 0; i < BUCKETS; i++) {
+                fCounts[i] += other.fCounts[i];
+            }
+            fTotal += other.fTotal;
+            return this;
+        }
+
+        /**
+         * Get the counts recorded since an earlier snapshot of the same
+         * histogram
+         *
+         * @param earlier
+         *            the earlier snapshot
+         * @return a new snapshot, with the counts of the values recorded in
+         *         between, none if the histogram was reset in between
+         */
+        public Snapshot since(Snapshot earlier) {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = Math.max(0, fCounts[i] - earlier.fCounts[i]);
+            }
+            return new Snapshot(counts);
+        }
+
+        /**
+         * Get the number of values
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return fTotal;
+        }
+
+        /**
+         * Get a percentile of the values
+         *
+         * @param quantile
+         *            the quantile, between 0 and 1, e.g. 0.99 for the 99th
+         *            percentile
+         * @return the middle of the bucket of the percentile, or 0 if there
+         *         are no values
+         */
+        public long getPercentile(double quantile) {
+            if (fTotal == 0) {
+                return 0;
+            }
+            // rank of the value, from 1 to the count
+            long rank = Math.max(1, (long) Math.ceil(quantile * fTotal));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += fCounts[i];
+                if (seen >= rank) {
+                    return lowest(i) + (highest(i) - lowest(i)) / 2;
+                }
+            }
+            return highest(BUCKETS - 1);
+        }
+
+        /**
+         * Get the counts of the buckets holding values
+         *
+         * @return the counts, per highest value of the bucket
+         */
+        public SortedMap<Long, Long> getBuckets() {
+            SortedMap<Long, Long> buckets = new TreeMap<>();
+            for (int i = 0; i < BUCKETS; i++) {
+                if (fCounts[i] != 0) {
+                    buckets.put(highest(i), fCounts[i]);
+                }
+            }
+            return buckets;
+        }
+    }
+
+    /**
+     * Record a value, negative values count as 0
+     *
+     * @param value
+     *            the value
+     */
+    public void record(long value) {
+        int index = index(value);
+        AtomicLongArray[] stripes = fStripes;
+        AtomicLongArray counts = stripes[stripe(stripes.length)];
+        long count = counts.get(index);
+        if (!counts.compareAndSet(index, count, count + 1)) {
+            // another thread records in the same array
+            grow(stripes);
+            counts.incrementAndGet(index);
+        }
+    }
+
+    private static int stripe(int length) {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (length - 1);
+    }
+
+    private synchronized void grow(AtomicLongArray[] stripes) {
+        if (fStripes != stripes || stripes.length >= MAX_STRIPES) {
+            return;
+        }
+        AtomicLongArray[] grown = Arrays.copyOf(stripes, 2 * stripes.length);
+        for (int i = stripes.length; i < grown.length; i++) {
+            grown[i] = new AtomicLongArray(BUCKETS);
+        }
+        fStripes = grown;
+    }
+
+    private static long count(AtomicLongArray[] stripes, int index) {
+        long count = 0;
+        for (AtomicLongArray counts : stripes) {
+            count += counts.get(index);
+        }
+        return count;
+    }
+
+    /**
+     * Copy the counts, the values recorded meanwhile may or may not be in it
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        AtomicLongArray[] stripes = fStripes;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = count(stripes, i);
+        }
+        return new Snapshot(counts);
+    }
+
+    /**
+     * Get percentiles of the values without copying the counts, the values
+     * recorded meanwhile may or may not be counted
+     *
+     * @param quantiles
+     *            the quantiles, in increasing order, between 0 and 1
+     * @param percentiles
+     *            receives the middle of the bucket of each percentile, or 0 if
+     *            there are no values
+     */
+    public void getPercentiles(double[] quantiles, long[] percentiles) {
+        AtomicLongArray[] stripes = fStripes;
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += count(stripes, i);
+        }
+        int next = 0;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS && next < quantiles.length; i++) {
+            seen += count(stripes, i);
+            while (next < quantiles.length && total > 0 && seen >= Math.max(1, (long) Math.ceil(quantiles[next] * total))) {
+                percentiles[next++] = lowest(i) + (highest(i) - lowest(i)) / 2;
+            }
+        }
+        for (; next < quantiles.length; next++) {
+            // no values, or more values than counted at first
+            percentiles[next] = total == 0 ? 0 : highest(BUCKETS - 1);
+        }
+    }
+
+    /**
+     * Forget all the values
+     */
+    public void reset() {
+        for (AtomicLongArray counts : fStripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+        }
+    }
+
+    private static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long lowest(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    private static long highest(int index) {
+        return index == BUCKETS - 1 ? Long.MAX_VALUE : lowest(index + 1) - 1;
+    }
+}
@@ -0,0 +1,343 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Publishes the monitoring statistics on <code>/metrics</code> in the
+ * Prometheus text format, or in the OpenMetrics one when the scraper asks for
+ * it:
+ *
+ * <ul>
+ * <li>the times of each label as a summary, with the 50th, 90th, 99th and
+ * 99.9th percentiles, in seconds</li>
+ * <li>the self times of each label as a counter</li>
+ * <li>the number of labels and of evicted labels</li>
+ * <li>the numeric attributes of the other beans of the
+ * <code>org.eclipse.tracecompass.log</code> domain, like the handlers, as
+ * gauges named after their type</li>
+ * </ul>
+ *
+ * The text and its encoding are kept between the scrapes, which are served one
+ * at a time, and the percentiles are read without copying the histograms, so
+ * scraping thousands of labels creates little garbage.
+ */
+final class MetricsExporter implements HttpHandler {
+
+    /** Content type of the OpenMetrics format */
+    static final String OPENMETRICS = "application/openmetrics-text; version=1.0.0; charset=utf-8"; //$NON-NLS-1$
+    /** Content type of the Prometheus text format */
+    static final String TEXT = "text/plain; version=0.0.4; charset=utf-8"; //$NON-NLS-1$
+
+    private static final String DOMAIN = "org.eclipse.tracecompass.log"; //$NON-NLS-1$
+    private static final String PREFIX = "tracecompass_"; //$NON-NLS-1$
+    private static final String SCOPE = "tracecompass_scope_seconds"; //$NON-NLS-1$
+    private static final String SELF = "tracecompass_scope_self_seconds"; //$NON-NLS-1$
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final String[] QUANTILE_LABELS = { ",quantile=\"0.5\"} ", ",quantile=\"0.9\"} ", ",quantile=\"0.99\"} ", ",quantile=\"0.999\"} " }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final TraceEventLoggerManager fManager;
+    private final StringBuilder fText = new StringBuilder(1 << 16);
+    private final CharsetEncoder fEncoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer fBytes = ByteBuffer.allocate(1 << 16);
+    private final long[] fPercentiles = new long[QUANTILES.length];
+    /** Escaped label of the beans, <code>{label="..."</code> */
+    private final Map<TraceEventLoggerBean, String> fLabels = new WeakHashMap<>();
+    /** Metric names per bean type and attribute */
+    private final Map<String, String> fNames = new HashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param manager
+     *            the manager of the labels to publish
+     */
+    MetricsExporter(TraceEventLoggerManager manager) {
+        fManager = manager;
+    }
+
+    /**
+     * Start an HTTP server publishing the statistics of a manager. Its threads
+     * are daemons if the calling thread is.
+     *
+     * @param manager
+     *            the manager
+     * @param address
+     *            the address to listen on
+     * @return the server, started
+     * @throws IOException
+     *             if the address cannot be bound
+     */
+    static HttpServer start(TraceEventLoggerManager manager, InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics", new MetricsExporter(manager)); //$NON-NLS-1$
+        server.start();
+        return server;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) { //$NON-NLS-1$
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String accept = exchange.getRequestHeaders().getFirst("Accept"); //$NON-NLS-1$
+            boolean openMetrics = accept != null && accept.contains("application/openmetrics-text"); //$NON-NLS-1$
+            synchronized (this) {
+                ByteBuffer bytes = render(openMetrics);
+                exchange.getResponseHeaders().set("Content-Type", openMetrics ? OPENMETRICS : TEXT); //$NON-NLS-1$
+                exchange.sendResponseHeaders(200, bytes.remaining());
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes.array(), bytes.position(), bytes.remaining());
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Render the statistics
+     *
+     * @param openMetrics
+     *            true for the OpenMetrics format, false for the Prometheus one
+     * @return the UTF-8 text, valid until the next rendering
+     */
+    synchronized ByteBuffer render(boolean openMetrics) {
+        StringBuilder sb = fText;
+        sb.setLength(0);
+        family(sb, SCOPE, "summary", "Time of the scopes per label.", true, openMetrics); //$NON-NLS-1$ //$NON-NLS-2$
+        fManager.forEachBean(bean -> {
+            String label = label(bean);
+            bean.getPercentiles(QUANTILES, fPercentiles);
+            for (int i = 0; i < QUANTILES.length; i++) {
+                seconds(sb.append(SCOPE).append(label).append(QUANTILE_LABELS[i]), fPercentiles[i]).append('\n');
+            }
+            seconds(sb.append(SCOPE).append("_sum").append(label).append("} "), bean.getTotalTime()).append('\n'); //$NON-NLS-1$ //$NON-NLS-2$
+            sb.append(SCOPE).append("_count").append(label).append("} ").append(bean.getCount()).append('\n'); //$NON-NLS-1$ //$NON-NLS-2$
+        });
+        family(sb, SELF, "counter", "Time of the scopes out of their nested scopes per label.", true, openMetrics); //$NON-NLS-1$ //$NON-NLS-2$
+        fManager.forEachBean(bean -> seconds(sb.append(SELF).append("_total").append(label(bean)).append("} "), bean.getTotalSelfTime()).append('\n')); //$NON-NLS-1$ //$NON-NLS-2$
+        family(sb, "tracecompass_monitored_labels", "gauge", "Number of labels with their own statistics.", false, openMetrics); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        sb.append("tracecompass_monitored_labels ").append(fManager.getLabelCount()).append('\n'); //$NON-NLS-1$
+        family(sb, "tracecompass_evicted_labels", "counter", "Number of idle labels evicted.", false, openMetrics); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        sb.append("tracecompass_evicted_labels_total ").append(fManager.getEvictedLabels()).append('\n'); //$NON-NLS-1$
+        renderBeans(sb, openMetrics);
+        if (openMetrics) {
+            sb.append("# EOF\n"); //$NON-NLS-1$
+        }
+        return encode(sb);
+    }
+
+    /**
+     * Render the numeric attributes of the other beans of the domain, grouped
+     * per type and attribute
+     */
+    private void renderBeans(StringBuilder sb, boolean openMetrics) {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        Map<String, List<ObjectName>> types = new TreeMap<>();
+        try {
+            for (ObjectName name : mbs.queryNames(new ObjectName(DOMAIN + ":*"), null)) { //$NON-NLS-1$
+                String type = name.getKeyProperty("type"); //$NON-NLS-1$
+                if (type != null && !type.startsWith("TraceEventLogger")) { //$NON-NLS-1$
+                    types.computeIfAbsent(type, key -> new ArrayList<>()).add(name);
+                }
+            }
+        } catch (JMException e) {
+            return;
+        }
+        for (Map.Entry<String, List<ObjectName>> entry : types.entrySet()) {
+            List<ObjectName> names = entry.getValue();
+            MBeanAttributeInfo[] attributes;
+            try {
+                attributes = mbs.getMBeanInfo(names.get(0)).getAttributes();
+            } catch (JMException e) {
+                continue;
+            }
+            for (MBeanAttributeInfo attribute : attributes) {
+                if (!attribute.isReadable() || !isNumeric(attribute.getType())) {
+                    continue;
+                }
+                String metric = fNames.computeIfAbsent(entry.getKey() + '.' + attribute.getName(), key -> PREFIX + snake(key));
+                family(sb, metric, "gauge", entry.getKey() + ' ' + attribute.getName() + '.', false, openMetrics); //$NON-NLS-1$
+                for (ObjectName name : names) {
+                    Object value;
+                    try {
+                        value = mbs.getAttribute(name, attribute.getName());
+                    } catch (JMException | RuntimeException e) {
+                        // unregistered meanwhile
+                        continue;
+                    }
+                    if (value instanceof Number) {
+                        sb.append(metric);
+                        appendLabels(sb, name);
+                        sb.append(' ').append(value).append('\n');
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isNumeric(String type) {
+        switch (type) {
+        case "int": //$NON-NLS-1$
+        case "long": //$NON-NLS-1$
+        case "double": //$NON-NLS-1$
+        case "java.lang.Integer": //$NON-NLS-1$
+        case "java.lang.Long": //$NON-NLS-1$
+        case "java.lang.Double": //$NON-NLS-1$
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static void appendLabels(StringBuilder sb, ObjectName name) {
+        char separator = '{';
+        for (Map.Entry<String, String> property : new TreeMap<>(name.getKeyPropertyList()).entrySet()) {
+            if (!"type".equals(property.getKey())) { //$NON-NLS-1$
+                String value = property.getValue();
+                if (value.startsWith("\"")) { //$NON-NLS-1$
+                    value = ObjectName.unquote(value);
+                }
+                escape(sb.append(separator).append(snake(property.getKey())).append("=\""), value).append('"'); //$NON-NLS-1$
+                separator = ',';
+            }
+        }
+        if (separator == ',') {
+            sb.append('}');
+        }
+    }
+
+    private static void family(StringBuilder sb, String name, String type, String help, boolean seconds, boolean openMetrics) {
+        // the Prometheus format names the counters with their suffix
+        sb.append("# TYPE ").append(name).append(!openMetrics && "counter".equals(type) ? "_total " : " ").append(type).append('\n'); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        if (openMetrics && seconds) {
+            sb.append("# UNIT ").append(name).append(" seconds\n"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n'); //$NON-NLS-1$
+    }
+
+    private String label(TraceEventLoggerBean bean) {
+        return fLabels.computeIfAbsent(bean, key -> escape(new StringBuilder("{label=\""), key.getObservedElementName()).append('"').toString()); //$NON-NLS-1$
+    }
+
+    private static StringBuilder escape(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n"); //$NON-NLS-1$
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb;
+    }
+
+    /**
+     * Convert a name like "SnapshotHandler.DroppedEvents" to
+     * "snapshot_handler_dropped_events"
+     */
+    private static String snake(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0 && Character.isLetterOrDigit(name.charAt(i - 1)) && !Character.isUpperCase(name.charAt(i - 1))) {
+                    sb.append('_');
+                }
+                sb.append(Character.toLowerCase(c));
+            } else {
+                sb.append(Character.isLetterOrDigit(c) ? c : '_');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Append nanoseconds as seconds, without going through a double
+     */
+    private static StringBuilder seconds(StringBuilder sb, long nanos) {
+        long value = nanos;
+        if (value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        sb.append(value / NANOS_PER_SECOND).append('.');
+        long fraction = value % NANOS_PER_SECOND;
+        for (long digit = NANOS_PER_SECOND / 10; digit > 0; digit /= 10) {
+            sb.append((char) ('0' + fraction / digit % 10));
+        }
+        return sb;
+    }
+
+    private ByteBuffer encode(CharSequence text) {
+        CharBuffer in = CharBuffer.wrap(text);
+        ByteBuffer out = fBytes;
+        out.clear();
+        fEncoder.reset();
+        while (fEncoder.encode(in, out, true).isOverflow()) {
+            ByteBuffer larger = ByteBuffer.allocate(out.capacity() * 2);
+            out.flip();
+            larger.put(out);
+            out = larger;
+        }
+        // nothing is left to flush in UTF-8
+        fEncoder.flush(out);
+        fBytes = out;
+        out.flip();
+        return out;
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of the times recorded in the last minutes, kept in a ring of
+ * buckets of {@link #BUCKET_NANOS} each. Recording only updates the current
+ * bucket, the bucket of an older period is replaced when the ring comes back
+ * to it.
+ */
+final class SlidingWindow {
+
+    /** Time covered by a bucket */
+    static final long BUCKET_NANOS = TimeUnit.SECONDS.toNanos(5);
+    /** Longest window */
+    static final long MAX_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(15);
+    /** The longest window and the current bucket */
+    private static final int BUCKETS = (int) (MAX_WINDOW_NANOS / BUCKET_NANOS) + 1;
+
+    /**
+     * The times recorded during a period
+     */
+    private static final class Bucket {
+        private final long fPeriod;
+        private final LongAdder fCount = new LongAdder();
+        private final LongAdder fSum = new LongAdder();
+        private final LongAccumulator fMin = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator fMax = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        Bucket(long period) {
+            fPeriod = period;
+        }
+    }
+
+    private final AtomicReferenceArray<Bucket> fBuckets = new AtomicReferenceArray<>(BUCKETS);
+
+    /**
+     * Record a time
+     *
+     * @param now
+     *            the current time in nanoseconds, see
+     *            {@link TraceEventLoggerManager#now()}
+     * @param value
+     *            the time
+     */
+    void record(long now, long value) {
+        Bucket bucket = bucket(Math.floorDiv(now, BUCKET_NANOS));
+        bucket.fCount.increment();
+        bucket.fSum.add(value);
+        bucket.fMin.accumulate(value);
+        bucket.fMax.accumulate(value);
+    }
+
+    private Bucket bucket(long period) {
+        int index = (int) Math.floorMod(period, BUCKETS);
+        Bucket bucket = fBuckets.get(index);
+        while (bucket == null || bucket.fPeriod < period) {
+            Bucket newBucket = new Bucket(period);
+            if (fBuckets.compareAndSet(index, bucket, newBucket)) {
+                return newBucket;
+            }
+            bucket = fBuckets.get(index);
+        }
+        return bucket;
+    }
+
+    /**
+     * Get the statistics of the last buckets
+     *
+     * @param now
+     *            the current time in nanoseconds, see
+     *            {@link TraceEventLoggerManager#now()}
+     * @param window
+     *            the length of the window in nanoseconds, at most
+     *            {@link #MAX_WINDOW_NANOS}
+     * @return the statistics
+     */
+    WindowStatistics get(long now, long window) {
+        long period = Math.floorDiv(now, BUCKET_NANOS);
+        long first = period - window / BUCKET_NANOS;
+        long count = 0;
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < BUCKETS; i++) {
+            Bucket bucket = fBuckets.get(i);
+            // the current bucket is partial, the oldest one is left out
+            if (bucket != null && bucket.fPeriod > first && bucket.fPeriod <= period) {
+                count += bucket.fCount.sum();
+                sum += bucket.fSum.sum();
+                min = Math.min(min, bucket.fMin.get());
+                max = Math.max(max, bucket.fMax.get());
+            }
+        }
+        return new WindowStatistics(window, count, sum, min, max);
+    }
+
+    /**
+     * Forget all the times
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            fBuckets.set(i, null);
+        }
+    }
+}
@@ -25,12 +25,18 @@
 package org.eclipse.tracecompass.traceeventlogger.beans;
 
 import java.lang.management.ManagementFactory;
-import java.util.LongSummaryStatistics;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.management.JMException;
+import javax.management.MBeanNotificationInfo;
 import javax.management.MBeanServer;
+import javax.management.Notification;
 import javax.management.NotificationBroadcasterSupport;
 import javax.management.ObjectName;
 
@@ -42,14 +48,55 @@ import javax.management.ObjectName;
  * Used to publish performance metrics and KPIs, can be seen with tools such as
  * visualvm and jconsole.
  *
+ * The values are accumulated in striped cells, so threads updating the same
+ * bean do not wait on each other, and are only summed when they are read.
+ * Besides the totals since the start, the bean keeps the statistics of the
+ * last minutes in rotating buckets, and decaying rates.
+ *
+ * Thresholds can be set on the 99th percentile and on the maximum of the times
+ * in a window. They are checked in the background by
+ * {@link TraceEventLoggerManager}, never when a time is added, and a
+ * {@link #THRESHOLD_EXCEEDED} notification is sent when one is crossed, then a
+ * {@link #THRESHOLD_CLEARED} one when the times are back under it.
+ *
  * This class is internal, it should not be extended or made into API.
  *
  * @author Matthew Khouzam
  */
 public final class TraceEventLoggerBean extends NotificationBroadcasterSupport implements ITraceEventLoggerBean {
 
-    private final LongSummaryStatistics fStats = new LongSummaryStatistics();
+    /** Type of the notification sent when a threshold is exceeded */
+    public static final String THRESHOLD_EXCEEDED = "org.eclipse.tracecompass.log.threshold.exceeded"; //$NON-NLS-1$
+    /** Type of the notification sent when the times are back under a threshold */
+    public static final String THRESHOLD_CLEARED = "org.eclipse.tracecompass.log.threshold.cleared"; //$NON-NLS-1$
+    /** Default window the thresholds are checked on */
+    static final long DEFAULT_THRESHOLD_WINDOW = TimeUnit.MINUTES.toNanos(1);
+
+    private static final long USE_PRECISION_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    static final MBeanNotificationInfo[] NOTIFICATIONS = { new MBeanNotificationInfo(new String[] { THRESHOLD_EXCEEDED, THRESHOLD_CLEARED }, Notification.class.getName(), "Threshold crossed, the user data is the time in nanoseconds") }; //$NON-NLS-1$
+
+    private final LongAdder fCount = new LongAdder();
+    private final LongAdder fSum = new LongAdder();
+    private final LongAdder fSelf = new LongAdder();
+    private final LongAccumulator fMin = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator fMax = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private final LatencyHistogram fHistogram = new LatencyHistogram();
+    private final SlidingWindow fWindow = new SlidingWindow();
+    private final DecayingRate fRate = new DecayingRate(TraceEventLoggerManager.now());
     private final String fLabel;
+    private ObjectName fName;
+    /** Last time the bean was updated, roughly */
+    private volatile long fLastUse = TraceEventLoggerManager.now();
+    private volatile long fP99Threshold;
+    private volatile long fMaxThreshold;
+    private volatile long fThresholdWindow = DEFAULT_THRESHOLD_WINDOW;
+    // only used by the evaluator
+    private long fSequence;
+    /** Histograms at the start of the current and previous half windows */
+    private LatencyHistogram.Snapshot[] fBaselines;
+    private long fBaselineTime;
+    private boolean fP99Exceeded;
+    private boolean fMaxExceeded;
 
     /**
      * Constructor
@@ -59,6 +106,7 @@ public final class TraceEventLoggerBean extends NotificationBroadcasterSupport i
      *            hyphens ('-')
      */
     public TraceEventLoggerBean(String label) {
+        super(NOTIFICATIONS);
         fLabel = label;
         /**
          * Override potentially finer logging for these, as this breaks the
@@ -73,11 +121,37 @@ public final class TraceEventLoggerBean extends NotificationBroadcasterSupport i
         try {
             ObjectName name = new ObjectName(beanName);
             mbs.registerMBean(this, name);
+            fName = name;
         } catch (JMException e) {
             java.util.logging.Logger.getAnonymousLogger().log(Level.WARNING, "Cannot create bean", e); //$NON-NLS-1$
         }
     }
 
+    /**
+     * Unregister the bean, it is no longer published
+     */
+    public void unregister() {
+        ObjectName name = fName;
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                // already unregistered
+            }
+            fName = null;
+        }
+    }
+
+    /**
+     * Get the last time the bean was updated, within a tenth of a second
+     *
+     * @return the time of the last update, see
+     *         {@link TraceEventLoggerManager#now()}
+     */
+    long getLastUse() {
+        return fLastUse;
+    }
+
     @Override
     public String getObservedElementName() {
         return fLabel;
@@ -85,27 +159,228 @@ public final class TraceEventLoggerBean extends NotificationBroadcasterSupport i
 
     @Override
     public double getMeanTime() {
-        return fStats.getAverage();
+        // read the count first, the sum can only be larger
+        long count = fCount.sum();
+        return count == 0 ? 0.0 : (double) fSum.sum() / count;
     }
 
     @Override
     public long getMinTime() {
-        return fStats.getMin();
+        return fMin.get();
     }
 
     @Override
     public long getMaxTime() {
-        return fStats.getMax();
+        return fMax.get();
     }
 
     @Override
     public long getTotalTime() {
-        return fStats.getSum();
+        return fSum.sum();
+    }
+
+    @Override
+    public long getTotalSelfTime() {
+        return fSelf.sum();
+    }
+
+    @Override
+    public double getMeanSelfTime() {
+        long count = fCount.sum();
+        return count == 0 ? 0.0 : (double) fSelf.sum() / count;
     }
 
     @Override
     public long getCount() {
-        return fStats.getCount();
+        return fCount.sum();
+    }
+
+    @Override
+    public long getP50() {
+        return fHistogram.snapshot().getPercentile(0.5);
+    }
+
+    @Override
+    public long getP90() {
+        return fHistogram.snapshot().getPercentile(0.9);
+    }
+
+    @Override
+    public long getP99() {
+        return fHistogram.snapshot().getPercentile(0.99);
+    }
+
+    @Override
+    public long getP999() {
+        return fHistogram.snapshot().getPercentile(0.999);
+    }
+
+    @Override
+    public SortedMap<Long, Long> getHistogram() {
+        return fHistogram.snapshot().getBuckets();
+    }
+
+    @Override
+    public WindowStatistics getLast1m() {
+        return fWindow.get(TraceEventLoggerManager.now(), TimeUnit.MINUTES.toNanos(1));
+    }
+
+    @Override
+    public WindowStatistics getLast5m() {
+        return fWindow.get(TraceEventLoggerManager.now(), TimeUnit.MINUTES.toNanos(5));
+    }
+
+    @Override
+    public WindowStatistics getLast15m() {
+        return fWindow.get(TraceEventLoggerManager.now(), TimeUnit.MINUTES.toNanos(15));
+    }
+
+    @Override
+    public double getRate1m() {
+        return fRate.get(TraceEventLoggerManager.now(), 0);
+    }
+
+    @Override
+    public double getRate5m() {
+        return fRate.get(TraceEventLoggerManager.now(), 1);
+    }
+
+    @Override
+    public double getRate15m() {
+        return fRate.get(TraceEventLoggerManager.now(), 2);
+    }
+
+    @Override
+    public long getP99Threshold() {
+        return fP99Threshold;
+    }
+
+    @Override
+    public void setP99Threshold(long threshold) {
+        fP99Threshold = Math.max(0, threshold);
+    }
+
+    @Override
+    public long getMaxThreshold() {
+        return fMaxThreshold;
+    }
+
+    @Override
+    public void setMaxThreshold(long threshold) {
+        fMaxThreshold = Math.max(0, threshold);
+    }
+
+    @Override
+    public long getThresholdWindow() {
+        return fThresholdWindow;
+    }
+
+    @Override
+    public void setThresholdWindow(long window) {
+        fThresholdWindow = Math.min(SlidingWindow.MAX_WINDOW_NANOS, Math.max(SlidingWindow.BUCKET_NANOS, window));
+    }
+
+    /**
+     * Check the thresholds and send a notification for each one crossed since
+     * the last check. Called by a single thread.
+     *
+     * @param now
+     *            the current time in nanoseconds, see
+     *            {@link TraceEventLoggerManager#now()}
+     * @param forward
+     *            also receives the notifications sent
+     */
+    void evaluate(long now, Consumer<Notification> forward) {
+        long window = fThresholdWindow;
+        long p99Threshold = fP99Threshold;
+        if (p99Threshold > 0) {
+            LatencyHistogram.Snapshot current = fHistogram.snapshot();
+            LatencyHistogram.Snapshot[] baselines = fBaselines;
+            if (baselines == null) {
+                baselines = new LatencyHistogram.Snapshot[] { current, current };
+                fBaselines = baselines;
+                fBaselineTime = now;
+            } else if (now - fBaselineTime >= window / 2) {
+                baselines[1] = baselines[0];
+                baselines[0] = current;
+                fBaselineTime = now;
+            }
+            // the times of the last half to whole window
+            long p99 = current.since(baselines[1]).getPercentile(0.99);
+            fP99Exceeded = check(fP99Exceeded, p99 > p99Threshold, "p99", p99, p99Threshold, forward); //$NON-NLS-1$
+        } else {
+            fBaselines = null;
+            fP99Exceeded = false;
+        }
+        long maxThreshold = fMaxThreshold;
+        if (maxThreshold > 0) {
+            long max = fWindow.get(now, window).getMaxTime();
+            fMaxExceeded = check(fMaxExceeded, max > maxThreshold, "max", max, maxThreshold, forward); //$NON-NLS-1$
+        } else {
+            fMaxExceeded = false;
+        }
+    }
+
+    private boolean check(boolean wasExceeded, boolean exceeded, String statistic, long value, long threshold, Consumer<Notification> forward) {
+        if (exceeded != wasExceeded) {
+            String message = fLabel + ' ' + statistic + ' ' + value + (exceeded ? " ns exceeds " : " ns is back under ") + threshold + " ns"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            ObjectName name = fName;
+            Notification notification = new Notification(exceeded ? THRESHOLD_EXCEEDED : THRESHOLD_CLEARED, name == null ? this : name, ++fSequence, message);
+            notification.setUserData(value);
+            sendNotification(notification);
+            forward.accept(notification);
+        }
+        return exceeded;
+    }
+
+    @Override
+    public void reset() {
+        // values recorded meanwhile may be partially kept
+        fCount.reset();
+        fSum.reset();
+        fSelf.reset();
+        fMin.reset();
+        fMax.reset();
+        fHistogram.reset();
+        fWindow.reset();
+        fRate.reset(TraceEventLoggerManager.now());
+    }
+
+    /**
+     * Get a copy of the histogram of the times, to merge it with others
+     *
+     * @return the histogram snapshot
+     */
+    public LatencyHistogram.Snapshot getHistogramSnapshot() {
+        return fHistogram.snapshot();
+    }
+
+    /**
+     * Get percentiles of the times without copying the histogram
+     *
+     * @param quantiles
+     *            the quantiles, in increasing order
+     * @param percentiles
+     *            receives the percentiles
+     */
+    void getPercentiles(double[] quantiles, long[] percentiles) {
+        fHistogram.getPercentiles(quantiles, percentiles);
+    }
+
+    /**
+     * Accept a time and its self time, the part not spent in nested scopes
+     *
+     * @param value
+     *            the time
+     * @param self
+     *            the self time
+     * @param now
+     *            the current time in nanoseconds, see
+     *            {@link TraceEventLoggerManager#now()}
+     */
+    void accept(long value, long self, long now) {
+        fSelf.add(self);
+        accept(value, now);
     }
 
     /**
@@ -115,6 +390,20 @@ public final class TraceEventLoggerBean extends NotificationBroadcasterSupport i
      *            the value to aggregate
      */
     public void accept(long value) {
-        fStats.accept(value);
+        accept(value, TraceEventLoggerManager.now());
+    }
+
+    private void accept(long value, long now) {
+        fCount.increment();
+        fSum.add(value);
+        fMin.accumulate(value);
+        fMax.accumulate(value);
+        fHistogram.record(value);
+        fWindow.record(now, value);
+        fRate.mark(now);
+        if (now - fLastUse > USE_PRECISION_NANOS) {
+            // mostly read, threads updating the same bean do not fight for it
+            fLastUse = now;
+        }
     }
 }
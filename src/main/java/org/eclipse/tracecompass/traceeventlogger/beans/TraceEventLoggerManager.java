@@ -22,49 +22,499 @@
  * SPDX-License-Identifier: MIT
  *******************************************************************************/
 package org.eclipse.tracecompass.traceeventlogger.beans;
-import java.util.LinkedHashMap;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.ObjectName;
+
+import org.eclipse.tracecompass.traceeventlogger.LogUtils;
 
 /**
  * Trace Event Logger Monitor, shows the state of every scoped logger
  *
- * Use the {@link #update(String, long)} method to publish a new value
+ * Use the {@link #update(String, long)} method to publish a new value, or
+ * {@link #enter(String)} and {@link #exit(String, long)} around a scope to also
+ * publish its self time, the time not spent in the nested scopes of its thread.
+ * With <code>-DmonitoringCallTree=true</code>, the times are also kept per call
+ * path, up to <code>-DmonitoringMaxCallPaths=</code> paths (10000 by default),
+ * and can be exported as folded stacks.
+ *
+ * At most <code>-DmonitoringMaxLabels=</code> labels (1000 by default) have
+ * their own bean. Past that, the label used the least recently is evicted and
+ * its bean unregistered if it was not updated for a minute, otherwise the new
+ * label is counted in the "(other)" bean. Labels built from data, like an ID,
+ * cannot fill the MBean server.
+ *
+ * Thresholds on the 99th percentile or the maximum of the times of a label in a
+ * window are read from the logging properties:
+ *
+ * <pre>
+ * &lt;manager&gt;.thresholds = query
+ * &lt;manager&gt;.threshold.query.label = Perform Query
+ * &lt;manager&gt;.threshold.query.p99 = 0.5
+ * &lt;manager&gt;.threshold.query.max = 2
+ * &lt;manager&gt;.threshold.query.window = 300
+ * </pre>
+ *
+ * with the times in seconds, the window is a minute by default. They can also
+ * be changed on the beans. A background thread checks them every 5 seconds, the
+ * notifications of all the beans are also sent by this bean, so a single
+ * listener gets them all.
+ *
+ * With <code>-DmonitoringPort=</code>, given as a port or as
+ * <code>host:port</code>, the statistics are also published for Prometheus on
+ * <code>http://host:port/metrics</code>.
  *
  * @author Matthew Khouzam
  */
-public final class TraceEventLoggerManager {
+public final class TraceEventLoggerManager extends NotificationBroadcasterSupport implements ITraceEventLoggerManagerBean {
+
+    /** Label of the bean counting the labels past the maximum */
+    public static final String OTHER_LABEL = "(other)"; //$NON-NLS-1$
+    private static final int DEFAULT_MAX_LABELS = 1000;
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int DEFAULT_MAX_CALL_PATHS = 10000;
+    /** Maximum number of nested scopes followed per thread */
+    private static final int MAX_DEPTH = 256;
+    /** Nested scopes a thread has room for before its stack grows */
+    private static final int INITIAL_DEPTH = 8;
+    private static final long EVALUATION_PERIOD_SECONDS = 5;
+
+    /**
+     * The open scopes of a thread, with the time spent in their closed nested
+     * scopes. The arrays grow with the deepest scope of the thread, up to
+     * {@link #MAX_DEPTH}.
+     */
+    private static final class CallStack {
+        private String[] fLabels = new String[INITIAL_DEPTH];
+        /** The call paths of the scopes, null if they are not followed */
+        private CallTree.Node[] fNodes;
+        private long[] fChildTimes = new long[INITIAL_DEPTH];
+        private int fSize;
+        /** Scopes opened past {@link #MAX_DEPTH}, not followed */
+        private int fOverflow;
+
+        CallStack(boolean callTree) {
+            fNodes = callTree ? new CallTree.Node[INITIAL_DEPTH] : null;
+        }
+
+        /**
+         * Make room for one more scope
+         *
+         * @return false if the stack is at its maximum depth
+         */
+        boolean ensureRoom() {
+            int length = fLabels.length;
+            if (fSize < length) {
+                return true;
+            }
+            if (length == MAX_DEPTH) {
+                return false;
+            }
+            int newLength = Math.min(MAX_DEPTH, 2 * length);
+            fLabels = Arrays.copyOf(fLabels, newLength);
+            fChildTimes = Arrays.copyOf(fChildTimes, newLength);
+            if (fNodes != null) {
+                fNodes = Arrays.copyOf(fNodes, newLength);
+            }
+            return true;
+        }
+    }
 
-    private final Map<String, TraceEventLoggerBean> fCounters = new LinkedHashMap<>();
+    private final Map<String, TraceEventLoggerBean> fCounters = new ConcurrentHashMap<>();
 
     /**
-     * Instance, internal, do not use
+     * Instance, internal, do not use, created on the first use
      */
-    private static TraceEventLoggerManager sInstance = null;
+    private static final class Holder {
+        private static final TraceEventLoggerManager sInstance = new TraceEventLoggerManager();
+    }
 
-    private boolean fEnabled = false;
+    private final boolean fEnabled;
+    private final int fMaxLabels;
+    private final long fIdleTime;
+    private volatile TraceEventLoggerBean fOther;
+    /** Earliest time a label can be evicted */
+    private volatile long fNextEviction = now();
+    private long fEvicted;
+    /** Times per call path, null if they are not followed */
+    private final CallTree fCallTree;
+    private final ThreadLocal<CallStack> fStacks = ThreadLocal.withInitial(this::newStack);
+    /** Thresholds per label: 99th percentile, maximum, window, in nanoseconds */
+    private final Map<String, long[]> fThresholds;
 
     /**
      * Constructor
      */
     private TraceEventLoggerManager() {
+        super(TraceEventLoggerBean.NOTIFICATIONS);
         String loggingProperty = System.getProperty("enableMonitoring", "false"); //$NON-NLS-1$ //$NON-NLS-2$
 
         // Convert to boolean
         fEnabled = Boolean.parseBoolean(loggingProperty);
+        int maxLabels = DEFAULT_MAX_LABELS;
+        try {
+            maxLabels = Integer.parseInt(System.getProperty("monitoringMaxLabels", "1000").trim()); //$NON-NLS-1$ //$NON-NLS-2$
+        } catch (NumberFormatException e) {
+            // we tried!
+        }
+        fMaxLabels = maxLabels > 0 ? maxLabels : DEFAULT_MAX_LABELS;
+        fIdleTime = IDLE_NANOS;
+        int maxCallPaths = DEFAULT_MAX_CALL_PATHS;
+        try {
+            maxCallPaths = Integer.parseInt(System.getProperty("monitoringMaxCallPaths", "10000").trim()); //$NON-NLS-1$ //$NON-NLS-2$
+        } catch (NumberFormatException e) {
+            // we tried!
+        }
+        boolean callTree = Boolean.parseBoolean(System.getProperty("monitoringCallTree", "false")); //$NON-NLS-1$ //$NON-NLS-2$
+        fCallTree = callTree ? new CallTree(maxCallPaths > 0 ? maxCallPaths : DEFAULT_MAX_CALL_PATHS) : null;
+        fThresholds = readThresholds();
+        if (fEnabled) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("org.eclipse.tracecompass.log:type=TraceEventLoggerManager")); //$NON-NLS-1$
+            } catch (JMException e) {
+                Logger.getAnonymousLogger().log(Level.WARNING, "Cannot create bean", e); //$NON-NLS-1$
+            }
+            ScheduledExecutorService evaluator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Trace Monitor"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            });
+            evaluator.scheduleWithFixedDelay(() -> evaluate(now()), EVALUATION_PERIOD_SECONDS, EVALUATION_PERIOD_SECONDS, TimeUnit.SECONDS);
+            String port = System.getProperty("monitoringPort"); //$NON-NLS-1$
+            if (port != null) {
+                // the server threads are daemons like the evaluator
+                evaluator.execute(() -> startExporter(port.trim()));
+            }
+        }
+    }
+
+    /**
+     * Constructor, for testing
+     *
+     * @param maxLabels
+     *            the maximum number of labels with their own bean
+     * @param idleTime
+     *            the time in nanoseconds without updates after which a label
+     *            can be evicted
+     * @param maxCallPaths
+     *            the maximum number of call paths, 0 to not follow them
+     */
+    TraceEventLoggerManager(int maxLabels, long idleTime, int maxCallPaths) {
+        super(TraceEventLoggerBean.NOTIFICATIONS);
+        fEnabled = true;
+        fMaxLabels = maxLabels;
+        fIdleTime = idleTime;
+        fCallTree = maxCallPaths > 0 ? new CallTree(maxCallPaths) : null;
+        fThresholds = readThresholds();
+    }
+
+    private void startExporter(String address) {
+        int colon = address.lastIndexOf(':');
+        try {
+            int port = Integer.parseInt(address.substring(colon + 1));
+            InetSocketAddress socketAddress = colon < 0 ? new InetSocketAddress(port) : new InetSocketAddress(address.substring(0, colon), port);
+            MetricsExporter.start(this, socketAddress);
+        } catch (IOException | RuntimeException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Cannot publish the metrics on " + address, e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Read the thresholds from the logging properties, the thresholds without
+     * a label or a time are ignored
+     */
+    private static Map<String, long[]> readThresholds() {
+        Map<String, long[]> thresholds = new HashMap<>();
+        LogManager manager = LogManager.getLogManager();
+        String prefix = TraceEventLoggerManager.class.getName();
+        String names = manager.getProperty(prefix + ".thresholds"); //$NON-NLS-1$
+        if (names == null) {
+            return thresholds;
+        }
+        for (String name : names.split(",")) { //$NON-NLS-1$
+            String key = prefix + ".threshold." + name.trim() + '.'; //$NON-NLS-1$
+            String label = manager.getProperty(key + "label"); //$NON-NLS-1$
+            long p99 = readNanos(manager.getProperty(key + "p99"), 0); //$NON-NLS-1$
+            long max = readNanos(manager.getProperty(key + "max"), 0); //$NON-NLS-1$
+            long window = readNanos(manager.getProperty(key + "window"), TraceEventLoggerBean.DEFAULT_THRESHOLD_WINDOW); //$NON-NLS-1$
+            if (label != null && (p99 > 0 || max > 0)) {
+                thresholds.put(label.trim(), new long[] { p99, max, window });
+            }
+        }
+        return thresholds;
+    }
+
+    private static long readNanos(String seconds, long defaultValue) {
+        try {
+            return (long) (Double.parseDouble(seconds.trim()) * 1000000000.0);
+        } catch (Exception ex) {
+            // we tried!
+            return defaultValue;
+        }
     }
 
     /**
-     * Update a value
+     * Update a value, without nested scopes it is all self time
      *
      * @param label
      *            the label to update
      * @param value
      *            the value to update for a given label
      */
-    public synchronized void update(String label, long value) {
+    public void update(String label, long value) {
         if (fEnabled) {
-            fCounters.computeIfAbsent(label, TraceEventLoggerBean::new).accept(value);
+            long now = now();
+            getBean(label, true, now).accept(value, value, now);
+        }
+    }
+
+    /**
+     * Open a scope on the current thread, to be closed by
+     * {@link #exit(String, long)}
+     *
+     * @param label
+     *            the label of the scope
+     */
+    public void enter(String label) {
+        if (!fEnabled) {
+            return;
+        }
+        CallStack stack = fStacks.get();
+        int size = stack.fSize;
+        if (!stack.ensureRoom()) {
+            stack.fOverflow++;
+            return;
         }
+        stack.fLabels[size] = label;
+        if (stack.fNodes != null) {
+            stack.fNodes[size] = fCallTree.child(size == 0 ? null : stack.fNodes[size - 1], label);
+        }
+        stack.fChildTimes[size] = 0;
+        stack.fSize = size + 1;
+    }
+
+    /**
+     * Close a scope opened by {@link #enter(String)} on the current thread and
+     * publish its time and self time. A scope closed without being opened
+     * counts as its own self time, the scopes left open inside it are
+     * forgotten.
+     *
+     * @param label
+     *            the label of the scope
+     * @param value
+     *            the time of the scope
+     */
+    public void exit(String label, long value) {
+        exit(label, value, now());
+    }
+
+    /**
+     * Close a scope opened by {@link #enter(String)} on the current thread,
+     * at a time already read from the clock of the events
+     *
+     * @param label
+     *            the label of the scope
+     * @param value
+     *            the time of the scope
+     * @param now
+     *            the end of the scope, from {@link LogUtils#getClock()}
+     */
+    public void exit(String label, long value, long now) {
+        if (!fEnabled) {
+            return;
+        }
+        CallStack stack = fStacks.get();
+        int index = -1;
+        if (stack.fOverflow > 0) {
+            stack.fOverflow--;
+        } else {
+            index = stack.fSize - 1;
+            while (index >= 0 && !label.equals(stack.fLabels[index])) {
+                index--;
+            }
+        }
+        long self = value;
+        if (index >= 0) {
+            self = Math.max(0, value - stack.fChildTimes[index]);
+            CallTree.Node[] nodes = stack.fNodes;
+            if (nodes != null) {
+                nodes[index].record(value, self);
+                Arrays.fill(nodes, index, stack.fSize, null);
+            }
+            Arrays.fill(stack.fLabels, index, stack.fSize, null);
+            stack.fSize = index;
+            if (index > 0) {
+                stack.fChildTimes[index - 1] += value;
+            }
+        }
+        getBean(label, true, now).accept(value, self, now);
+    }
+
+    private CallStack newStack() {
+        return new CallStack(fCallTree != null);
+    }
+
+    private TraceEventLoggerBean getBean(String label, boolean create) {
+        return getBean(label, create, now());
+    }
+
+    private TraceEventLoggerBean getBean(String label, boolean create, long now) {
+        TraceEventLoggerBean bean = fCounters.get(label);
+        if (bean == null && create) {
+            bean = fCounters.size() >= fMaxLabels && now - fNextEviction < 0 ? getOther() : add(label);
+        }
+        return bean;
+    }
+
+    /**
+     * Add the bean of a label, only the new labels lock
+     */
+    private synchronized TraceEventLoggerBean add(String label) {
+        TraceEventLoggerBean bean = fCounters.get(label);
+        if (bean != null) {
+            return bean;
+        }
+        if (fCounters.size() >= fMaxLabels && !evict()) {
+            return getOther();
+        }
+        bean = configure(new TraceEventLoggerBean(label));
+        fCounters.put(label, bean);
+        return bean;
+    }
+
+    private TraceEventLoggerBean configure(TraceEventLoggerBean bean) {
+        long[] threshold = fThresholds.get(bean.getObservedElementName());
+        if (threshold != null) {
+            bean.setP99Threshold(threshold[0]);
+            bean.setMaxThreshold(threshold[1]);
+            bean.setThresholdWindow(threshold[2]);
+        }
+        return bean;
+    }
+
+    /**
+     * Apply an action to the beans of all the labels, the "(other)" one last
+     *
+     * @param action
+     *            the action
+     */
+    void forEachBean(Consumer<TraceEventLoggerBean> action) {
+        fCounters.values().forEach(action);
+        TraceEventLoggerBean other = fOther;
+        if (other != null) {
+            action.accept(other);
+        }
+    }
+
+    /**
+     * Check the thresholds of all the beans, on a single thread
+     *
+     * @param now
+     *            the current time in nanoseconds, see {@link #now()}
+     */
+    void evaluate(long now) {
+        forEachBean(bean -> bean.evaluate(now, this::sendNotification));
+    }
+
+    /**
+     * Evict the label used the least recently, if it is idle
+     */
+    private boolean evict() {
+        long now = now();
+        String oldest = null;
+        long oldestUse = 0;
+        for (Map.Entry<String, TraceEventLoggerBean> entry : fCounters.entrySet()) {
+            long use = entry.getValue().getLastUse();
+            if (oldest == null || use - oldestUse < 0) {
+                oldest = entry.getKey();
+                oldestUse = use;
+            }
+        }
+        if (oldest == null || now - oldestUse < fIdleTime) {
+            // no need to look again before
+            fNextEviction = oldest == null ? now : oldestUse + fIdleTime;
+            return false;
+        }
+        fCounters.remove(oldest).unregister();
+        fEvicted++;
+        return true;
+    }
+
+    private TraceEventLoggerBean getOther() {
+        TraceEventLoggerBean other = fOther;
+        if (other == null) {
+            synchronized (this) {
+                other = fOther;
+                if (other == null) {
+                    other = configure(new TraceEventLoggerBean(OTHER_LABEL));
+                    fOther = other;
+                }
+            }
+        }
+        return other;
+    }
+
+    /**
+     * Get the bean of a label
+     *
+     * @param label
+     *            the label
+     * @return the bean, or null if the label has none
+     */
+    TraceEventLoggerBean getBean(String label) {
+        return OTHER_LABEL.equals(label) ? fOther : getBean(label, false);
+    }
+
+    /**
+     * Get the times of a call path
+     *
+     * @param labels
+     *            the labels of the path, from the outermost scope
+     * @return the count, total time and self time, or null if the path is not
+     *         followed
+     */
+    long[] getCallPath(String... labels) {
+        return fCallTree == null ? null : fCallTree.get(labels);
+    }
+
+    @Override
+    public int getCallPaths() {
+        return fCallTree == null ? 0 : fCallTree.size();
+    }
+
+    @Override
+    public String foldedStacks() {
+        return fCallTree == null ? "" : fCallTree.toFoldedStacks(); //$NON-NLS-1$
+    }
+
+    @Override
+    public int getLabelCount() {
+        return fCounters.size();
+    }
+
+    @Override
+    public int getMaxLabels() {
+        return fMaxLabels;
+    }
+
+    @Override
+    public synchronized long getEvictedLabels() {
+        return fEvicted;
     }
 
     /**
@@ -72,12 +522,18 @@ public final class TraceEventLoggerManager {
      *
      * @return the manager
      */
-    public static synchronized TraceEventLoggerManager getInstance() {
-        TraceEventLoggerManager instance = sInstance;
-        if (instance == null) {
-            instance = new TraceEventLoggerManager();
-            sInstance = instance;
-        }
-        return instance;
+    public static TraceEventLoggerManager getInstance() {
+        return Holder.sInstance;
+    }
+
+    /**
+     * Get the current time of the clock stamping the events, the time of the
+     * windows, rates and thresholds of the beans, so the scopes can pass the
+     * time they already read
+     *
+     * @return the time in nanoseconds
+     */
+    static long now() {
+        return LogUtils.getClock().currentTimeNanos();
     }
 }
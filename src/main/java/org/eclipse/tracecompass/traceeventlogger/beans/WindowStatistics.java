@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+/**
+ * Statistics of the times recorded during a recent window, published as a
+ * composite value by the beans.
+ *
+ * This class is internal, it should not be extended or made into API.
+ */
+public final class WindowStatistics {
+
+    private final long fWindow;
+    private final long fCount;
+    private final long fTotal;
+    private final long fMin;
+    private final long fMax;
+
+    /**
+     * Constructor
+     *
+     * @param window
+     *            the length of the window in nanoseconds
+     * @param count
+     *            the number of times
+     * @param total
+     *            the sum of the times
+     * @param min
+     *            the minimum time, ignored if there are none
+     * @param max
+     *            the maximum time, ignored if there are none
+     */
+    public WindowStatistics(long window, long count, long total, long min, long max) {
+        fWindow = window;
+        fCount = count;
+        fTotal = total;
+        fMin = count == 0 ? 0 : min;
+        fMax = count == 0 ? 0 : max;
+    }
+
+    /**
+     * Get the length of the window
+     *
+     * @return the length in seconds
+     */
+    public long getWindow() {
+        return fWindow / 1000000000L;
+    }
+
+    /**
+     * Get the number of times in the window
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return fCount;
+    }
+
+    /**
+     * Get the sum of the times in the window
+     *
+     * @return the total time
+     */
+    public long getTotalTime() {
+        return fTotal;
+    }
+
+    /**
+     * Get the mean of the times in the window
+     *
+     * @return the mean time, 0 if there are none
+     */
+    public double getMeanTime() {
+        return fCount == 0 ? 0.0 : (double) fTotal / fCount;
+    }
+
+    /**
+     * Get the minimum time in the window
+     *
+     * @return the minimum time, 0 if there are none
+     */
+    public long getMinTime() {
+        return fMin;
+    }
+
+    /**
+     * Get the maximum time in the window
+     *
+     * @return the maximum time, 0 if there are none
+     */
+    public long getMaxTime() {
+        return fMax;
+    }
+
+    /**
+     * Get the number of times per second in the window
+     *
+     * @return the rate
+     */
+    public double getRate() {
+        return fCount * 1000000000.0 / fWindow;
+    }
+}
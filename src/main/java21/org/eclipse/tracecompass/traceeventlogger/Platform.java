@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Method;
+import java.time.Instant;
+
+/**
+ * Access to runtime features that depend on the Java version. This is the Java
+ * 21 implementation, it knows about virtual threads, on top of the Java 9
+ * features.
+ */
+final class Platform {
+
+    /**
+     * Handle on the internal <code>Thread.currentCarrierThread()</code>, only
+     * available if <code>java.lang</code> is opened to this module, e.g. with
+     * <code>--add-opens java.base/java.lang=ALL-UNNAMED</code>. Null otherwise.
+     */
+    private static final MethodHandle CURRENT_CARRIER_THREAD = findCurrentCarrierThread();
+
+    private Platform() {
+        // do nothing
+    }
+
+    private static MethodHandle findCurrentCarrierThread() {
+        try {
+            Method method = Thread.class.getDeclaredMethod("currentCarrierThread"); //$NON-NLS-1$
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method).asType(MethodType.methodType(Thread.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // not opened, the carrier is not visible
+            return null;
+        }
+    }
+
+    static long processId() {
+        return ProcessHandle.current().pid();
+    }
+
+    static long wallClockNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    static void onSpinWait() {
+        Thread.onSpinWait();
+    }
+
+    static void loadFence() {
+        VarHandle.acquireFence();
+    }
+
+    static long threadId(Thread thread) {
+        return thread.threadId();
+    }
+
+    static boolean isVirtual(Thread thread) {
+        return thread.isVirtual();
+    }
+
+    static Thread currentCarrierThread() {
+        MethodHandle handle = CURRENT_CARRIER_THREAD;
+        if (handle != null) {
+            try {
+                return (Thread) handle.invokeExact();
+            } catch (Throwable e) {
+                // fall through
+            }
+        }
+        return Thread.currentThread();
+    }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+
+/**
+ * Access to runtime features that depend on the Java version. This is the Java
+ * 9 implementation, it uses the process API, the precise wall clock, spin wait
+ * hints and fences.
+ */
+final class Platform {
+
+    private Platform() {
+        // do nothing
+    }
+
+    static long processId() {
+        return ProcessHandle.current().pid();
+    }
+
+    static long wallClockNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    static void onSpinWait() {
+        Thread.onSpinWait();
+    }
+
+    static void loadFence() {
+        VarHandle.acquireFence();
+    }
+
+    static long threadId(Thread thread) {
+        return thread.getId();
+    }
+
+    static boolean isVirtual(Thread thread) {
+        return false;
+    }
+
+    static Thread currentCarrierThread() {
+        return Thread.currentThread();
+    }
+}
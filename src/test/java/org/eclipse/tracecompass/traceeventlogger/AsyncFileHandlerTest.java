@@ -24,15 +24,22 @@
 package org.eclipse.tracecompass.traceeventlogger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Set;
 import java.util.logging.ErrorManager;
 import java.util.logging.Filter;
 import java.util.logging.Formatter;
@@ -40,6 +47,11 @@ import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.After;
 import org.junit.Test;
@@ -173,4 +185,91 @@ public class AsyncFileHandlerTest {
         assertEquals(toTest.isEnabled(), false);
     }
 
+    /**
+     * Test the health of the handler, every record is counted, including the
+     * ones written on close
+     *
+     * @throws IOException
+     *             should not happen
+     * @throws JMException
+     *             should not happen
+     */
+    @Test
+    public void testHealth() throws IOException, JMException {
+        String prefix = AsyncFileHandler.class.getName();
+        // no timed flush, the batches are the full ones and the last one
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream((prefix + ".maxSize = 2\n" //$NON-NLS-1$
+                + prefix + ".flushRate = 3600000\n").getBytes(StandardCharsets.UTF_8))); //$NON-NLS-1$
+        File test = File.createTempFile("test", ".json"); //$NON-NLS-1$ //$NON-NLS-2$
+        test.deleteOnExit();
+        AsyncFileHandler handler = new AsyncFileHandler(test.getAbsolutePath());
+        handler.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                return record.getMessage() + '\n';
+            }
+        });
+        handler.setEncoding("UTF-8"); //$NON-NLS-1$
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> names = mbs.queryNames(new ObjectName("org.eclipse.tracecompass.log:type=AsyncFileHandler,id=" + handler.getId() + ",*"), null); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(1, names.size());
+        ObjectName name = names.iterator().next();
+        assertEquals(10000, mbs.getAttribute(name, "QueueDepth")); //$NON-NLS-1$
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+        // an odd number, the last record is only written on close
+        for (int i = 0; i < 11; i++) {
+            LogUtils.traceInstant(logger, Level.INFO, "sant\u00e9"); //$NON-NLS-1$
+        }
+        handler.close();
+        assertFalse(mbs.isRegistered(name));
+        assertEquals(11L, handler.getWrittenRecords());
+        assertEquals(0L, handler.getBatchesInFlight());
+        assertEquals(0, handler.getQueueSize());
+        assertEquals(0L, handler.getFlushCount());
+        assertTrue(handler.getBatchWriteTime() > 0);
+        assertTrue(handler.getMaxBatchWriteTime() <= handler.getBatchWriteTime());
+        assertEquals(handler.getBatchWriteTime() / 6.0, handler.getMeanBatchWriteTime(), 1.0);
+        byte[] bytes = Files.readAllBytes(test.toPath());
+        String trace = new String(bytes, StandardCharsets.UTF_8);
+        // bytes, not characters
+        assertTrue(bytes.length > trace.length());
+        assertEquals(bytes.length, handler.getWrittenBytes());
+        // after the process and thread name metadata
+        assertEquals(11, trace.split("\"ph\":\"i\"", -1).length - 1); //$NON-NLS-1$
+    }
+
+    /**
+     * Test the health written as counter events
+     *
+     * @throws IOException
+     *             should not happen
+     * @throws InterruptedException
+     *             should not happen
+     */
+    @Test
+    public void testHealthCounters() throws IOException, InterruptedException {
+        String prefix = AsyncFileHandler.class.getName();
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream((prefix + ".maxSize = 2\n" //$NON-NLS-1$
+                + prefix + ".flushRate = 1\n" //$NON-NLS-1$
+                + prefix + ".counters = true\n").getBytes(StandardCharsets.UTF_8))); //$NON-NLS-1$
+        File test = File.createTempFile("test", ".json"); //$NON-NLS-1$ //$NON-NLS-2$
+        test.deleteOnExit();
+        AsyncFileHandler handler = new AsyncFileHandler(test.getAbsolutePath());
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+        // let a flush period pass before the first batch
+        Thread.sleep(5);
+        for (int i = 0; i < 10; i++) {
+            LogUtils.traceInstant(logger, Level.INFO, "health"); //$NON-NLS-1$
+        }
+        handler.close();
+        assertEquals(10L, handler.getWrittenRecords());
+        String trace = new String(Files.readAllBytes(test.toPath()), StandardCharsets.UTF_8);
+        assertTrue(trace, trace.contains("\"ph\":\"C\"")); //$NON-NLS-1$
+        assertTrue(trace, trace.contains("\"name\":\"AsyncFileHandler\"")); //$NON-NLS-1$
+        assertTrue(trace, trace.contains("\"inFlight\":")); //$NON-NLS-1$
+    }
 }
@@ -29,10 +29,12 @@ import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 import java.util.logging.StreamHandler;
@@ -59,6 +61,10 @@ public class LoggerTest {
         return event.replaceFirst("\\\"ts\\\"\\:\\\"\\d+\\.\\d{3}\\\"", "\"ts\":0.000"); //$NON-NLS-1$ //$NON-NLS-2$
     }
 
+    private static String eventUnifyPid(String event) {
+        return event.replace("\"pid\":" + LogUtils.getProcessId(), "\"pid\":1"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
     private static String eventUnifyId(String event) {
         return event.replaceFirst("\\\"id\\\"\\:\\\"0x[0-9A-Fa-f]+\\\"", "\"id\":\"0x1234\""); //$NON-NLS-1$ //$NON-NLS-2$
     }
@@ -89,7 +95,7 @@ public class LoggerTest {
                 }
             } else {
                 if (secondLine) {
-                    fMessages.add(eventUnifyId(eventWithNoTs(sb.toString())));
+                    fMessages.add(eventUnifyPid(eventUnifyId(eventWithNoTs(sb.toString()))));
                     sb = new StringBuilder();
                     secondLine = false;
                 } else {
@@ -133,6 +139,35 @@ public class LoggerTest {
         assertEquals("INFO: {\"ts\":0.000,\"ph\":\"E\",\"tid\":1,\"pid\":1}", fLog.getMessages().get(1)); //$NON-NLS-1$
     }
 
+    /**
+     * Test the process ID is the one of the JVM, not the thread ID
+     *
+     * @throws InterruptedException
+     *             won't happen
+     */
+    @Test
+    public void testProcessId() throws InterruptedException {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        long pid = Long.parseLong(name.substring(0, name.indexOf('@')));
+        assertEquals(pid, LogUtils.getProcessId());
+        List<String> messages = new ArrayList<>();
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new StreamHandler() {
+            @Override
+            public synchronized void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+        });
+        Thread thread = new Thread(() -> LogUtils.traceInstant(logger, Level.INFO, "other")); //$NON-NLS-1$
+        thread.start();
+        thread.join();
+        LogUtils.traceInstant(logger, Level.INFO, "this"); //$NON-NLS-1$
+        assertEquals(2, messages.size());
+        assertEquals("{\"ts\":0.000,\"ph\":\"i\",\"tid\":" + thread.getId() + ",\"pid\":" + pid + ",\"name\":\"other\"}", eventWithNoTs(messages.get(0))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertEquals("{\"ts\":0.000,\"ph\":\"i\",\"tid\":" + Thread.currentThread().getId() + ",\"pid\":" + pid + ",\"name\":\"this\"}", eventWithNoTs(messages.get(1))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
     /**
      * Test nesting
      */
@@ -121,7 +121,7 @@ public class LoggerWithHandlerTest {
             for (int i = 0; i < 10; i++) {
                 List<String> allLines = Files.readAllLines(Paths.get(fTempFile.getAbsolutePath()));
                 filledLines = allLines.stream().filter(Objects::nonNull).collect(Collectors.toList());
-                if (filledLines.size() >= 2) {
+                if (filledLines.size() >= 4) {
                     break;
                 }
                 try {
@@ -131,11 +131,15 @@ public class LoggerWithHandlerTest {
                 }
             }
             assertNotNull(filledLines);
-            assertEquals(2, filledLines.size());
-            Pattern pattern = Pattern.compile("\\{.*B.*world.*\\}"); //$NON-NLS-1$
+            assertEquals(4, filledLines.size());
+            Pattern pattern = Pattern.compile("\\{.*\"ph\":\"M\".*\"name\":\"process_name\".*\\}"); //$NON-NLS-1$
             assertTrue(pattern.matcher(filledLines.get(0)).matches());
-            pattern = Pattern.compile("\\{.*E.*\\}"); //$NON-NLS-1$
+            pattern = Pattern.compile("\\{.*\"ph\":\"M\".*\"name\":\"thread_name\",\"args\":\\{\"name\":\"" + Thread.currentThread().getName() + "\"\\}\\}"); //$NON-NLS-1$ //$NON-NLS-2$
             assertTrue(pattern.matcher(filledLines.get(1)).matches());
+            pattern = Pattern.compile("\\{.*B.*world.*\\}"); //$NON-NLS-1$
+            assertTrue(pattern.matcher(filledLines.get(2)).matches());
+            pattern = Pattern.compile("\\{.*E.*\\}"); //$NON-NLS-1$
+            assertTrue(pattern.matcher(filledLines.get(3)).matches());
         } catch (IOException e) {
             fail(e.getMessage());
         }
@@ -180,7 +184,7 @@ public class LoggerWithHandlerTest {
         try {
             for (int i = 0; i < 10; i++) {
                 allLines = Files.readAllLines(Paths.get(fTempFile.getAbsolutePath()));
-                if (allLines.size() >= 2) {
+                if (allLines.size() >= 4) {
                     break;
                 }
                 try {
@@ -190,11 +194,15 @@ public class LoggerWithHandlerTest {
                 }
             }
             assertNotNull(allLines);
-            assertTrue(allLines.size() == 2);
-            Pattern pattern = Pattern.compile("\\{.*B.*this should be logged.*\\}"); //$NON-NLS-1$
+            assertTrue(allLines.size() == 4);
+            Pattern pattern = Pattern.compile("\\{.*M.*process_name.*\\}"); //$NON-NLS-1$
             assertTrue(pattern.matcher(allLines.get(0)).matches());
-            pattern = Pattern.compile("\\{.*E.*\\}"); //$NON-NLS-1$
+            pattern = Pattern.compile("\\{.*M.*thread_name.*\\}"); //$NON-NLS-1$
             assertTrue(pattern.matcher(allLines.get(1)).matches());
+            pattern = Pattern.compile("\\{.*B.*this should be logged.*\\}"); //$NON-NLS-1$
+            assertTrue(pattern.matcher(allLines.get(2)).matches());
+            pattern = Pattern.compile("\\{.*E.*\\}"); //$NON-NLS-1$
+            assertTrue(pattern.matcher(allLines.get(3)).matches());
         } catch (IOException e) {
             fail(e.getMessage());
         }
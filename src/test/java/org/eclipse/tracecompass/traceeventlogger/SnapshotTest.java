@@ -29,16 +29,33 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.After;
 import org.junit.Before;
@@ -126,16 +143,52 @@ public class SnapshotTest {
         logger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"e\"", 50000000000L, 'e', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
         logger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"f\"", 60000000000L, 'f', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
         logger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"g\"", 70000000000L, 'E', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
-        File input = new File("request-10000000.json"); //$NON-NLS-1$
+        // "a" is before the slow scope
+        File input = new File("request-20000000.json"); //$NON-NLS-1$
         assertTrue(input.exists());
-        assertEquals(35, input.length());
+        assertEquals(30, input.length());
         try (FileReader fr = new FileReader(input)) {
             char[] data = new char[(int) input.length()];
             fr.read(data);
-            assertEquals("[\"a\",\n" + "\"b\",\n" + "\"c\",\n" + "\"d\",\n" + "\"e\",\n" + "\"f\",\n" + "\"g\"]", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+            assertEquals("[\"b\",\n" + "\"c\",\n" + "\"d\",\n" + "\"e\",\n" + "\"f\",\n" + "\"g\"]", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
                     String.valueOf(data));
         }
+        input.delete();
+    }
+
+    /**
+     * Test a snapshot of real events names the process and the thread
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void slowTestMetadata() throws IOException {
+        Logger logger = this.fLogger;
+        fStreamHandler.fAsynchronousDrain = false;
+        long start = System.currentTimeMillis();
+        File input = null;
+        try (LogUtils.ScopeLog log = new LogUtils.ScopeLog(logger, Level.FINE, "slow")) { //$NON-NLS-1$
+            try {
+                Thread.sleep(600);
+            } catch (InterruptedException e) {
+                fail(e.getMessage());
+            }
+        }
+        for (File candidate : new File(".").listFiles((dir, name) -> name.startsWith("request-") && name.endsWith(".json"))) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            String name = candidate.getName();
+            // the file is named after the first timestamp, in microseconds
+            if (Long.parseLong(name.substring(8, name.length() - 5)) >= (start - 1000) * 1000) {
+                input = candidate;
+            }
+        }
+        assertNotNull(input);
         input.deleteOnExit();
+        String content = new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content, content.contains("\"ph\":\"M\",\"tid\":" + Thread.currentThread().getId())); //$NON-NLS-1$
+        assertTrue(content, content.contains("\"name\":\"thread_name\",\"args\":{\"name\":\"" + Thread.currentThread().getName() + "\"}")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertTrue(content, content.contains("\"name\":\"process_name\"")); //$NON-NLS-1$
+        assertTrue(content, content.contains("\"name\":\"slow\"")); //$NON-NLS-1$
     }
 
     /**
@@ -149,6 +202,8 @@ public class SnapshotTest {
         Logger logger = this.fLogger;
         fStreamHandler.fAsynchronousDrain = true;
         assertNotNull(logger);
+        File input = new File("request-20000000.json"); //$NON-NLS-1$
+        input.delete();
         logger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"a\"", 10000000000L, 'a', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
         logger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"b\"", 20000000000L, 'B', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
         logger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"c\"", 30000000000L, 'c', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
@@ -159,7 +214,6 @@ public class SnapshotTest {
         for (int i = 0; i < 100; i++) {
             fStreamHandler.flush();
             Thread.sleep(100);
-            File input = new File("request-10000000.json"); //$NON-NLS-1$
             if (input.exists()) {
                 input.deleteOnExit();
                 return;
@@ -169,6 +223,781 @@ public class SnapshotTest {
         fail("Timeout!"); //$NON-NLS-1$
     }
 
+    /**
+     * Test an end without a begin is ignored
+     */
+    @Test
+    public void unbalancedTest() {
+        Logger logger = this.fLogger;
+        fStreamHandler.fAsynchronousDrain = false;
+        logger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"a\"", 10000003000L, 'E', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
+        logger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"b\"", 20000000000L, 'B', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
+        logger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"c\"", 30000000000L, 'E', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
+        logger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"d\"", 40000000000L, 'E', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
+        File input = new File("request-20000000.json"); //$NON-NLS-1$
+        assertTrue(input.exists());
+        input.deleteOnExit();
+    }
+
+    /**
+     * Test the oldest events are overwritten when there are too many
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testOverwriteEvents() throws IOException {
+        assertEquals("[\"4\",\n\"5\",\n\"6\",\n\"e\"]", snapshot("maxEvents=4", "request-4000001.json")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    /**
+     * Test the oldest events are overwritten when they take too much memory,
+     * each event here takes 21 bytes
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testOverwriteBytes() throws IOException {
+        assertEquals("[\"5\",\n\"6\",\n\"e\"]", snapshot("maxBytes=63", "request-5000001.json")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    /**
+     * Test the events older than the maximum age are not written
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testMaxAge() throws IOException {
+        assertEquals("[\"5\",\n\"6\",\n\"e\"]", snapshot("maxAge=15500", "request-5000001.json")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    /**
+     * Test the memory accounting published by the bean
+     *
+     * @throws Exception
+     *             won't happen
+     */
+    @Test
+    public void testAccounting() throws Exception {
+        SnapshotHandler handler = ruleHandler("maxEvents=4", "maxBytes=1000", "maxAge=2500"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> names = mbs.queryNames(new ObjectName("org.eclipse.tracecompass.log:type=SnapshotHandler,id=" + handler.getId() + ",*"), null); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(1, names.size());
+        ObjectName name = names.iterator().next();
+        assertEquals(0L, handler.getAllocatedBytes());
+        for (int i = 1; i <= 6; i++) {
+            // 21 bytes each
+            publish(handler, i * 1000000000L, 'i', "\"" + i + '"'); //$NON-NLS-1$
+        }
+        char[] large = new char[1000];
+        Arrays.fill(large, 'x');
+        publish(handler, 7000000000L, 'i', new String(large));
+        // arena and 4 slots
+        assertEquals(1080L, handler.getAllocatedBytes());
+        // the 4 last events, the ones after 3.5 seconds
+        assertEquals(3L, mbs.getAttribute(name, "RetainedEvents")); //$NON-NLS-1$
+        assertEquals(63L, handler.getUsedBytes());
+        assertEquals(2000000000L, handler.getRetainedTime());
+        assertEquals(1L, handler.getDroppedEvents());
+        assertEquals(0L, handler.getSnapshotCount());
+        handler.close();
+        assertFalse(mbs.isRegistered(name));
+    }
+
+    /**
+     * Test the events overwritten in the ring are still written from the
+     * compressed history
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testCompressed() throws IOException {
+        SnapshotHandler handler = ruleHandler("maxEvents=4", "maxCompressedBytes=100000", "rules=slow", "rule.slow.threshold=15"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        publish(handler, 1000L, 'B', "\"b\""); //$NON-NLS-1$
+        for (int i = 1; i <= 6; i++) {
+            publish(handler, i * 1000000000L + 1000L, 'i', "\"" + i + '"'); //$NON-NLS-1$
+        }
+        publish(handler, 20000000000L, 'E', "\"e\""); //$NON-NLS-1$
+        // the ring only holds 4 events
+        assertEquals(8L, handler.getRetainedEvents());
+        assertTrue(handler.getAllocatedBytes() > new SnapshotRing(4, handler.getMaxBytes()).allocatedBytes());
+        handler.close();
+        File input = new File("request-1.json"); //$NON-NLS-1$
+        assertTrue(input.exists());
+        input.deleteOnExit();
+        assertEquals("[\"b\",\n\"1\",\n\"2\",\n\"3\",\n\"4\",\n\"5\",\n\"6\",\n\"e\"]", //$NON-NLS-1$
+                new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test a slice only reads the compressed blocks overlapping its window,
+     * and a dump still streams all of them
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testCompressedWindows() throws IOException {
+        SnapshotHandler handler = ruleHandler("maxEvents=4", "maxCompressedBytes=100000", "rules=slow", "rule.slow.threshold=15"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        for (int i = 1; i <= 20; i++) {
+            publish(handler, i * 1000000000L, 'i', "Other", "\"o" + i + '"'); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        publish(handler, 30000000000L, 'B', "\"b\""); //$NON-NLS-1$
+        publish(handler, 40000000000L, 'i', "\"i\""); //$NON-NLS-1$
+        publish(handler, 50000000000L, 'E', "\"e\""); //$NON-NLS-1$
+        File input = new File("request-30000000.json"); //$NON-NLS-1$
+        assertTrue(input.exists());
+        input.deleteOnExit();
+        assertEquals("[\"b\",\n\"i\",\n\"e\"]", new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8)); //$NON-NLS-1$
+        String dump = handler.dump();
+        handler.close();
+        File all = new File(dump);
+        all.deleteOnExit();
+        String content = new String(Files.readAllBytes(all.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content, content.startsWith("[\"o1\",\n\"o2\",")); //$NON-NLS-1$
+        assertTrue(content, content.endsWith("\"o20\",\n\"b\",\n\"i\",\n\"e\"]")); //$NON-NLS-1$
+
+        // the blocks outside the range are not decompressed
+        SnapshotRing ring = new SnapshotRing(4, 1 << 16);
+        SnapshotBlocks blocks = new SnapshotBlocks(100000);
+        for (int i = 0; i < 12; i++) {
+            ring.add(i * 10L, Long.valueOf(1), 'i', new byte[] { (byte) i });
+            if (i % 3 == 2) {
+                blocks.seal(ring, 0);
+            }
+        }
+        int[] accepted = { 0 };
+        List<Long> visited = new ArrayList<>();
+        blocks.forEach(0, ring.next(), 40, 60, new SnapshotBlocks.Visitor() {
+            @Override
+            public boolean accept(long firstSeq, long endSeq) {
+                accepted[0]++;
+                return true;
+            }
+
+            @Override
+            public void visit(SnapshotRing.Entry entry, byte[] message) {
+                visited.add(entry.fTs);
+            }
+        });
+        blocks.close();
+        assertEquals(2, accepted[0]);
+        assertEquals(Arrays.asList(40L, 50L, 60L), visited);
+    }
+
+    /**
+     * Test dumping the events in memory on demand
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testDump() throws IOException {
+        SnapshotHandler handler = ruleHandler();
+        assertEquals("", handler.dump()); //$NON-NLS-1$
+        publish(handler, 3000000L, 'B', "\"b\""); //$NON-NLS-1$
+        publish(handler, 4000000L, 'i', "\"i\""); //$NON-NLS-1$
+        File input = new File(handler.dump());
+        handler.close();
+        assertEquals(0, handler.getPendingSnapshots());
+        assertTrue(handler.getLastDrainTime() > 0);
+        assertEquals(handler.getLastDrainTime(), handler.getMaxDrainTime());
+        assertEquals(handler.getLastDrainTime(), handler.getTotalDrainTime());
+        assertEquals("request-3000.json", input.getName()); //$NON-NLS-1$
+        input.deleteOnExit();
+        assertEquals("[\"b\",\n\"i\"]", new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8)); //$NON-NLS-1$
+    }
+
+    /**
+     * Test dumping the events in memory by touching a file
+     *
+     * @throws Exception
+     *             won't happen
+     */
+    @Test
+    public void testTriggerFile() throws Exception {
+        File trigger = new File("snapshot-trigger"); //$NON-NLS-1$
+        trigger.delete();
+        SnapshotHandler handler = ruleHandler("triggerFile=" + trigger.getName()); //$NON-NLS-1$
+        publish(handler, 5000000L, 'B', "\"b\""); //$NON-NLS-1$
+        File input = new File("request-5000.json"); //$NON-NLS-1$
+        assertTrue(trigger.createNewFile());
+        for (int i = 0; i < 100 && trigger.exists(); i++) {
+            Thread.sleep(50);
+        }
+        handler.close();
+        assertFalse(trigger.exists());
+        assertTrue(input.exists());
+        input.deleteOnExit();
+        assertEquals("[\"b\"]", new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8)); //$NON-NLS-1$
+    }
+
+    /**
+     * Test the snapshot only mode does not write the events to the log file
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testSnapshotOnly() throws IOException {
+        for (String snapshotOnly : new String[] { "false", "true" }) { //$NON-NLS-1$ //$NON-NLS-2$
+            File log = new File("snapshot-only.log"); //$NON-NLS-1$
+            // the file handler properties are read with the class name after Java 8
+            LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(("java.util.logging.FileHandler.pattern = " + log.getName() + '\n' //$NON-NLS-1$
+                    + SnapshotHandler.class.getName() + ".pattern = " + log.getName() + '\n' //$NON-NLS-1$
+                    + SnapshotHandler.class.getName() + ".snapshotOnly = " + snapshotOnly).getBytes(StandardCharsets.UTF_8))); //$NON-NLS-1$
+            SnapshotHandler handler = new SnapshotHandler(1000);
+            handler.publish(new LogUtils.TraceEventLogRecord(Level.FINE, () -> "\"i\"", 1000L, 'i', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
+            handler.close();
+            String content = new String(Files.readAllBytes(log.toPath()), StandardCharsets.UTF_8);
+            log.delete();
+            assertEquals(!Boolean.parseBoolean(snapshotOnly), content.contains("<record>")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Test instant events trigger a snapshot of the open scopes of their
+     * thread, by name or by argument
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testInstantRule() throws IOException {
+        SnapshotHandler handler = ruleHandler("rules=named, error", "rule.named.type=instant", "rule.named.label=crash", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                "rule.error.type=instant", "rule.error.arg=exception", "triggerInterval=0"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        publish(handler, 1000L, 'i', "{\"name\":\"before\"}"); //$NON-NLS-1$
+        publish(handler, 2000L, 'B', "{\"name\":\"request\"}"); //$NON-NLS-1$
+        publish(handler, 3000L, 'i', "{\"name\":\"fine\",\"args\":{\"value\":\"1\"}}"); //$NON-NLS-1$
+        assertEquals(0L, handler.getSnapshotCount());
+        publish(handler, 4000L, 'i', "{\"name\":\"failed\",\"args\":{\"exception\":\"boom\"}}"); //$NON-NLS-1$
+        assertEquals(1L, handler.getSnapshotCount());
+        publish(handler, 5000L, 'E', "{}"); //$NON-NLS-1$
+        publish(handler, 6000L, 'i', "{\"name\":\"crash\"}"); //$NON-NLS-1$
+        assertEquals(2L, handler.getSnapshotCount());
+        handler.close();
+        File input = new File("request-2.json"); //$NON-NLS-1$
+        assertTrue(input.exists());
+        input.deleteOnExit();
+        assertEquals("[{\"name\":\"request\"},\n{\"name\":\"fine\",\"args\":{\"value\":\"1\"}},\n{\"name\":\"failed\",\"args\":{\"exception\":\"boom\"}}]", //$NON-NLS-1$
+                new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8));
+        // no open scope, all the events of the thread
+        input = new File("request-1.json"); //$NON-NLS-1$
+        assertTrue(input.exists());
+        input.deleteOnExit();
+        assertEquals(6, new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8).split(",\n").length); //$NON-NLS-1$
+    }
+
+    /**
+     * Test warnings trigger snapshots, without duplicates and not too often
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testLevelTrigger() throws IOException {
+        SnapshotHandler handler = ruleHandler("triggerLevel=WARNING", "triggerInterval=0"); //$NON-NLS-1$ //$NON-NLS-2$
+        Long tid = Platform.threadId(Thread.currentThread());
+        handler.publish(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"b\"", 7000000L, 'B', tid)); //$NON-NLS-1$
+        handler.publish(new LogRecord(Level.INFO, "fine")); //$NON-NLS-1$
+        assertEquals(0L, handler.getSnapshotCount());
+        handler.publish(new LogRecord(Level.WARNING, "boom")); //$NON-NLS-1$
+        assertEquals(1L, handler.getSnapshotCount());
+        handler.publish(new LogRecord(Level.WARNING, "boom")); //$NON-NLS-1$
+        assertEquals(1L, handler.getSnapshotCount());
+        handler.publish(new LogRecord(Level.SEVERE, "bang")); //$NON-NLS-1$
+        assertEquals(2L, handler.getSnapshotCount());
+        handler.close();
+        File input = new File("request-7000.json"); //$NON-NLS-1$
+        assertTrue(input.exists());
+        input.deleteOnExit();
+        assertTrue(new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8).endsWith("\"b\"]")); //$NON-NLS-1$
+
+        handler = ruleHandler("triggerLevel=WARNING", "triggerInterval=60000"); //$NON-NLS-1$ //$NON-NLS-2$
+        handler.publish(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"b\"", 7000000L, 'B', tid)); //$NON-NLS-1$
+        handler.publish(new LogRecord(Level.WARNING, "boom")); //$NON-NLS-1$
+        handler.publish(new LogRecord(Level.SEVERE, "bang")); //$NON-NLS-1$
+        assertEquals(1L, handler.getSnapshotCount());
+        handler.close();
+    }
+
+    /**
+     * Test the threads with open scopes are bounded, and unbalanced scopes
+     * are tolerated
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testStacks() throws IOException {
+        SnapshotHandler handler = ruleHandler("maxStacks=1", "rules=slow", "rule.slow.threshold=1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        // no start
+        publish(handler, 1000L, 'E', "t1", "\"e\""); //$NON-NLS-1$ //$NON-NLS-2$
+        publish(handler, 8000000L, 'B', "t1", "\"b1\""); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(1, handler.getLiveStacks());
+        publish(handler, 9000000L, 'B', "t2", "\"b2\""); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(1, handler.getLiveStacks());
+        assertEquals(1L, handler.getEvictedStacks());
+        // evicted
+        publish(handler, 5000000000L, 'E', "t1", "\"e1\""); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(0L, handler.getSnapshotCount());
+        publish(handler, 5000000000L, 'E', "t2", "\"e2\""); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(1L, handler.getSnapshotCount());
+        assertEquals(0, handler.getLiveStacks());
+        // deeper than the stacks, still balanced
+        int depth = 2000;
+        for (int i = 0; i < depth; i++) {
+            publish(handler, 6000000000L + i, 'B', "t1", "\"b\""); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        for (int i = 0; i < depth; i++) {
+            publish(handler, 9000000000L + i, 'E', "t1", "\"e\""); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        assertEquals(2L, handler.getSnapshotCount());
+        assertEquals(0, handler.getLiveStacks());
+        handler.close();
+        for (String fileName : new String[] { "request-9000.json", "request-6000000.json" }) { //$NON-NLS-1$ //$NON-NLS-2$
+            File input = new File(fileName);
+            assertTrue(fileName, input.exists());
+            input.deleteOnExit();
+        }
+    }
+
+    /**
+     * Test the stacks of many threads coming and going
+     */
+    @Test
+    public void testManyStacks() {
+        ScopeStacks stacks = new ScopeStacks(100000);
+        Map<Long, Integer> depths = new HashMap<>();
+        Random random = new Random(42);
+        ScopeStacks.ScopeEnd end = new ScopeStacks.ScopeEnd();
+        for (int i = 0; i < 200000; i++) {
+            long tid = random.nextInt(5000);
+            int depth = depths.getOrDefault(tid, 0);
+            if (random.nextBoolean()) {
+                stacks.push(1, tid, tid, null);
+                depths.put(tid, depth + 1);
+            } else {
+                assertEquals(depth > 0, stacks.pop(1, tid, end));
+                if (depth > 0) {
+                    assertEquals(tid, end.fStart);
+                    assertEquals(depth == 1, end.fOutermost);
+                }
+                if (depth > 1) {
+                    depths.put(tid, depth - 1);
+                } else {
+                    depths.remove(tid);
+                }
+            }
+        }
+        assertEquals(depths.size(), stacks.size());
+        assertEquals(0L, stacks.evicted());
+        stacks = new ScopeStacks(16);
+        for (long tid = 0; tid < 1000; tid++) {
+            stacks.push(1, tid, tid, null);
+        }
+        assertTrue(stacks.size() <= 16);
+        assertEquals(1000 - stacks.size(), stacks.evicted());
+        assertEquals(999L, stacks.outermost(1, 999));
+    }
+
+    private String snapshot(String config, String fileName) throws IOException {
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(
+                (SnapshotHandler.class.getName() + '.' + config).getBytes(StandardCharsets.UTF_8)));
+        SnapshotHandler handler = new SnapshotHandler(0.5);
+        handler.fAsynchronousDrain = false;
+        handler.publish(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"b\"", 1000L, 'B', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
+        for (int i = 1; i <= 6; i++) {
+            String message = "\"" + i + '"'; //$NON-NLS-1$
+            handler.publish(new LogUtils.TraceEventLogRecord(Level.INFO, () -> message, i * 1000000000L + 1000L, 'i', "Bla")); //$NON-NLS-1$
+        }
+        handler.publish(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"e\"", 20000000000L, 'E', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
+        handler.close();
+        File input = new File(fileName);
+        assertTrue(input.exists());
+        input.deleteOnExit();
+        return new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test the triggers close to each other are merged in one snapshot
+     *
+     * @throws Exception
+     *             won't happen
+     */
+    @Test
+    public void testCoalesce() throws Exception {
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(
+                (SnapshotHandler.class.getName() + ".minDrainInterval=500").getBytes(StandardCharsets.UTF_8))); //$NON-NLS-1$
+        SnapshotHandler handler = new SnapshotHandler(0.5);
+        File first = new File("request-3000007.json"); //$NON-NLS-1$
+        File second = new File("request-6000007.json"); //$NON-NLS-1$
+        first.deleteOnExit();
+        second.deleteOnExit();
+        for (int i = 1; i <= 3; i++) {
+            String begin = "\"b" + i + '"'; //$NON-NLS-1$
+            String end = "\"e" + i + '"'; //$NON-NLS-1$
+            handler.publish(new LogUtils.TraceEventLogRecord(Level.INFO, () -> begin, i * 3000000000L + 7000L, 'B', "Bla")); //$NON-NLS-1$
+            handler.publish(new LogUtils.TraceEventLogRecord(Level.INFO, () -> end, i * 3000000000L + 2000000000L, 'E', "Bla")); //$NON-NLS-1$
+            // the first snapshot is written right away, the next ones wait
+            for (int j = 0; i == 1 && j < 100 && !first.exists(); j++) {
+                Thread.sleep(10);
+            }
+        }
+        for (int i = 0; i < 100 && !second.exists(); i++) {
+            Thread.sleep(100);
+        }
+        handler.close();
+        assertTrue(first.exists());
+        assertTrue(second.exists());
+        assertFalse(new File("request-9000007.json").exists()); //$NON-NLS-1$
+        String content = new String(Files.readAllBytes(second.toPath()), StandardCharsets.UTF_8);
+        assertEquals("[\"b2\",\n\"e2\",\n\"b3\",\n\"e3\"]", content); //$NON-NLS-1$
+    }
+
+    /**
+     * Test a rule on the label of a scope
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testRuleLabel() throws IOException {
+        SnapshotHandler handler = ruleHandler("rules=q", "rule.q.label=query", "rule.q.threshold=1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        File input = new File("request-103000000.json"); //$NON-NLS-1$
+        publish(handler, 100000000000L, 'B', "{\"name\":\"other\"}"); //$NON-NLS-1$
+        publish(handler, 102000000000L, 'E', "{}"); //$NON-NLS-1$
+        assertFalse(input.exists());
+        publish(handler, 103000000000L, 'B', "{\"name\":\"query\"}"); //$NON-NLS-1$
+        publish(handler, 105000000000L, 'E', "{}"); //$NON-NLS-1$
+        handler.close();
+        assertTrue(input.exists());
+        input.deleteOnExit();
+    }
+
+    /**
+     * Test a rule on nested scopes
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testRuleNested() throws IOException {
+        SnapshotHandler handler = ruleHandler("rules=n", "rule.n.label=inner", "rule.n.threshold=1", "rule.n.nested=true"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        File input = new File("request-201000000.json"); //$NON-NLS-1$
+        publish(handler, 200000000000L, 'B', "{\"name\":\"outer\"}"); //$NON-NLS-1$
+        publish(handler, 201000000000L, 'B', "{\"name\":\"inner\"}"); //$NON-NLS-1$
+        publish(handler, 203000000000L, 'E', "{}"); //$NON-NLS-1$
+        assertTrue(input.exists());
+        input.deleteOnExit();
+        publish(handler, 204000000000L, 'E', "{}"); //$NON-NLS-1$
+        handler.close();
+    }
+
+    /**
+     * Test a rule on the rolling percentile of a label
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testRulePercentile() throws IOException {
+        SnapshotHandler handler = ruleHandler("rules=p", "rule.p.p99Factor=5"); //$NON-NLS-1$ //$NON-NLS-2$
+        long ts = 300000000000L;
+        for (int i = 0; i < 200; i++) {
+            publish(handler, ts, 'B', "{\"name\":\"work\"}"); //$NON-NLS-1$
+            ts += 1000000L + i % 10;
+            publish(handler, ts, 'E', "{}"); //$NON-NLS-1$
+        }
+        File input = new File("request-" + ts / 1000 + ".json"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertFalse(input.exists());
+        publish(handler, ts, 'B', "{\"name\":\"work\"}"); //$NON-NLS-1$
+        publish(handler, ts + 100000000L, 'E', "{}"); //$NON-NLS-1$
+        handler.close();
+        assertTrue(input.exists());
+        input.deleteOnExit();
+    }
+
+    /**
+     * Test a rule on async events
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testRuleAsync() throws IOException {
+        SnapshotHandler handler = ruleHandler("rules=a", "rule.a.type=async", "rule.a.threshold=1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        File input = new File("request-400000000.json"); //$NON-NLS-1$
+        publish(handler, 400000000000L, 'b', "{\"name\":\"call\",\"id\":\"0x1\"}"); //$NON-NLS-1$
+        publish(handler, 400500000000L, 'b', "{\"name\":\"call\",\"id\":\"0x2\"}"); //$NON-NLS-1$
+        publish(handler, 401000000000L, 'e', "{\"name\":\"call\",\"id\":\"0x2\"}"); //$NON-NLS-1$
+        assertFalse(input.exists());
+        publish(handler, 402000000000L, 'e', "{\"name\":\"call\",\"id\":\"0x1\"}"); //$NON-NLS-1$
+        handler.close();
+        assertTrue(input.exists());
+        input.deleteOnExit();
+    }
+
+    /**
+     * Test a rule on a flow
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testRuleFlow() throws IOException {
+        SnapshotHandler handler = ruleHandler("rules=f", "rule.f.type=flow", "rule.f.label=request", "rule.f.threshold=1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        File input = new File("request-500000000.json"); //$NON-NLS-1$
+        publish(handler, 500000000000L, 's', "{\"name\":\"request\",\"id\":\"0x3\"}"); //$NON-NLS-1$
+        handler.publish(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "{\"name\":\"step\",\"id\":\"0x3\"}", 502000000000L, 't', "Other")); //$NON-NLS-1$ //$NON-NLS-2$
+        handler.close();
+        assertTrue(input.exists());
+        input.deleteOnExit();
+    }
+
+    /**
+     * Test a snapshot only has the slow thread and the threads linked to it
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testSlice() throws IOException {
+        assertEquals("[{\"b\":0},\n{\"id\":\"0x9\"},\n{\"b\":1},\n{\"id\":\"0x9\"},\n{\"e\":1},\n{\"e\":0}]", //$NON-NLS-1$
+                linkedSnapshot("slice=true", "request-600000000.json")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Test a snapshot of all the events
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testNoSlice() throws IOException {
+        assertEquals("[{\"b\":0},\n{\"id\":\"0x9\"},\n{\"noise\":1},\n{\"b\":1},\n{\"id\":\"0x9\"},\n{\"noise\":2},\n{\"e\":1},\n{\"e\":0}]", //$NON-NLS-1$
+                linkedSnapshot("slice=false", "request-600000000.json")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Test the events recorded after a trigger are in the snapshot
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testPostTriggerEvents() throws IOException {
+        SnapshotHandler handler = ruleHandler("rules=slow", "rule.slow.threshold=1", "postTriggerEvents=2"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        File input = new File("request-700000000.json"); //$NON-NLS-1$
+        publish(handler, 700000000000L, 'B', "{\"b\":0}"); //$NON-NLS-1$
+        publish(handler, 702000000000L, 'E', "{\"e\":0}"); //$NON-NLS-1$
+        assertFalse(input.exists());
+        publish(handler, 702100000000L, 'i', "Other", "{\"after\":1}"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertFalse(input.exists());
+        publish(handler, 702200000000L, 'i', "Other", "{\"after\":2}"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertTrue(input.exists());
+        publish(handler, 702300000000L, 'i', "Other", "{\"after\":3}"); //$NON-NLS-1$ //$NON-NLS-2$
+        handler.close();
+        String content = new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8);
+        input.delete();
+        assertEquals("[{\"b\":0},\n{\"e\":0},\n{\"after\":1},\n{\"after\":2}]", content); //$NON-NLS-1$
+    }
+
+    /**
+     * Test the time recorded after a trigger is in the snapshot
+     *
+     * @throws Exception
+     *             won't happen
+     */
+    @Test
+    public void testPostTriggerTime() throws Exception {
+        SnapshotHandler handler = ruleHandler("rules=slow", "rule.slow.threshold=1", "postTriggerTime=200"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        handler.fAsynchronousDrain = true;
+        File input = new File("request-800000000.json"); //$NON-NLS-1$
+        publish(handler, 800000000000L, 'B', "{\"b\":0}"); //$NON-NLS-1$
+        publish(handler, 802000000000L, 'E', "{\"e\":0}"); //$NON-NLS-1$
+        publish(handler, 802100000000L, 'i', "Other", "{\"after\":1}"); //$NON-NLS-1$ //$NON-NLS-2$
+        // too late
+        publish(handler, 802300000000L, 'i', "Other", "{\"after\":2}"); //$NON-NLS-1$ //$NON-NLS-2$
+        for (int i = 0; i < 100 && !input.exists(); i++) {
+            Thread.sleep(100);
+        }
+        handler.close();
+        String content = new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8);
+        input.delete();
+        assertEquals("[{\"b\":0},\n{\"e\":0},\n{\"after\":1}]", content); //$NON-NLS-1$
+    }
+
+    /**
+     * Test the triggers arriving while a snapshot waits for its post-trigger
+     * window are still merged, not written as soon as they are sealed
+     *
+     * @throws Exception
+     *             won't happen
+     */
+    @Test
+    public void testPostTriggerCoalesce() throws Exception {
+        SnapshotHandler handler = ruleHandler("rules=slow", "rule.slow.threshold=1", "postTriggerTime=100", "minDrainInterval=500"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        handler.fAsynchronousDrain = true;
+        File first = new File("request-100000000.json"); //$NON-NLS-1$
+        File second = new File("request-110000000.json"); //$NON-NLS-1$
+        File third = new File("request-120000000.json"); //$NON-NLS-1$
+        first.deleteOnExit();
+        second.deleteOnExit();
+        third.deleteOnExit();
+        publish(handler, 100000000000L, 'B', "A", "{\"b\":\"a\"}"); //$NON-NLS-1$ //$NON-NLS-2$
+        publish(handler, 102000000000L, 'E', "A", "{\"e\":\"a\"}"); //$NON-NLS-1$ //$NON-NLS-2$
+        Thread.sleep(50);
+        publish(handler, 110000000000L, 'B', "B", "{\"b\":\"b\"}"); //$NON-NLS-1$ //$NON-NLS-2$
+        publish(handler, 112000000000L, 'E', "B", "{\"e\":\"b\"}"); //$NON-NLS-1$ //$NON-NLS-2$
+        for (int i = 0; i < 100 && !first.exists(); i++) {
+            Thread.sleep(5);
+        }
+        assertTrue(first.exists());
+        // while the second trigger still waits for its window
+        publish(handler, 120000000000L, 'B', "C", "{\"b\":\"c\"}"); //$NON-NLS-1$ //$NON-NLS-2$
+        publish(handler, 122000000000L, 'E', "C", "{\"e\":\"c\"}"); //$NON-NLS-1$ //$NON-NLS-2$
+        for (int i = 0; i < 100 && !second.exists(); i++) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(200);
+        handler.close();
+        assertTrue(second.exists());
+        assertFalse(third.exists());
+        String content = new String(Files.readAllBytes(second.toPath()), StandardCharsets.UTF_8);
+        assertEquals("[{\"b\":\"b\"},\n{\"e\":\"b\"},\n{\"b\":\"c\"},\n{\"e\":\"c\"}]", content); //$NON-NLS-1$
+    }
+
+    private static String linkedSnapshot(String config, String fileName) throws IOException {
+        SnapshotHandler handler = ruleHandler("rules=slow", "rule.slow.threshold=1.5", config); //$NON-NLS-1$ //$NON-NLS-2$
+        publish(handler, 600000000000L, 'B', "Slow", "{\"b\":0}"); //$NON-NLS-1$ //$NON-NLS-2$
+        publish(handler, 600000000000L, 's', "Slow", "{\"id\":\"0x9\"}"); //$NON-NLS-1$ //$NON-NLS-2$
+        publish(handler, 601000000000L, 'i', "Linked", "{\"noise\":1}"); //$NON-NLS-1$ //$NON-NLS-2$
+        publish(handler, 602000000000L, 'B', "Linked", "{\"b\":1}"); //$NON-NLS-1$ //$NON-NLS-2$
+        publish(handler, 602000000000L, 't', "Linked", "{\"id\":\"0x9\"}"); //$NON-NLS-1$ //$NON-NLS-2$
+        publish(handler, 602500000000L, 'i', "Other", "{\"noise\":2}"); //$NON-NLS-1$ //$NON-NLS-2$
+        publish(handler, 603000000000L, 'E', "Linked", "{\"e\":1}"); //$NON-NLS-1$ //$NON-NLS-2$
+        publish(handler, 605000000000L, 'E', "Slow", "{\"e\":0}"); //$NON-NLS-1$ //$NON-NLS-2$
+        handler.close();
+        File input = new File(fileName);
+        assertTrue(input.exists());
+        String content = new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8);
+        input.delete();
+        return content;
+    }
+
+    private static SnapshotHandler ruleHandler(String... config) throws IOException {
+        StringBuilder properties = new StringBuilder();
+        for (String line : config) {
+            properties.append(SnapshotHandler.class.getName()).append('.').append(line).append('\n');
+        }
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(properties.toString().getBytes(StandardCharsets.UTF_8)));
+        // only the rules trigger
+        SnapshotHandler handler = new SnapshotHandler(1000);
+        handler.fAsynchronousDrain = false;
+        return handler;
+    }
+
+    private static void publish(Handler handler, long ts, char phase, String message) {
+        publish(handler, ts, phase, "Bla", message); //$NON-NLS-1$
+    }
+
+    private static void publish(Handler handler, long ts, char phase, String tid, String message) {
+        handler.publish(new LogUtils.TraceEventLogRecord(Level.INFO, () -> message, ts, phase, tid));
+    }
+
+    /**
+     * Test many threads logging at once, every event must be written whole
+     *
+     * @throws Exception
+     *             won't happen
+     */
+    @Test
+    public void testConcurrent() throws Exception {
+        fStreamHandler.fAsynchronousDrain = false;
+        int nbThreads = 4;
+        int nbEvents = 10000;
+        fLogger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"b\"", 30000000000L, 'B', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
+        Thread[] threads = new Thread[nbThreads];
+        for (int t = 0; t < nbThreads; t++) {
+            String tid = "T" + t; //$NON-NLS-1$
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < nbEvents; i++) {
+                    String message = "{\"tid\":\"" + tid + "\",\"i\":" + i + '}'; //$NON-NLS-1$ //$NON-NLS-2$
+                    // the same trace thread, to be in the snapshot
+                    fLogger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> message, 30000000000L + i, 'i', "Bla")); //$NON-NLS-1$
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        fLogger.log(new LogUtils.TraceEventLogRecord(Level.INFO, () -> "\"e\"", 50000000000L, 'E', "Bla")); //$NON-NLS-1$ //$NON-NLS-2$
+        File input = new File("request-30000000.json"); //$NON-NLS-1$
+        assertTrue(input.exists());
+        input.deleteOnExit();
+        List<String> lines = Files.readAllLines(input.toPath(), StandardCharsets.UTF_8);
+        assertEquals(nbThreads * nbEvents + 2, lines.size());
+        int[] next = new int[nbThreads];
+        for (String line : lines.subList(1, lines.size() - 1)) {
+            Matcher matcher = Pattern.compile("^\\{\"tid\":\"T(\\d)\",\"i\":(\\d+)\\},$").matcher(line); //$NON-NLS-1$
+            assertTrue(line, matcher.matches());
+            int thread = Integer.parseInt(matcher.group(1));
+            // in order per thread
+            assertEquals(next[thread]++, Integer.parseInt(matcher.group(2)));
+        }
+    }
+
+    /**
+     * Test writers lapping each other in a tiny ring, an event read back must
+     * never mix the header of one event with the message of another
+     *
+     * @throws Exception
+     *             won't happen
+     */
+    @Test
+    public void testRingLapped() throws Exception {
+        SnapshotRing ring = new SnapshotRing(4, 1 << 16);
+        int nbThreads = 8;
+        int nbEvents = 20000;
+        Thread[] threads = new Thread[nbThreads];
+        for (int t = 0; t < nbThreads; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < nbEvents; i++) {
+                    long ts = (long) thread * nbEvents + i;
+                    // lengths differ, so a torn slot cannot go unnoticed
+                    StringBuilder message = new StringBuilder().append(ts);
+                    for (int j = 0; j < i % 7; j++) {
+                        message.append('.');
+                    }
+                    ring.add(ts, Long.valueOf(thread), 'i', message.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            });
+            threads[t].start();
+        }
+        int read = 0;
+        while (threads[0].isAlive()) {
+            for (SnapshotRing.Entry entry : ring.read(0, ring.next())) {
+                byte[] message = ring.message(entry);
+                if (message != null) {
+                    String text = new String(message, StandardCharsets.UTF_8);
+                    assertEquals(String.valueOf(entry.fTs), text.replace(".", "")); //$NON-NLS-1$ //$NON-NLS-2$
+                    assertEquals(entry.fTs % nbEvents % 7, text.length() - String.valueOf(entry.fTs).length());
+                    read++;
+                }
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(read > 0);
+    }
+
     /**
      * Test disabling the snapshotter
      */
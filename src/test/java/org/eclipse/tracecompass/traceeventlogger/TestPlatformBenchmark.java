@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * Benchmark the {@link Platform} calls of every version compiled in the
+ * multi-release output that the running JDK can load: the Java 8 one, and the
+ * overlays under <code>META-INF/versions</code>, which the class path does
+ * not pick up by itself. Run from a jar, only the version the JDK picked is
+ * benchmarked.
+ */
+public class TestPlatformBenchmark {
+
+    private static final int WARM_UP = 100000;
+    private static final int RUNS = 1000000;
+    private static final String[] CALLS = { "processId", "threadId", "wallClockNanos", "onSpinWait", "loadFence" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    private static final float PROCESS_ID_THRESHOLD = 2.0f;
+
+    private interface Op {
+        long run() throws Throwable;
+    }
+
+    /**
+     * A version of the {@link Platform} class
+     */
+    private static final class Version {
+        private final String fName;
+        private final MethodHandle fProcessId;
+        private final MethodHandle fThreadId;
+        private final MethodHandle fWallClockNanos;
+        private final MethodHandle fOnSpinWait;
+        private final MethodHandle fLoadFence;
+
+        Version(String name, Class<?> platform) throws ReflectiveOperationException {
+            fName = name;
+            fProcessId = find(platform, "processId"); //$NON-NLS-1$
+            fThreadId = find(platform, "threadId", Thread.class); //$NON-NLS-1$
+            fWallClockNanos = find(platform, "wallClockNanos"); //$NON-NLS-1$
+            fOnSpinWait = find(platform, "onSpinWait"); //$NON-NLS-1$
+            fLoadFence = find(platform, "loadFence"); //$NON-NLS-1$
+        }
+
+        private static MethodHandle find(Class<?> platform, String name, Class<?>... parameters) throws ReflectiveOperationException {
+            // package private, and in another class loader for the overlays
+            Method method = platform.getDeclaredMethod(name, parameters);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        }
+
+        long processId() throws Throwable {
+            return (long) fProcessId.invokeExact();
+        }
+
+        long threadId() throws Throwable {
+            return (long) fThreadId.invokeExact(Thread.currentThread());
+        }
+
+        long wallClockNanos() throws Throwable {
+            return (long) fWallClockNanos.invokeExact();
+        }
+
+        Op op(String call) {
+            switch (call) {
+            case "processId": //$NON-NLS-1$
+                return this::processId;
+            case "threadId": //$NON-NLS-1$
+                return this::threadId;
+            case "wallClockNanos": //$NON-NLS-1$
+                return this::wallClockNanos;
+            case "onSpinWait": //$NON-NLS-1$
+                return () -> {
+                    fOnSpinWait.invokeExact();
+                    return 0;
+                };
+            default:
+                return () -> {
+                    fLoadFence.invokeExact();
+                    return 0;
+                };
+            }
+        }
+    }
+
+    /**
+     * Loads the {@link Platform} class of an overlay instead of the one of the
+     * class path
+     */
+    private static final class OverlayLoader extends ClassLoader {
+        private final Path fFile;
+
+        OverlayLoader(Path file) {
+            super(Platform.class.getClassLoader());
+            fFile = file;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(Platform.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> type = findLoadedClass(name);
+                if (type == null) {
+                    try {
+                        byte[] bytes = Files.readAllBytes(fFile);
+                        type = defineClass(name, bytes, 0, bytes.length);
+                    } catch (IOException e) {
+                        throw new ClassNotFoundException(name, e);
+                    }
+                }
+                return type;
+            }
+        }
+    }
+
+    /**
+     * Time the calls of each version, they must give the same results
+     *
+     * @throws Throwable
+     *             won't happen
+     */
+    @Test
+    public void testBench() throws Throwable {
+        List<Version> versions = versions();
+        Version java8 = versions.get(0);
+        List<double[]> times = new ArrayList<>();
+        long[] resolutions = new long[versions.size()];
+        for (int v = 0; v < versions.size(); v++) {
+            Version version = versions.get(v);
+            assertEquals(version.fName, java8.processId(), version.processId());
+            assertEquals(version.fName, java8.threadId(), version.threadId());
+            long delta = Math.abs(java8.wallClockNanos() - version.wallClockNanos());
+            assertTrue(version.fName + " clocks differ by " + delta, delta < 1_000_000_000L); //$NON-NLS-1$
+            double[] time = new double[CALLS.length];
+            for (int c = 0; c < CALLS.length; c++) {
+                time[c] = bench(version.op(CALLS[c]));
+            }
+            times.add(time);
+            resolutions[v] = resolution(version.op("wallClockNanos")); //$NON-NLS-1$
+        }
+
+        StringBuilder header = new StringBuilder("Call"); //$NON-NLS-1$
+        for (Version version : versions) {
+            header.append(',').append(version.fName).append("(ns)"); //$NON-NLS-1$
+        }
+        System.out.println("\nPlatform Benchmark Results on Java " + System.getProperty("java.version") + " (csv):"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        System.out.println(header);
+        for (int c = 0; c < CALLS.length; c++) {
+            StringBuilder line = new StringBuilder(CALLS[c]);
+            for (double[] time : times) {
+                line.append(String.format(",%.2f", time[c])); //$NON-NLS-1$
+            }
+            System.out.println(line);
+        }
+        System.out.println("\nPlatform Benchmark Results (Human-readable):"); //$NON-NLS-1$
+        StringBuilder names = new StringBuilder(String.format("%-24s", "Call")); //$NON-NLS-1$ //$NON-NLS-2$
+        for (Version version : versions) {
+            names.append(String.format("%14s", version.fName + "(ns)")); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        System.out.println(names);
+        for (int c = 0; c < CALLS.length; c++) {
+            StringBuilder line = new StringBuilder(String.format("%-24s", CALLS[c])); //$NON-NLS-1$
+            for (double[] time : times) {
+                line.append(String.format("%14.2f", time[c])); //$NON-NLS-1$
+            }
+            System.out.println(line);
+        }
+        StringBuilder line = new StringBuilder(String.format("%-24s", "wallClockNanos resolution")); //$NON-NLS-1$ //$NON-NLS-2$
+        for (long resolution : resolutions) {
+            line.append(String.format("%14d", resolution)); //$NON-NLS-1$
+        }
+        System.out.println(line);
+
+        for (int v = 1; v < versions.size(); v++) {
+            String name = versions.get(v).fName;
+            float factor = (float) (times.get(0)[0] / times.get(v)[0]);
+            assertTrue(name + " processId expected to be much faster vs Java8! Expected factor: > " + PROCESS_ID_THRESHOLD + "x, Actual: " + factor, //$NON-NLS-1$ //$NON-NLS-2$
+                    factor > PROCESS_ID_THRESHOLD);
+            assertTrue(name + " wall clock expected to be at least as precise as Java8", resolutions[v] <= resolutions[0]); //$NON-NLS-1$
+        }
+    }
+
+    private static List<Version> versions() throws ReflectiveOperationException, IOException, URISyntaxException {
+        List<Version> versions = new ArrayList<>();
+        Path root = Paths.get(Platform.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        if (!Files.isDirectory(root)) {
+            // a multi-release jar, the JDK picked the version
+            versions.add(new Version("Loaded", Platform.class)); //$NON-NLS-1$
+            return versions;
+        }
+        versions.add(new Version("Java8", Platform.class)); //$NON-NLS-1$
+        String spec = System.getProperty("java.specification.version"); //$NON-NLS-1$
+        int runtime = spec.startsWith("1.") ? Integer.parseInt(spec.substring(2)) : Integer.parseInt(spec); //$NON-NLS-1$
+        Path classFile = Paths.get(Platform.class.getName().replace('.', '/') + ".class"); //$NON-NLS-1$
+        TreeMap<Integer, Path> overlays = new TreeMap<>();
+        Path dir = root.resolve("META-INF").resolve("versions"); //$NON-NLS-1$ //$NON-NLS-2$
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> children = Files.list(dir)) {
+                children.forEach(child -> {
+                    String name = child.getFileName().toString();
+                    Path file = child.resolve(classFile);
+                    if (name.matches("\\d+") && Integer.parseInt(name) <= runtime && Files.isRegularFile(file)) { //$NON-NLS-1$
+                        overlays.put(Integer.parseInt(name), file);
+                    }
+                });
+            }
+        }
+        for (Integer release : overlays.keySet()) {
+            Class<?> platform = Class.forName(Platform.class.getName(), true, new OverlayLoader(overlays.get(release)));
+            versions.add(new Version("Java" + release, platform)); //$NON-NLS-1$
+        }
+        return versions;
+    }
+
+    private static double bench(Op op) throws Throwable {
+        long sink = 0;
+        for (int i = 0; i < WARM_UP; i++) {
+            sink += op.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            sink += op.run();
+        }
+        long duration = System.nanoTime() - start;
+        // keep the results alive
+        assertTrue(sink != 42);
+        return (double) duration / RUNS;
+    }
+
+    private static long resolution(Op op) throws Throwable {
+        long smallest = Long.MAX_VALUE;
+        for (int i = 0; i < 100; i++) {
+            long start = op.run();
+            long next = op.run();
+            while (next == start) {
+                next = op.run();
+            }
+            smallest = Math.min(smallest, next - start);
+        }
+        return smallest;
+    }
+}
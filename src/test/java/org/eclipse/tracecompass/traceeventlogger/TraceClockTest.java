@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+/**
+ * Test the trace clocks
+ */
+public class TraceClockTest {
+
+    private static final long MILLI = 1_000_000L;
+
+    /**
+     * Test the precise clock is aligned with the wall clock and monotonic
+     */
+    @Test
+    public void testPrecise() {
+        ITraceClock clock = new PreciseTraceClock();
+        long before = System.currentTimeMillis() * MILLI;
+        long time = clock.currentTimeNanos();
+        long after = (System.currentTimeMillis() + 1) * MILLI;
+        assertTrue(time >= before - 20 * MILLI && time <= after + 20 * MILLI);
+        long last = time;
+        for (int i = 0; i < 10000; i++) {
+            long next = clock.currentTimeNanos();
+            assertTrue(next >= last);
+            last = next;
+        }
+    }
+
+    /**
+     * Test the coarse clock only moves on ticks
+     *
+     * @throws InterruptedException
+     *             won't happen
+     */
+    @Test
+    public void testCoarse() throws InterruptedException {
+        ITraceClock clock = new CoarseTraceClock(50);
+        try {
+            long first = clock.currentTimeNanos();
+            assertTrue(Math.abs(first - System.currentTimeMillis() * MILLI) < 100 * MILLI);
+            for (int i = 0; i < 100; i++) {
+                Thread.sleep(20);
+                if (clock.currentTimeNanos() > first) {
+                    return;
+                }
+            }
+            fail("Clock did not tick"); //$NON-NLS-1$
+        } finally {
+            clock.dispose();
+        }
+    }
+
+    /**
+     * Test bad coarse clock resolution
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCoarseBadResolution() {
+        new CoarseTraceClock(0);
+    }
+
+    /**
+     * Test the calibrated clock writes clock sync events and does not go
+     * backwards when recalibrated
+     */
+    @Test
+    public void testCalibrated() {
+        List<LogRecord> records = new ArrayList<>();
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+                // do nothing
+            }
+
+            @Override
+            public void close() {
+                // do nothing
+            }
+        });
+        CalibratedTraceClock clock = new CalibratedTraceClock(3600000, logger, Level.INFO);
+        try {
+            long last = clock.currentTimeNanos();
+            for (int i = 0; i < 5; i++) {
+                clock.recalibrate();
+                long next = clock.currentTimeNanos();
+                assertTrue(next >= last);
+                assertTrue(Math.abs(next - System.currentTimeMillis() * MILLI) < 20 * MILLI);
+                last = next;
+            }
+            assertEquals(5, records.size());
+            String message = records.get(0).getMessage();
+            assertTrue(message, message.contains("\"ph\":\"c\"")); //$NON-NLS-1$
+            assertTrue(message, message.contains("\"name\":\"clock_sync\"")); //$NON-NLS-1$
+            assertTrue(message, message.contains("\"sync_id\":\"calibration-0\"")); //$NON-NLS-1$
+        } finally {
+            clock.dispose();
+        }
+    }
+
+    /**
+     * Test the calibrated clock steps forward when the wall clock jumps
+     * ahead, but slows down instead of stepping back when it is set back
+     */
+    @Test
+    public void testCalibratedSteps() {
+        long[] offset = { 0 };
+        CalibratedTraceClock clock = new CalibratedTraceClock(3600000, null, Level.INFO,
+                () -> System.currentTimeMillis() * MILLI + offset[0]);
+        try {
+            offset[0] = 10_000 * MILLI;
+            clock.recalibrate();
+            long ahead = clock.currentTimeNanos();
+            assertTrue(Math.abs(ahead - System.currentTimeMillis() * MILLI - offset[0]) < 20 * MILLI);
+
+            offset[0] = 0;
+            long last = clock.currentTimeNanos();
+            clock.recalibrate();
+            long next = clock.currentTimeNanos();
+            assertTrue(next >= last);
+            // still ahead, catching up slowly
+            assertTrue(next - System.currentTimeMillis() * MILLI > 9_000 * MILLI);
+            long nano = System.nanoTime();
+            long later;
+            do {
+                later = clock.currentTimeNanos();
+            } while (System.nanoTime() - nano < 5 * MILLI);
+            long elapsed = System.nanoTime() - nano;
+            assertTrue(later > next);
+            assertTrue(later - next <= elapsed);
+        } finally {
+            clock.dispose();
+        }
+    }
+
+    /**
+     * Test replacing the clock of the logger
+     */
+    @Test
+    public void testSetClock() {
+        ITraceClock original = LogUtils.getClock();
+        ITraceClock fixed = () -> 42000L;
+        try {
+            LogUtils.setClock(fixed);
+            assertSame(fixed, LogUtils.getClock());
+            List<String> messages = new ArrayList<>();
+            Logger logger = Logger.getAnonymousLogger();
+            logger.setUseParentHandlers(false);
+            logger.setLevel(Level.ALL);
+            logger.addHandler(new Handler() {
+                @Override
+                public void publish(LogRecord record) {
+                    messages.add(record.getMessage());
+                }
+
+                @Override
+                public void flush() {
+                    // do nothing
+                }
+
+                @Override
+                public void close() {
+                    // do nothing
+                }
+            });
+            LogUtils.traceInstant(logger, Level.INFO, "tick"); //$NON-NLS-1$
+            assertEquals(1, messages.size());
+            assertTrue(messages.get(0), messages.get(0).startsWith("{\"ts\":\"42.000\"")); //$NON-NLS-1$
+        } finally {
+            LogUtils.setClock(original);
+        }
+    }
+
+    /**
+     * Test that a label can be stamped by its own clock, and that a clock is
+     * only disposed when no label uses it anymore
+     */
+    @Test
+    public void testSetLabelClock() {
+        ITraceClock original = LogUtils.getClock();
+        ITraceClock fixed = () -> 42000L;
+        AtomicInteger disposed = new AtomicInteger();
+        ITraceClock label = new ITraceClock() {
+            @Override
+            public long currentTimeNanos() {
+                return 7000L;
+            }
+
+            @Override
+            public void dispose() {
+                disposed.incrementAndGet();
+            }
+        };
+        try {
+            LogUtils.setClock(fixed);
+            LogUtils.setClock("fast", label); //$NON-NLS-1$
+            LogUtils.setClock("faster", label); //$NON-NLS-1$
+            assertSame(label, LogUtils.getClock("fast")); //$NON-NLS-1$
+            assertSame(fixed, LogUtils.getClock("slow")); //$NON-NLS-1$
+            List<String> messages = new ArrayList<>();
+            Logger logger = Logger.getAnonymousLogger();
+            logger.setUseParentHandlers(false);
+            logger.setLevel(Level.ALL);
+            logger.addHandler(new Handler() {
+                @Override
+                public void publish(LogRecord record) {
+                    messages.add(record.getMessage());
+                }
+
+                @Override
+                public void flush() {
+                    // do nothing
+                }
+
+                @Override
+                public void close() {
+                    // do nothing
+                }
+            });
+            LogUtils.traceInstant(logger, Level.INFO, "slow"); //$NON-NLS-1$
+            try (LogUtils.ScopeLog scope = new LogUtils.ScopeLog(logger, Level.INFO, "fast")) { //$NON-NLS-1$
+                // do nothing
+            }
+            assertEquals(3, messages.size());
+            assertTrue(messages.get(0), messages.get(0).startsWith("{\"ts\":\"42.000\"")); //$NON-NLS-1$
+            assertTrue(messages.get(1), messages.get(1).startsWith("{\"ts\":\"7.000\"")); //$NON-NLS-1$
+            assertTrue(messages.get(2), messages.get(2).startsWith("{\"ts\":\"7.000\"")); //$NON-NLS-1$
+
+            LogUtils.setClock("fast", null); //$NON-NLS-1$
+            assertSame(fixed, LogUtils.getClock("fast")); //$NON-NLS-1$
+            assertEquals(0, disposed.get());
+            LogUtils.setClock("faster", null); //$NON-NLS-1$
+            assertEquals(1, disposed.get());
+            assertFalse(LogUtils.getClock("faster") == label); //$NON-NLS-1$
+        } finally {
+            LogUtils.setClock("fast", null); //$NON-NLS-1$
+            LogUtils.setClock("faster", null); //$NON-NLS-1$
+            LogUtils.setClock(original);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.eclipse.tracecompass.traceeventlogger.beans.LatencyHistogram;
+import org.eclipse.tracecompass.traceeventlogger.beans.TraceEventLoggerBean;
+import org.junit.Test;
+
+/**
+ * Test the statistics of the monitoring beans
+ */
+public class TraceEventLoggerBeanTest {
+
+    /**
+     * Test many threads updating the same bean, no value may be lost
+     *
+     * @throws InterruptedException
+     *             won't happen
+     */
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException {
+        TraceEventLoggerBean bean = new TraceEventLoggerBean("test:concurrent"); //$NON-NLS-1$
+        assertEquals(0L, bean.getCount());
+        assertEquals(0.0, bean.getMeanTime(), 0.0);
+        int nbThreads = 4;
+        int nbValues = 100000;
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nbThreads; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 1; i <= nbValues; i++) {
+                    bean.accept(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("test:concurrent", bean.getObservedElementName()); //$NON-NLS-1$
+        assertEquals((long) nbThreads * nbValues, bean.getCount());
+        assertEquals(nbThreads * (long) nbValues * (nbValues + 1) / 2, bean.getTotalTime());
+        assertEquals(1L, bean.getMinTime());
+        assertEquals(nbValues, bean.getMaxTime());
+        assertEquals((nbValues + 1) / 2.0, bean.getMeanTime(), 0.0);
+        // the histogram counts of all the threads
+        assertEquals((long) nbThreads * nbValues, bean.getHistogramSnapshot().getCount());
+    }
+
+    /**
+     * Test the percentiles are within the relative error of the histogram
+     *
+     * @throws JMException
+     *             won't happen
+     */
+    @Test
+    public void testPercentiles() throws JMException {
+        TraceEventLoggerBean bean = new TraceEventLoggerBean("test:percentiles"); //$NON-NLS-1$
+        assertEquals(0L, bean.getP99());
+        for (long i = 1; i <= 100000; i++) {
+            bean.accept(i * 1000);
+        }
+        assertClose(50000000L, bean.getP50());
+        assertClose(90000000L, bean.getP90());
+        assertClose(99000000L, bean.getP99());
+        assertClose(99900000L, bean.getP999());
+        SortedMap<Long, Long> buckets = bean.getHistogram();
+        long count = 0;
+        for (long bucketCount : buckets.values()) {
+            count += bucketCount;
+        }
+        assertEquals(100000L, count);
+        assertTrue(buckets.lastKey() >= 100000000L);
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.eclipse.tracecompass.log:type=TraceEventLoggerBean,name=test-percentiles"); //$NON-NLS-1$
+        assertEquals(bean.getP99(), mbs.getAttribute(name, "P99")); //$NON-NLS-1$
+        assertEquals(buckets.size(), ((TabularData) mbs.getAttribute(name, "Histogram")).size()); //$NON-NLS-1$
+        assertEquals(100000L, ((CompositeData) mbs.getAttribute(name, "Last1m")).get("count")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertTrue(bean.getRate15m() >= 0);
+        mbs.invoke(name, "reset", null, null); //$NON-NLS-1$
+        assertEquals(0L, bean.getCount());
+        assertEquals(0L, bean.getP99());
+        assertEquals(0L, bean.getLast1m().getCount());
+        assertEquals(Long.MIN_VALUE, bean.getMaxTime());
+    }
+
+    /**
+     * Test small, large and negative values, and merging histograms
+     */
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 64; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        // exact below 64
+        assertEquals(31L, snapshot.getPercentile(0.5));
+        assertEquals(64, snapshot.getBuckets().size());
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(-5);
+        other.record(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot merged = new LatencyHistogram.Snapshot().merge(snapshot).merge(other.snapshot());
+        assertEquals(66L, merged.getCount());
+        assertEquals(0L, merged.getPercentile(0));
+        assertEquals(Long.MAX_VALUE, (long) merged.getBuckets().lastKey());
+        assertClose(Long.MAX_VALUE, merged.getPercentile(1));
+        // the snapshots are copies
+        assertEquals(64L, snapshot.getCount());
+    }
+
+    private static void assertClose(long expected, long actual) {
+        assertTrue(expected + " vs " + actual, Math.abs(expected - (double) actual) <= expected / 32.0); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+
+import org.eclipse.tracecompass.traceeventlogger.LogUtils.FlowScopeLog;
+import org.eclipse.tracecompass.traceeventlogger.LogUtils.FlowScopeLogBuilder;
+import org.eclipse.tracecompass.traceeventlogger.LogUtils.ScopeLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the runtime control of the tracing
+ */
+public class TraceEventLoggerControlTest {
+
+    private final List<LogRecord> fRecords = new ArrayList<>();
+    private Logger fLogger;
+    private TraceEventLoggerControl fControl;
+
+    /**
+     * Set up a logger keeping its records
+     */
+    @Before
+    public void before() {
+        fLogger = Logger.getAnonymousLogger();
+        fLogger.setUseParentHandlers(false);
+        fLogger.setLevel(Level.ALL);
+        fLogger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                fRecords.add(record);
+            }
+
+            @Override
+            public void flush() {
+                // nothing to flush
+            }
+
+            @Override
+            public void close() {
+                // nothing to close
+            }
+        });
+        fControl = TraceEventLoggerControl.getInstance();
+    }
+
+    /**
+     * Trace everything again
+     */
+    @After
+    public void after() {
+        fControl.resetSwitches();
+        LogManager.getLogManager().reset();
+    }
+
+    /**
+     * Test turning labels off
+     */
+    @Test
+    public void testLabels() {
+        fControl.setLabelEnabled("off", false); //$NON-NLS-1$
+        try (ScopeLog log = new ScopeLog(fLogger, Level.INFO, "off")) { //$NON-NLS-1$
+            LogUtils.traceInstant(fLogger, Level.INFO, "off"); //$NON-NLS-1$
+        }
+        assertEquals(0, fRecords.size());
+        try (ScopeLog log = new ScopeLog(fLogger, Level.INFO, "on")) { //$NON-NLS-1$
+            LogUtils.traceInstant(fLogger, Level.INFO, "off"); //$NON-NLS-1$
+        }
+        assertEquals(2, fRecords.size());
+        assertEquals("[off]", fControl.getDisabledLabels().toString()); //$NON-NLS-1$
+
+        fControl.setLabelEnabled("off", true); //$NON-NLS-1$
+        assertTrue(fControl.getDisabledLabels().isEmpty());
+        LogUtils.traceInstant(fLogger, Level.INFO, "off"); //$NON-NLS-1$
+        assertEquals(3, fRecords.size());
+    }
+
+    /**
+     * Test the allow and deny patterns, the explicit switches win
+     */
+    @Test
+    public void testPatterns() {
+        fControl.setAllowPatterns("query *, cache?"); //$NON-NLS-1$
+        fControl.setDenyPatterns("query slow*"); //$NON-NLS-1$
+        assertEquals("query *, cache?", fControl.getAllowPatterns()); //$NON-NLS-1$
+        assertEquals("query slow*", fControl.getDenyPatterns()); //$NON-NLS-1$
+        LogUtils.traceInstant(fLogger, Level.INFO, "query fast"); //$NON-NLS-1$
+        LogUtils.traceInstant(fLogger, Level.INFO, "query slow one"); //$NON-NLS-1$
+        LogUtils.traceInstant(fLogger, Level.INFO, "cache1"); //$NON-NLS-1$
+        LogUtils.traceInstant(fLogger, Level.INFO, "cache12"); //$NON-NLS-1$
+        LogUtils.traceInstant(fLogger, Level.INFO, "other"); //$NON-NLS-1$
+        assertEquals(2, fRecords.size());
+        assertTrue(fControl.getDisabledLabels().contains("query slow one")); //$NON-NLS-1$
+        assertFalse(fControl.getDisabledLabels().contains("cache1")); //$NON-NLS-1$
+
+        fControl.setLabelEnabled("other", true); //$NON-NLS-1$
+        fControl.setLabelEnabled("cache1", false); //$NON-NLS-1$
+        LogUtils.traceInstant(fLogger, Level.INFO, "other"); //$NON-NLS-1$
+        LogUtils.traceInstant(fLogger, Level.INFO, "cache1"); //$NON-NLS-1$
+        assertEquals(3, fRecords.size());
+
+        fControl.resetSwitches();
+        assertEquals("", fControl.getDenyPatterns()); //$NON-NLS-1$
+        LogUtils.traceInstant(fLogger, Level.INFO, "query slow one"); //$NON-NLS-1$
+        assertEquals(4, fRecords.size());
+    }
+
+    /**
+     * Test the hits, counted whether the tracepoint is enabled or not
+     */
+    @Test
+    public void testHits() {
+        long scope = hits("hits scope"); //$NON-NLS-1$
+        long instant = hits("hits instant"); //$NON-NLS-1$
+        fControl.setLabelEnabled("hits instant", false); //$NON-NLS-1$
+        for (int i = 0; i < 3; i++) {
+            try (ScopeLog log = new ScopeLog(fLogger, Level.INFO, "hits scope")) { //$NON-NLS-1$
+                for (int j = 0; j < 1000; j++) {
+                    LogUtils.traceInstant(fLogger, Level.INFO, "hits instant"); //$NON-NLS-1$
+                }
+            }
+        }
+        assertEquals(scope + 3, hits("hits scope")); //$NON-NLS-1$
+        assertEquals(instant + 3000, hits("hits instant")); //$NON-NLS-1$
+        assertEquals(6, fRecords.size());
+        List<String> top = fControl.topTracepoints(100);
+        int index = -1;
+        for (int i = 0; i < top.size(); i++) {
+            if (top.get(i).endsWith(" hits instant (disabled)")) { //$NON-NLS-1$
+                index = i;
+            }
+        }
+        assertTrue(top.toString(), index >= 0);
+        assertTrue(top.get(index).matches("\\d+ " + (instant + 3000) + " hits instant \\(disabled\\)")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private long hits(String label) {
+        Long hits = fControl.getTracepointHits().get(label);
+        return hits == null ? 0 : hits;
+    }
+
+    /**
+     * Test turning categories off, all the events of a flow are dropped
+     */
+    @Test
+    public void testCategories() {
+        fControl.setCategoryEnabled("cat", false); //$NON-NLS-1$
+        assertEquals("[cat]", fControl.getDisabledCategories().toString()); //$NON-NLS-1$
+        try (FlowScopeLog log = new FlowScopeLogBuilder(fLogger, Level.INFO, "flow").setCategoryAndId("cat", 1).build()) { //$NON-NLS-1$ //$NON-NLS-2$
+            log.step("step"); //$NON-NLS-1$
+        }
+        LogUtils.traceAsyncStart(fLogger, Level.INFO, "async", "cat", 2); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(0, fRecords.size());
+        LogUtils.traceAsyncStart(fLogger, Level.INFO, "async", "other", 2); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(1, fRecords.size());
+    }
+
+    /**
+     * Test sampling, the events of an id are kept or dropped together
+     */
+    @Test
+    public void testSampling() {
+        fControl.setSamplingRate(0.0);
+        assertEquals(0.0, fControl.getSamplingRate(), 0.0);
+        for (int i = 0; i < 100; i++) {
+            LogUtils.traceInstant(fLogger, Level.INFO, "instant"); //$NON-NLS-1$
+        }
+        assertEquals(0, fRecords.size());
+        fControl.setLabelSamplingRate("instant", 1.0); //$NON-NLS-1$
+        LogUtils.traceInstant(fLogger, Level.INFO, "instant"); //$NON-NLS-1$
+        assertEquals(1, fRecords.size());
+        try {
+            fControl.setLabelSamplingRate("instant", Double.NaN); //$NON-NLS-1$
+            fail("not a rate"); //$NON-NLS-1$
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(1.0, fControl.getLabelSamplingRates().get("instant"), 0.0); //$NON-NLS-1$
+
+        fRecords.clear();
+        fControl.setSamplingRate(0.5);
+        int kept = 0;
+        for (int id = 0; id < 1000; id++) {
+            int before = fRecords.size();
+            LogUtils.traceAsyncStart(fLogger, Level.INFO, "async", "cat", id); //$NON-NLS-1$ //$NON-NLS-2$
+            LogUtils.traceAsyncEnd(fLogger, Level.INFO, "async", "cat", id); //$NON-NLS-1$ //$NON-NLS-2$
+            int written = fRecords.size() - before;
+            assertTrue(written == 0 || written == 2);
+            kept += written / 2;
+        }
+        assertTrue(String.valueOf(kept), kept > 400 && kept < 600);
+
+        fControl.resetSwitches();
+        assertEquals(1.0, fControl.getSamplingRate(), 0.0);
+        assertTrue(fControl.getLabelSamplingRates().isEmpty());
+    }
+
+    /**
+     * Test the logger levels
+     */
+    @Test
+    public void testLoggerLevels() {
+        Logger logger = Logger.getLogger("org.eclipse.tracecompass.control"); //$NON-NLS-1$
+        fControl.setLoggerLevel(logger.getName(), "FINE"); //$NON-NLS-1$
+        assertEquals(Level.FINE, logger.getLevel());
+        assertEquals("FINE", fControl.getLoggerLevel(logger.getName())); //$NON-NLS-1$
+        try {
+            fControl.setLoggerLevel(logger.getName(), "LOUD"); //$NON-NLS-1$
+            fail("bad level"); //$NON-NLS-1$
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(Level.FINE, logger.getLevel());
+        fControl.setLoggerLevel(logger.getName(), ""); //$NON-NLS-1$
+        assertEquals("", fControl.getLoggerLevel(logger.getName())); //$NON-NLS-1$
+    }
+
+    /**
+     * Test controlling the handlers
+     *
+     * @throws Exception
+     *             the handler or the bean failed
+     */
+    @Test
+    public void testHandlers() throws Exception {
+        assertTrue(ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(new ObjectName("org.eclipse.tracecompass.log:type=TraceEventLoggerControl"))); //$NON-NLS-1$
+        File file = File.createTempFile("control", ".json"); //$NON-NLS-1$ //$NON-NLS-2$
+        file.deleteOnExit();
+        AsyncFileHandler handler = new AsyncFileHandler(file.getAbsolutePath());
+        String id = handler.getId();
+        try {
+            // never reused
+            AsyncFileHandler other = new AsyncFileHandler(file.getAbsolutePath());
+            other.close();
+            assertFalse(id.equals(other.getId()));
+            assertTrue(fControl.getHandlers().get(id).startsWith("AsyncFileHandler enabled=true")); //$NON-NLS-1$
+            fControl.setFlushRate(id, 50);
+            fControl.setMaxSize(id, 10);
+            assertEquals(50, handler.getFlushRate());
+            assertEquals(10, handler.getMaxSize());
+            fControl.setHandlerEnabled(id, false);
+            assertFalse(handler.isEnabled());
+            try {
+                fControl.setFlushRate("none", 50); //$NON-NLS-1$
+                fail("no handler"); //$NON-NLS-1$
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        } finally {
+            handler.close();
+        }
+        assertFalse(fControl.getHandlers().containsKey(id));
+    }
+
+    /**
+     * Test the flush rate is applied to a running handler
+     *
+     * @throws IOException
+     *             the handler failed
+     * @throws InterruptedException
+     *             interrupted
+     */
+    @Test
+    public void testFlushRate() throws IOException, InterruptedException {
+        File file = File.createTempFile("control", ".json"); //$NON-NLS-1$ //$NON-NLS-2$
+        file.deleteOnExit();
+        AsyncFileHandler handler = new AsyncFileHandler(file.getAbsolutePath());
+        try {
+            // much shorter than the default second
+            handler.setFlushRate(10);
+            fLogger.addHandler(handler);
+            LogUtils.traceInstant(fLogger, Level.INFO, "record"); //$NON-NLS-1$
+            for (int i = 0; i < 50 && handler.getWrittenRecords() == 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, handler.getWrittenRecords());
+        } finally {
+            handler.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test the Prometheus and OpenMetrics rendering of the statistics
+ */
+public class MetricsExporterTest {
+
+    /**
+     * Health bean of a handler, for testing
+     */
+    public interface ITestHandlerBean {
+        /**
+         * Get the queue size
+         *
+         * @return the size
+         */
+        long getQueueSize();
+
+        /**
+         * Get the name, not published
+         *
+         * @return the name
+         */
+        String getName();
+    }
+
+    /**
+     * Test the rendered text
+     *
+     * @throws JMException
+     *             won't happen
+     */
+    @Test
+    public void testRender() throws JMException {
+        TraceEventLoggerManager manager = new TraceEventLoggerManager(10, TimeUnit.HOURS.toNanos(1), 0);
+        for (int i = 1; i <= 100; i++) {
+            manager.update("metrics:C:\\\\temp", i * 1000000L); //$NON-NLS-1$
+        }
+        manager.enter("metrics:outer"); //$NON-NLS-1$
+        manager.exit("metrics:outer", 1500000000L); //$NON-NLS-1$
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.eclipse.tracecompass.log:type=TestHandler,name=\"a,b\""); //$NON-NLS-1$
+        mbs.registerMBean(new StandardMBean(new ITestHandlerBean() {
+            @Override
+            public long getQueueSize() {
+                return 42;
+            }
+
+            @Override
+            public String getName() {
+                return "test"; //$NON-NLS-1$
+            }
+        }, ITestHandlerBean.class), name);
+        try {
+            MetricsExporter exporter = new MetricsExporter(manager);
+            String text = toString(exporter.render(true));
+            assertTrue(text, text.startsWith("# TYPE tracecompass_scope_seconds summary\n# UNIT tracecompass_scope_seconds seconds\n")); //$NON-NLS-1$
+            assertTrue(text, text.contains("tracecompass_scope_seconds{label=\"metrics:C:\\\\\\\\temp\",quantile=\"0.5\"} 0.049")); //$NON-NLS-1$
+            assertTrue(text, text.contains("tracecompass_scope_seconds_sum{label=\"metrics:C:\\\\\\\\temp\"} 5.050000000\n")); //$NON-NLS-1$
+            assertTrue(text, text.contains("tracecompass_scope_seconds_count{label=\"metrics:C:\\\\\\\\temp\"} 100\n")); //$NON-NLS-1$
+            assertTrue(text, text.contains("# TYPE tracecompass_scope_self_seconds counter\n")); //$NON-NLS-1$
+            assertTrue(text, text.contains("tracecompass_scope_self_seconds_total{label=\"metrics:outer\"} 1.500000000\n")); //$NON-NLS-1$
+            assertTrue(text, text.contains("tracecompass_monitored_labels 2\n")); //$NON-NLS-1$
+            assertTrue(text, text.contains("tracecompass_test_handler_queue_size{name=\"a,b\"} 42\n")); //$NON-NLS-1$
+            assertFalse(text, text.contains("tracecompass_test_handler_name")); //$NON-NLS-1$
+            assertTrue(text, text.endsWith("# EOF\n")); //$NON-NLS-1$
+
+            text = toString(exporter.render(false));
+            assertTrue(text, text.contains("# TYPE tracecompass_scope_self_seconds_total counter\n")); //$NON-NLS-1$
+            assertFalse(text, text.contains("# UNIT")); //$NON-NLS-1$
+            assertFalse(text, text.contains("# EOF")); //$NON-NLS-1$
+        } finally {
+            mbs.unregisterMBean(name);
+        }
+    }
+
+    /**
+     * Test the statistics are served over HTTP
+     *
+     * @throws IOException
+     *             if the server cannot start
+     */
+    @Test
+    public void testEndpoint() throws IOException {
+        TraceEventLoggerManager manager = new TraceEventLoggerManager(10, TimeUnit.HOURS.toNanos(1), 0);
+        manager.update("metrics:served", 1); //$NON-NLS-1$
+        HttpServer server = MetricsExporter.start(manager, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try {
+            URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/metrics"); //$NON-NLS-1$ //$NON-NLS-2$
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestProperty("Accept", "application/openmetrics-text; version=1.0.0"); //$NON-NLS-1$ //$NON-NLS-2$
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(MetricsExporter.OPENMETRICS, connection.getContentType());
+            String text;
+            try (InputStream in = connection.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                    out.write(buffer, 0, read);
+                }
+                text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+            }
+            assertTrue(text, text.contains("tracecompass_scope_seconds_count{label=\"metrics:served\"} 1\n")); //$NON-NLS-1$
+            assertTrue(text, text.endsWith("# EOF\n")); //$NON-NLS-1$
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static String toString(ByteBuffer bytes) {
+        return new String(bytes.array(), bytes.position(), bytes.remaining(), StandardCharsets.UTF_8);
+    }
+}
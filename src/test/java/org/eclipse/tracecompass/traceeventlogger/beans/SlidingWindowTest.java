@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test the windowed statistics and the decaying rates, with a fake clock
+ */
+public class SlidingWindowTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * Test the times leave the windows as time passes
+     */
+    @Test
+    public void testWindows() {
+        SlidingWindow window = new SlidingWindow();
+        long start = 1000 * MINUTE;
+        window.record(start, 10);
+        window.record(start + 2 * MINUTE, 30);
+        window.record(start + 10 * MINUTE, 50);
+        long now = start + 10 * MINUTE + SECOND;
+        WindowStatistics last1m = window.get(now, MINUTE);
+        assertEquals(1, last1m.getCount());
+        assertEquals(50, last1m.getMaxTime());
+        assertEquals(1 / 60.0, last1m.getRate(), 1e-9);
+        WindowStatistics last15m = window.get(now, 15 * MINUTE);
+        assertEquals(3, last15m.getCount());
+        assertEquals(90, last15m.getTotalTime());
+        assertEquals(30.0, last15m.getMeanTime(), 0.0);
+        assertEquals(10, last15m.getMinTime());
+        assertEquals(15 * 60, last15m.getWindow());
+        assertEquals(2, window.get(now + 5 * MINUTE, 15 * MINUTE).getCount());
+        // the first time left the window
+        window.record(start + 15 * MINUTE, 70);
+        WindowStatistics rotated = window.get(start + 15 * MINUTE, 15 * MINUTE);
+        assertEquals(3, rotated.getCount());
+        assertEquals(30, rotated.getMinTime());
+        window.reset();
+        WindowStatistics empty = window.get(now, 15 * MINUTE);
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getMinTime());
+        assertEquals(0, empty.getMaxTime());
+    }
+
+    /**
+     * Test the rates follow the events and decay without them
+     */
+    @Test
+    public void testRates() {
+        long now = 1000 * MINUTE;
+        DecayingRate rate = new DecayingRate(now);
+        // 10 events per second for 5 minutes
+        for (int i = 0; i < 3000; i++) {
+            now += SECOND / 10;
+            rate.mark(now);
+        }
+        assertEquals(10.0, rate.get(now, 0), 0.1);
+        assertTrue(rate.get(now, 2) > 9.0);
+        double rate15m = rate.get(now, 2);
+        now += 5 * MINUTE;
+        assertTrue(rate.get(now, 0) < 0.1);
+        assertTrue(rate.get(now, 1) < rate15m);
+        assertTrue(rate.get(now, 2) > rate.get(now, 1));
+        rate.reset(now);
+        assertEquals(0.0, rate.get(now + MINUTE, 2), 0.0);
+    }
+}
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Ericsson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ *
+ * SPDX-License-Identifier: MIT
+ *******************************************************************************/
+package org.eclipse.tracecompass.traceeventlogger.beans;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Test the number of labels monitored is bounded, and the self times and call
+ * paths of nested scopes, and the threshold notifications
+ */
+public class TraceEventLoggerManagerTest {
+
+    /**
+     * Test the idle labels are evicted and their beans unregistered
+     *
+     * @throws JMException
+     *             won't happen
+     */
+    @Test
+    public void testEviction() throws JMException {
+        TraceEventLoggerManager manager = new TraceEventLoggerManager(2, 0, 0);
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ObjectName first = new ObjectName("org.eclipse.tracecompass.log:type=TraceEventLoggerBean,name=evict-first"); //$NON-NLS-1$
+        manager.update("evict:first", 1); //$NON-NLS-1$
+        assertTrue(mbs.isRegistered(first));
+        manager.update("evict:second", 2); //$NON-NLS-1$
+        manager.update("evict:third", 3); //$NON-NLS-1$
+        assertEquals(2, manager.getLabelCount());
+        assertEquals(1L, manager.getEvictedLabels());
+        assertNull(manager.getBean("evict:first")); //$NON-NLS-1$
+        assertFalse(mbs.isRegistered(first));
+        assertEquals(3L, manager.getBean("evict:third").getTotalTime()); //$NON-NLS-1$
+        assertNull(manager.getBean(TraceEventLoggerManager.OTHER_LABEL));
+    }
+
+    /**
+     * Test the labels past the maximum are counted together while the others
+     * are in use
+     */
+    @Test
+    public void testOther() {
+        TraceEventLoggerManager manager = new TraceEventLoggerManager(2, TimeUnit.HOURS.toNanos(1), 0);
+        for (int i = 0; i < 10; i++) {
+            manager.update("other:" + i, i); //$NON-NLS-1$
+        }
+        assertEquals(2, manager.getLabelCount());
+        assertEquals(2, manager.getMaxLabels());
+        assertEquals(0L, manager.getEvictedLabels());
+        assertNotNull(manager.getBean("other:1")); //$NON-NLS-1$
+        TraceEventLoggerBean other = manager.getBean(TraceEventLoggerManager.OTHER_LABEL);
+        assertEquals(8L, other.getCount());
+        assertEquals(9L, other.getMaxTime());
+    }
+
+    /**
+     * Test the self time excludes the time of the nested scopes
+     */
+    @Test
+    public void testSelfTime() {
+        TraceEventLoggerManager manager = new TraceEventLoggerManager(10, TimeUnit.HOURS.toNanos(1), 100);
+        manager.enter("self:outer"); //$NON-NLS-1$
+        manager.enter("self:inner"); //$NON-NLS-1$
+        manager.exit("self:inner", 30); //$NON-NLS-1$
+        manager.enter("self:inner"); //$NON-NLS-1$
+        manager.enter("self:leaf"); //$NON-NLS-1$
+        manager.exit("self:leaf", 5); //$NON-NLS-1$
+        manager.exit("self:inner", 20); //$NON-NLS-1$
+        manager.exit("self:outer", 100); //$NON-NLS-1$
+        TraceEventLoggerBean outer = manager.getBean("self:outer"); //$NON-NLS-1$
+        assertEquals(100L, outer.getTotalTime());
+        assertEquals(50L, outer.getTotalSelfTime());
+        TraceEventLoggerBean inner = manager.getBean("self:inner"); //$NON-NLS-1$
+        assertEquals(50L, inner.getTotalTime());
+        assertEquals(45L, inner.getTotalSelfTime());
+        assertEquals(22.5, inner.getMeanSelfTime(), 0.0);
+
+        // unbalanced: the leaf is never closed, the stray exit is all self
+        manager.enter("self:outer"); //$NON-NLS-1$
+        manager.enter("self:leaf"); //$NON-NLS-1$
+        manager.exit("self:outer", 10); //$NON-NLS-1$
+        manager.exit("self:stray", 7); //$NON-NLS-1$
+        assertEquals(60L, outer.getTotalSelfTime());
+        assertEquals(7L, manager.getBean("self:stray").getTotalSelfTime()); //$NON-NLS-1$
+    }
+
+    /**
+     * Test the times per call path and their folded stacks
+     */
+    @Test
+    public void testCallTree() {
+        TraceEventLoggerManager manager = new TraceEventLoggerManager(10, TimeUnit.HOURS.toNanos(1), 3);
+        manager.enter("a"); //$NON-NLS-1$
+        manager.enter("b"); //$NON-NLS-1$
+        manager.exit("b", 10); //$NON-NLS-1$
+        manager.enter("c;d"); //$NON-NLS-1$
+        manager.exit("c;d", 20); //$NON-NLS-1$
+        manager.exit("a", 40); //$NON-NLS-1$
+        manager.enter("b"); //$NON-NLS-1$
+        manager.exit("b", 5); //$NON-NLS-1$
+        assertEquals(3, manager.getCallPaths());
+        assertArrayEquals(new long[] { 1, 40, 10 }, manager.getCallPath("a")); //$NON-NLS-1$
+        assertArrayEquals(new long[] { 1, 10, 10 }, manager.getCallPath("a", "b")); //$NON-NLS-1$ //$NON-NLS-2$
+        // past the maximum, the new paths are counted together
+        assertNull(manager.getCallPath("b")); //$NON-NLS-1$
+        assertArrayEquals(new long[] { 1, 5, 5 }, manager.getCallPath(TraceEventLoggerManager.OTHER_LABEL));
+        Set<String> lines = new HashSet<>(Arrays.asList(manager.foldedStacks().split("\n"))); //$NON-NLS-1$
+        Set<String> expected = new HashSet<>(Arrays.asList("a 10", "a;b 10", "a;c_d 20", "(other) 5")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        assertEquals(expected, lines);
+
+        TraceEventLoggerManager disabled = new TraceEventLoggerManager(10, TimeUnit.HOURS.toNanos(1), 0);
+        disabled.enter("a"); //$NON-NLS-1$
+        disabled.exit("a", 1); //$NON-NLS-1$
+        assertEquals(0, disabled.getCallPaths());
+        assertEquals("", disabled.foldedStacks()); //$NON-NLS-1$
+        assertEquals(1L, disabled.getBean("a").getTotalSelfTime()); //$NON-NLS-1$
+    }
+
+    /**
+     * Test the scopes nested past the maximum depth are counted but not followed
+     */
+    @Test
+    public void testDeepScopes() {
+        TraceEventLoggerManager manager = new TraceEventLoggerManager(10, TimeUnit.HOURS.toNanos(1), 1000);
+        for (int i = 0; i < 300; i++) {
+            manager.enter("deep"); //$NON-NLS-1$
+        }
+        for (int i = 0; i < 300; i++) {
+            manager.exit("deep", 1); //$NON-NLS-1$
+        }
+        TraceEventLoggerBean deep = manager.getBean("deep"); //$NON-NLS-1$
+        assertEquals(300L, deep.getTotalTime());
+        // the 44 scopes past the maximum and the deepest one followed
+        assertEquals(45L, deep.getTotalSelfTime());
+        assertEquals(256, manager.getCallPaths());
+    }
+
+    /**
+     * Test the notifications are sent once when a threshold is crossed, by the
+     * bean and by the manager
+     */
+    @Test
+    public void testThresholds() {
+        TraceEventLoggerManager manager = new TraceEventLoggerManager(10, TimeUnit.HOURS.toNanos(1), 0);
+        List<Notification> all = new ArrayList<>();
+        manager.addNotificationListener((notification, handback) -> all.add(notification), null, null);
+        manager.update("slo:max", 100); //$NON-NLS-1$
+        TraceEventLoggerBean max = manager.getBean("slo:max"); //$NON-NLS-1$
+        List<Notification> own = new ArrayList<>();
+        max.addNotificationListener((notification, handback) -> own.add(notification), null, null);
+        max.setMaxThreshold(50);
+        long now = TraceEventLoggerManager.now();
+        manager.evaluate(now);
+        assertEquals(1, own.size());
+        assertEquals(TraceEventLoggerBean.THRESHOLD_EXCEEDED, own.get(0).getType());
+        assertEquals(100L, own.get(0).getUserData());
+        assertEquals(own, all);
+        manager.evaluate(now);
+        assertEquals(1, all.size());
+        max.reset();
+        manager.evaluate(now);
+        assertEquals(2, all.size());
+        assertEquals(TraceEventLoggerBean.THRESHOLD_CLEARED, all.get(1).getType());
+
+        manager.update("slo:p99", 10); //$NON-NLS-1$
+        TraceEventLoggerBean p99 = manager.getBean("slo:p99"); //$NON-NLS-1$
+        p99.setP99Threshold(1000);
+        manager.evaluate(now);
+        assertEquals(2, all.size());
+        for (int i = 0; i < 100; i++) {
+            manager.update("slo:p99", 5000); //$NON-NLS-1$
+        }
+        manager.evaluate(now);
+        assertEquals(3, all.size());
+        assertEquals(TraceEventLoggerBean.THRESHOLD_EXCEEDED, all.get(2).getType());
+        // the slow times leave the window
+        long window = p99.getThresholdWindow();
+        manager.evaluate(now + window);
+        assertEquals(3, all.size());
+        manager.evaluate(now + 2 * window);
+        assertEquals(4, all.size());
+        assertEquals(TraceEventLoggerBean.THRESHOLD_CLEARED, all.get(3).getType());
+    }
+
+    /**
+     * Test the thresholds are read from the logging properties
+     *
+     * @throws IOException
+     *             won't happen
+     */
+    @Test
+    public void testThresholdProperties() throws IOException {
+        String prefix = TraceEventLoggerManager.class.getName();
+        String config = prefix + ".thresholds = query, none\n" //$NON-NLS-1$
+                + prefix + ".threshold.query.label = slo:query\n" //$NON-NLS-1$
+                + prefix + ".threshold.query.p99 = 0.5\n" //$NON-NLS-1$
+                + prefix + ".threshold.query.window = 300\n" //$NON-NLS-1$
+                + prefix + ".threshold.none.label = slo:none\n"; //$NON-NLS-1$
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(config.getBytes(StandardCharsets.UTF_8)));
+        try {
+            TraceEventLoggerManager manager = new TraceEventLoggerManager(10, TimeUnit.HOURS.toNanos(1), 0);
+            manager.update("slo:query", 1); //$NON-NLS-1$
+            manager.update("slo:none", 1); //$NON-NLS-1$
+            TraceEventLoggerBean query = manager.getBean("slo:query"); //$NON-NLS-1$
+            assertEquals(TimeUnit.MILLISECONDS.toNanos(500), query.getP99Threshold());
+            assertEquals(0L, query.getMaxThreshold());
+            assertEquals(TimeUnit.MINUTES.toNanos(5), query.getThresholdWindow());
+            assertEquals(0L, manager.getBean("slo:none").getP99Threshold()); //$NON-NLS-1$
+        } finally {
+            LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(new byte[0]));
+        }
+    }
+}